@@ -0,0 +1,235 @@
+/*
+ *
+ * Copyright (c) 2024 Dan Clark.  All rights reserved.
+ * AnimationClock.java is a part of this JBusyComponent library
+ * ====================================================================
+ *
+ * JBusyComponent library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the License,
+ * or any later version.
+ *
+ * This is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.divxdede.swing.busy;
+
+import javax.swing.*;
+import java.awt.*;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The one clock that drives every busy animation (busy layers, busy icons, spinners).
+ * <p>
+ * Instead of a {@link Timer} per animation, animations are added to this clock, which runs a single
+ * timer, and only while at least one animation says it {@link Animation#isAnimating() is animating}
+ * (it is busy, and showing on screen).  When none are, the timer is stopped, so idle or hidden
+ * busy components cost nothing; an animation that starts again must {@link #wake()} the clock.
+ * <p>
+ * Every animation that is due for a frame gets it in the same tick, and repaints requested through
+ * {@link #repaint(Component)} during a tick are merged per component and issued together at the
+ * end of it, so all animations are painted in a single pass per frame.  Ticks are never closer
+ * together than the {@link #setMaximumFrameRate(int) maximum frame rate} allows.
+ * <p>
+ * Animations are held with weak references, so one that is no longer used goes away by itself.
+ * The clock runs on the event dispatch thread.
+ *
+ * @author dan.clark@nekocode.org
+ */
+public final class AnimationClock {
+
+    /** Something animated by the clock.
+     */
+    public interface Animation {
+
+        /** @return <code>true</code> while this animation needs frames: it is busy, and showing
+         */
+        boolean isAnimating();
+
+        /** @return the time this animation wants between frames, in milliseconds
+         */
+        int getFrameInterval();
+
+        /** Moves this animation to its next frame.  Called on the event dispatch thread.
+         */
+        void nextFrame();
+    }
+
+    private static final int            DEFAULT_FRAME_RATE = 30;
+    private static final AnimationClock INSTANCE           = new AnimationClock();
+
+    /** An animation, and when its next frame is due (0 if it isn't animating)
+     */
+    private static final class Entry {
+        final WeakReference<Animation> animation;
+        long                           due;
+
+        Entry(Animation animation) {
+            this.animation = new WeakReference<>(animation);
+        }
+    }
+
+    private final List<Entry>               entries         = new ArrayList<>();
+    private final Map<Component, Rectangle> dirty           = new IdentityHashMap<>();
+    private final Timer                     timer;
+    private volatile int                    minimumInterval = 1000 / DEFAULT_FRAME_RATE;
+    private volatile boolean                ticking         = false;
+    private boolean                         woken           = false;
+
+    private AnimationClock() {
+        this.timer = new Timer(0, e -> tick());
+        this.timer.setRepeats(false);
+    }
+
+    /** @return the clock shared by every busy animation
+     */
+    public static AnimationClock getInstance() {
+        return INSTANCE;
+    }
+
+    /** Adds an animation to this clock.  The clock only keeps a weak reference to it.
+     *  @param animation Animation to drive
+     */
+    public synchronized void add(Animation animation) {
+        for (Entry entry : entries) {
+            if (entry.animation.get() == animation) return;
+        }
+        entries.add(new Entry(animation));
+    }
+
+    /** Removes an animation from this clock.
+     *  @param animation Animation to stop driving
+     */
+    public synchronized void remove(Animation animation) {
+        entries.removeIf(entry -> {
+            Animation a = entry.animation.get();
+            return a == null || a == animation;
+        });
+    }
+
+    /** Starts the clock if it isn't running.  Animations call this when they may have started
+     *  animating (their model became busy, or they were painted, so are showing).  If no animation
+     *  is animating after all, the clock stops again after one tick.
+     */
+    public void wake() {
+        if (ticking && SwingUtilities.isEventDispatchThread()) {
+            // woken by an animation during a tick: the tick schedules the next one
+            woken = true;
+            return;
+        }
+        if (!timer.isRunning()) {
+            timer.setInitialDelay(0);
+            timer.start();
+        }
+    }
+
+    /** Defines the maximum frame rate of every animation.
+     *  @param framesPerSecond Maximum number of ticks per second
+     */
+    public void setMaximumFrameRate(int framesPerSecond) {
+        this.minimumInterval = 1000 / Math.max(1, framesPerSecond);
+    }
+
+    /** @return the maximum number of ticks per second
+     */
+    public int getMaximumFrameRate() {
+        return 1000 / minimumInterval;
+    }
+
+    /** Repaints a whole component.  During a tick, the repaint is merged with the others for the
+     *  same component and issued at the end of it; otherwise it is issued right away.
+     *  @param c Component to repaint
+     */
+    public void repaint(Component c) {
+        repaint(c, 0, 0, c.getWidth(), c.getHeight());
+    }
+
+    /** Repaints part of a component.  During a tick, the repaint is merged with the others for the
+     *  same component and issued at the end of it; otherwise it is issued right away.
+     *  @param c Component to repaint
+     */
+    public void repaint(Component c, int x, int y, int width, int height) {
+        if (ticking && SwingUtilities.isEventDispatchThread()) {
+            Rectangle area = dirty.get(c);
+            if (area == null) dirty.put(c, new Rectangle(x, y, width, height));
+            else              area.add(new Rectangle(x, y, width, height));
+        }
+        else {
+            c.repaint(x, y, width, height);
+        }
+    }
+
+    /** Gives a frame to every animation that is due for one, then schedules the next tick for when
+     *  the next frame is due, if any animation is still animating.
+     */
+    private void tick() {
+        final long now      = System.currentTimeMillis();
+        final int  interval = minimumInterval;
+        // frames due within half a tick are given now, to paint them together
+        final long horizon  = now + interval / 2;
+        long       next     = Long.MAX_VALUE;
+
+        final List<Entry> snapshot;
+        synchronized (this) {
+            snapshot = new ArrayList<>(entries);
+        }
+        woken   = false;
+        ticking = true;
+        try {
+            for (Entry entry : snapshot) {
+                Animation animation = entry.animation.get();
+                if (animation == null || !animation.isAnimating()) {
+                    entry.due = 0L;
+                    continue;
+                }
+                if (entry.due == 0L) {
+                    // just started: the first frame is a frame interval from now
+                    entry.due = now + animation.getFrameInterval();
+                }
+                else if (entry.due <= horizon) {
+                    animation.nextFrame();
+                    entry.due = now + Math.max(interval, animation.getFrameInterval());
+                }
+                next = Math.min(next, entry.due);
+            }
+        }
+        finally {
+            ticking = false;
+            flush();
+        }
+
+        synchronized (this) {
+            Iterator<Entry> i = entries.iterator();
+            while (i.hasNext()) {
+                if (i.next().animation.get() == null) i.remove();
+            }
+        }
+        if (next == Long.MAX_VALUE && woken) {
+            next = now + interval;
+        }
+        if (next != Long.MAX_VALUE && !timer.isRunning()) {
+            timer.setInitialDelay((int) Math.max(interval, next - now));
+            timer.start();
+        }
+    }
+
+    /** Issues the repaints merged during a tick
+     */
+    private void flush() {
+        for (Map.Entry<Component, Rectangle> entry : dirty.entrySet()) {
+            Rectangle area = entry.getValue();
+            entry.getKey().repaint(area.x, area.y, area.width, area.height);
+        }
+        dirty.clear();
+    }
+}
@@ -18,16 +18,14 @@
  */
 package org.divxdede.swing.busy.icon;
 
+import org.divxdede.swing.busy.AnimationClock;
 import org.divxdede.swing.busy.BusyIcon;
 import org.divxdede.swing.busy.BusyModel;
 
 import javax.swing.*;
-import javax.swing.Timer;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 import java.awt.*;
-import java.awt.event.ActionEvent;
-import java.awt.event.ActionListener;
 import java.awt.image.BufferedImage;
 import java.lang.ref.WeakReference;
 import java.util.*;
@@ -67,7 +65,7 @@ import java.util.List;
  * don't be significant in the ui representation. That's why, you should implements the {@link #getSignificantRatioOffset()} accordingly
  * to your ui.
  * <p>
- * When this busy icon is on an <code>undeterminate</code> state, an internal timer will fire repaint events periodically.<br>
+ * When this busy icon is on an <code>undeterminate</code> state and showing, the shared {@link AnimationClock} will fire repaint events periodically.<br>
  * The {@link #paintUndeterminate(java.awt.Component, java.awt.Graphics, int, int, int)} method will be use for rendering this icon.<br>
  * The provided frame number is incremented each paint event and is cyclic accordingly to the configuration done by {@link #setUndeterminateFrameRate(int, int)}.<br>
  * This method should be used by subclasses in order to configure the undeterminate frame rate animation.
@@ -99,18 +97,19 @@ public abstract class AbstractBusyIcon extends Observable implements BusyIcon {
     private       boolean                        discarded              = false;
     private       boolean                        useCache               = true;
 
-    /** Undeterminate timer members
+    /** Undeterminate animation members
      */
     private       int                            undeterminateFrameRate = 0;
-    private       Timer                          undeterminateTimer     = null;
-    private final ActionListener                 undeterminateListener  = new TimerListener();
+    private       boolean                        undeterminateRunning   = false;
+    private final AnimationClock.Animation       undeterminateAnimation = new UndeterminateAnimation();
+    private       WeakReference<Component>       lastPainted            = null;
     private       int                            frameCount             = 0;
     private       int                            frame                  = 0;
 
     /** Default constructor
      */
     public AbstractBusyIcon() {
-        this.undeterminateTimer = new Timer(0,this.undeterminateListener);
+        AnimationClock.getInstance().add(this.undeterminateAnimation);
     }
 
     /** Paint this icon in a <code>determinate</code> state at the given ratio.
@@ -232,7 +231,7 @@ public abstract class AbstractBusyIcon extends Observable implements BusyIcon {
     protected void setUndeterminateFrameRate(int delay, int frameCount) {
         this.undeterminateFrameRate = delay;
         this.frameCount = frameCount;
-        refreshUndeterminateTimer();
+        refreshUndeterminateAnimation();
     }
 
     /** Paint this icon.
@@ -252,6 +251,14 @@ public abstract class AbstractBusyIcon extends Observable implements BusyIcon {
     public final void paintIcon(Component c, Graphics g, int x, int y) {
        if( this.countObservers() == 0 )
             register(c);
+
+       /** Remember where this icon is shown, so the animation knows when it is visible,
+        *  and (now that it is) make sure it is animated
+        */
+       if( this.lastPainted == null || this.lastPainted.get() != c )
+            this.lastPainted = new WeakReference<Component>(c);
+       if( this.undeterminateRunning )
+            AnimationClock.getInstance().wake();
        
        boolean isBusy      = isBusy();
        boolean determinate = isBusy && isDeterminate();
@@ -341,7 +348,7 @@ public abstract class AbstractBusyIcon extends Observable implements BusyIcon {
             }
             else {
                 if( comp.isShowing() ) {
-                    comp.repaint();
+                    AnimationClock.getInstance().repaint(comp);
                 }
                 else {
                     // we wan remove it, when this component will become visible again,
@@ -450,22 +457,22 @@ public abstract class AbstractBusyIcon extends Observable implements BusyIcon {
         components.add( new WeakReference<Component>(c) );
     }
 
-    /** Unable to start/stop timer for paint undeterminate state
-     *  @return <code>true</code> if the timer was changed
+    /** Unable to start/stop the animation for paint undeterminate state
+     *  @return <code>true</code> if the animation was started or stopped
      */
-    private boolean refreshUndeterminateTimer() {
-        boolean timerEnabled = isBusy() && !isDeterminate() && this.undeterminateFrameRate > 0;
-        if( timerEnabled ) {
-            this.undeterminateTimer.setDelay( this.undeterminateFrameRate );
-            if( ! this.undeterminateTimer.isRunning() ) {
+    private boolean refreshUndeterminateAnimation() {
+        boolean animationEnabled = isBusy() && !isDeterminate() && this.undeterminateFrameRate > 0;
+        if( animationEnabled ) {
+            if( ! this.undeterminateRunning ) {
                 this.frame = -1;
-                this.undeterminateTimer.start();
+                this.undeterminateRunning = true;
+                AnimationClock.getInstance().wake();
                 return true;
             }
         }
         else {
-            if( this.undeterminateTimer.isRunning() ) {
-                this.undeterminateTimer.stop();
+            if( this.undeterminateRunning ) {
+                this.undeterminateRunning = false;
                 return true;
             }
         }
@@ -478,10 +485,10 @@ public abstract class AbstractBusyIcon extends Observable implements BusyIcon {
         public void stateChanged(ChangeEvent e) {
             BoundedRangeModel model = getModel();
 
-            /** Refresh configuration timer with the new model state
-             *  Maybe the timer should be stopped, started, reconfigured...
+            /** Refresh the animation with the new model state
+             *  Maybe it should be stopped, started, reconfigured...
              */
-            boolean force = refreshUndeterminateTimer();
+            boolean force = refreshUndeterminateAnimation();
 
             if( model != null ) {
                 if( model.getValue() == model.getMaximum() && lastRatio < 1f ) {
@@ -492,9 +499,22 @@ public abstract class AbstractBusyIcon extends Observable implements BusyIcon {
         }
     }
 
-    private class TimerListener implements ActionListener {
+    /** Undeterminate animation, driven by the shared {@link AnimationClock}.
+     *  It animates while this icon is undeterminate and the component it was last painted on is showing.
+     */
+    private class UndeterminateAnimation implements AnimationClock.Animation {
+
+        public boolean isAnimating() {
+            if( ! undeterminateRunning ) return false;
+            Component c = lastPainted == null ? null : lastPainted.get();
+            return c != null && c.isShowing();
+        }
+
+        public int getFrameInterval() {
+            return undeterminateFrameRate;
+        }
 
-        public void actionPerformed(ActionEvent e) {
+        public void nextFrame() {
             frame++;
             if( frame >= frameCount ) frame = 0;
             repaint(true);
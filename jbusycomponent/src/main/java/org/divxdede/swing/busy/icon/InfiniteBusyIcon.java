@@ -141,7 +141,7 @@ public class InfiniteBusyIcon extends AbstractBusyIcon {
             setUndeterminateFrameRate( getDelay() , painter.getPoints() );
         }
         else {
-            setUndeterminateFrameRate( 0 , 0 ); // stop timer
+            setUndeterminateFrameRate( 0 , 0 ); // stop the animation
         }
     }
 
@@ -163,7 +163,7 @@ public class InfiniteBusyIcon extends AbstractBusyIcon {
             setUndeterminateFrameRate( getDelay() , painter.getPoints() );
         }
         else {
-            setUndeterminateFrameRate( 0 , 0 ); // stop the timer
+            setUndeterminateFrameRate( 0 , 0 ); // stop the animation
         }
         repaint(true);
     }
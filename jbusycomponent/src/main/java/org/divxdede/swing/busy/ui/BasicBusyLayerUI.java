@@ -20,6 +20,7 @@
 package org.divxdede.swing.busy.ui;
 
 import org.divxdede.swing.RemainingTimeMonitor;
+import org.divxdede.swing.busy.AnimationClock;
 import org.divxdede.swing.busy.BusyIcon;
 import org.divxdede.swing.busy.BusyModel;
 import org.divxdede.swing.busy.icon.InfiniteBusyIcon;
@@ -113,7 +114,7 @@ public class BasicBusyLayerUI extends AbstractBusyLayerUI {
     /** Internal members for manage shading & veil rendering
      */
     private int            alpha              = 0;
-    private Timer          timer              = null;
+    private final AnimationClock.Animation animation  = new LayerAnimation();
     private Painter        painter            = null;
     private final AtomicBoolean  repainted          = new AtomicBoolean(false);
 
@@ -137,7 +138,6 @@ public class BasicBusyLayerUI extends AbstractBusyLayerUI {
     public BasicBusyLayerUI(final int shadeDelay , final float veilAlpha  , final Color veilColor) {
         
         this.cancelListener     = createCancelListener();
-        this.timer              = createTimer();
                                   createGlassPane();
         
         this.shadeDelayTotal    = shadeDelay;
@@ -145,6 +145,7 @@ public class BasicBusyLayerUI extends AbstractBusyLayerUI {
         this.veilColor          = veilColor;
 
         this.setBusyIcon( new InfiniteBusyIcon() );
+        AnimationClock.getInstance().add( this.animation );
     }
     
     @Override
@@ -157,8 +158,8 @@ public class BasicBusyLayerUI extends AbstractBusyLayerUI {
 
     @Override
     public void uninstallUI(final JComponent c) {
-        // Issue 13 : Stop timer if the view is uninstalled
-        if( this.timer.isRunning() ) this.timer.stop();
+        // Issue 13 : Stop animating if the view is uninstalled (once uninstalled, getLayer() is null,
+        //            so the animation isn't animating any more and the clock leaves it alone)
         super.uninstallUI(c);
         final JLayer layer = (JLayer)c;
         layer.setGlassPane( null );
@@ -362,6 +363,10 @@ public class BasicBusyLayerUI extends AbstractBusyLayerUI {
         if( painter != null ) {
             painter.paint(g2, null , l.getWidth(), l.getHeight() );
         }
+        // the layer is showing: if it is busy, make sure it is animated
+        if( this.animation.isAnimating() ) {
+            AnimationClock.getInstance().wake();
+        }
     }
     
     @Override
@@ -370,10 +375,10 @@ public class BasicBusyLayerUI extends AbstractBusyLayerUI {
         final BusyIcon  myIcon  = getBusyIcon();
         final boolean   isBusy  = isComponentBusy();
 
-        /** Ensure the timer is running when the model is busy (Issue 13 : add getLayer() != null)
+        /** Ensure the clock is running when the model is busy (Issue 13 : add getLayer() != null)
          */
-        if( myModel != null && myModel.isBusy() && !this.timer.isRunning() && getLayer() != null ) {
-            this.timer.start();
+        if( myModel != null && myModel.isBusy() && getLayer() != null ) {
+            AnimationClock.getInstance().wake();
         }
         repainted.set(true);
         
@@ -607,50 +612,61 @@ public class BasicBusyLayerUI extends AbstractBusyLayerUI {
                );
     }
     
-    /** Manage the background shading by starting the dedicated timer if needed.
-     *  This method can only start the timer, never it stop it.
+    /** Manage the background shading by waking the animation clock if needed.
+     *  This method can only wake the clock, never it stop it.
      *  <p>
-     *  For start a timer, the background painter must be dirty (shading not completed)
-     *  and the timer must not already running.
+     *  For wake the clock, the background painter must be dirty (shading not completed).
      *  <p>
      *  If no shading is requested (shadeDelayTotal <= 0 ) then the background is
-     *  updated directly by this method without using any timer)
+     *  updated directly by this method without using the clock)
      */
     private synchronized void manageBackgroundVeil(boolean isBusy) {
         if( ! this.isBackgroundPainterDirty(isBusy) ) return;
         
         if( this.shadeDelayTotal <= 0 ) {
-            /** Do it directly without using a timer (because no animation is needed)
+            /** Do it directly without using the clock (because no animation is needed)
              */
             this.updateBackgroundPainter(isBusy);
         }
+        else {
+            AnimationClock.getInstance().wake();
+        }
     }
 
-    /** Create the Timer responsible to animate this layerUI
+    /** Animation of this layerUI, driven by the shared {@link AnimationClock}.
+     *  <p>
+     *  It animates while the layer is showing and either the model is busy or the veil
+     *  has not finished shading.
      */
-    private synchronized Timer createTimer() {
-        final ActionListener actionListener = new ActionListener() {
+    private class LayerAnimation implements AnimationClock.Animation {
 
-            public void actionPerformed(final ActionEvent e) {
-                synchronized( BasicBusyLayerUI.this ) {
-                    boolean isBusy = isComponentBusy();
-                    
-                    if( updateBackgroundPainter( isBusy ) ) {
+        public boolean isAnimating() {
+            final JLayer<?> layer = getLayer();
+            if( layer == null || !layer.isShowing() ) return false;
+            synchronized( BasicBusyLayerUI.this ) {
+                return isModelBusy() || isBackgroundPainterDirty( isComponentBusy() );
+            }
+        }
+
+        public int getFrameInterval() {
+            return REFRESH_DELAI;
+        }
+
+        public void nextFrame() {
+            synchronized( BasicBusyLayerUI.this ) {
+                boolean isBusy = isComponentBusy();
+
+                if( updateBackgroundPainter( isBusy ) ) {
+                    updateUI();
+                }
+                else {
+                    if( !repainted.get() ) {
                         updateUI();
-                    }
-                    else {
-                        if( !repainted.get() ) {
-                            updateUI();
-                            repainted.set(false); // the timer is on the EDT, the updateUI is really done
-                        }
-                    }
-                    if( ! isModelBusy() && ! isBackgroundPainterDirty( isBusy ) ) {
-                        ((Timer)e.getSource()).stop();
+                        repainted.set(false); // the clock is on the EDT, the updateUI is really done
                     }
                 }
             }
-        };
-        return new Timer( REFRESH_DELAI , actionListener );
+        }
     }
     
     /** Indicate if the background painter is dirty.
@@ -0,0 +1,277 @@
+/*
+ * Copyright (c) 2024. Dan Clark
+ */
+
+package org.nekocode.nowplaying.remote.mediamonkey5;
+
+import org.nekocode.nowplaying.internals.ArtworkCache;
+import org.nekocode.nowplaying.internals.NamedThreadFactory;
+
+import lombok.extern.log4j.Log4j2;
+import org.jetbrains.annotations.Nullable;
+
+import javax.imageio.ImageIO;
+import javax.swing.*;
+import java.awt.image.BufferedImage;
+import java.beans.PropertyChangeEvent;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads track artwork from MediaMonkey.
+ * <p>
+ * MediaMonkey renders a thumbnail of the requested size, and the script reads it back and sends
+ * the image bytes (base64 encoded) through the "artwork" binding.  If the script can't read the
+ * thumbnail, only its URL is sent, and the image is read from MediaMonkey's temp directory
+ * instead.  Images are decoded on a dedicated pool, never on the websocket or event dispatch
+ * threads.  Concurrent requests for the same track and size share a single fetch, which is only
+ * abandoned once every one of them has been cancelled.
+ * <p>
+ * Loaded artwork goes into an {@link ArtworkCache}, in memory and on disk, and requests are answered
+ * from there when possible: artwork prefetched for an upcoming track is ready when it starts
+ * playing, and an album played again (even in a later session) doesn't have to be fetched again.
+ */
+@Log4j2
+public class MM5ArtworkLoader {
+    private static final long ARTWORK_TIMEOUT_SECONDS = 15;
+    /**
+     * description of artwork that came from the cache, in place of the thumbnail's URL
+     */
+    private static final String CACHED_DESCRIPTION = "cached";
+
+    private final MM5Connection connection;
+    private final ExecutorService decodePool = Executors.newFixedThreadPool(2,
+            new NamedThreadFactory("MM5ArtworkDecoder", true));
+    /**
+     * artwork requests that have not completed yet, keyed by request id (track id and size)
+     */
+    private final Map<String, Request> inFlight = new ConcurrentHashMap<>();
+    private final ArtworkCache cache = new ArtworkCache();
+
+    /**
+     * A decoded image, and the hash of the bytes it was decoded from.
+     */
+    private record Decoded(BufferedImage image, String hash, @Nullable String url) { }
+
+    /**
+     * A fetch from MediaMonkey, and the number of callers waiting for it.  Each caller gets its own
+     * copy of the result, so one caller cancelling doesn't fail the others.
+     */
+    private static final class Request {
+        private final CompletableFuture<ImageIcon> artwork = new CompletableFuture<>();
+        private int waiters;
+
+        /**
+         * @return a future for one more caller, or null if the fetch has already been abandoned
+         */
+        synchronized CompletableFuture<ImageIcon> join() {
+            if (artwork.isCancelled()) {
+                return null;
+            }
+            waiters++;
+            CompletableFuture<ImageIcon> copy = artwork.copy();
+            copy.whenComplete((icon, e) -> {
+                if (copy.isCancelled()) {
+                    leave();
+                }
+            });
+            return copy;
+        }
+
+        private synchronized void leave() {
+            if (--waiters == 0) {
+                artwork.cancel(false);
+            }
+        }
+    }
+
+    MM5ArtworkLoader(MM5Connection connection) {
+        this.connection = connection;
+        connection.addBindingListener(this::onArtwork);
+    }
+
+    /**
+     * Starts loading the artwork for a track, unless a load for the same track and size is
+     * already in progress.  Each caller gets its own future.  Once every caller waiting for the
+     * same track and size has cancelled theirs, the request is abandoned: MediaMonkey's response
+     * is ignored instead of decoded.
+     *
+     * @param trackId track to load artwork for
+     * @param size maximum width and height of the artwork
+     * @return future that completes with the artwork, or with null if the track doesn't have any
+     */
+    public CompletableFuture<ImageIcon> load(int trackId, int size) {
+        String requestId = trackId + ":" + size;
+        BufferedImage inMemory = cache.getFromMemory(String.valueOf(trackId), size);
+        if (inMemory != null) {
+            return CompletableFuture.completedFuture(new ImageIcon(inMemory, CACHED_DESCRIPTION));
+        }
+        while (true) {
+            Request request = new Request();
+            Request existing = inFlight.putIfAbsent(requestId, request);
+            if (existing == null) {
+                CompletableFuture<ImageIcon> copy = request.join();
+                fetch(trackId, size, requestId, request);
+                return copy;
+            }
+            CompletableFuture<ImageIcon> copy = existing.join();
+            if (copy != null) {
+                return copy;
+            }
+            // abandoned just now; start over
+            inFlight.remove(requestId, existing);
+        }
+    }
+
+    /**
+     * Answers a new request from the disk cache, or else asks MediaMonkey for the artwork.
+     */
+    private void fetch(int trackId, int size, String requestId, Request request) {
+        CompletableFuture<ImageIcon> artwork = request.artwork;
+        artwork.orTimeout(ARTWORK_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .whenComplete((icon, e) -> inFlight.remove(requestId, request));
+
+        String getCover = """
+                function(request) {
+                    app.getObject('track', { id: request.trackId })
+                        .then(function(track) {
+                            var send = result => window.artwork(JSON.stringify(Object.assign({'requestId': request.requestId}, result)));
+                            if (!track) {
+                                send({});
+                                return;
+                            }
+                            track.getThumbAsync(request.size, request.size, function(thumb) {
+                                if (!thumb) {
+                                    send({});
+                                    return;
+                                }
+                                fetch(thumb)
+                                    .then(response => response.blob())
+                                    .then(blob => {
+                                        var reader = new FileReader();
+                                        reader.onload = () => send({'url': thumb, 'data': reader.result.split(',')[1]});
+                                        reader.readAsDataURL(blob);
+                                    })
+                                    .catch(() => send({'url': thumb}));
+                            });
+                        });
+                }
+                """;
+        decodePool.execute(() -> {
+            // the disk cache is checked off the caller's thread, since the caller may be painting
+            BufferedImage onDisk = cache.get(String.valueOf(trackId), size);
+            if (onDisk != null) {
+                artwork.complete(new ImageIcon(onDisk, CACHED_DESCRIPTION));
+                return;
+            }
+            if (artwork.isDone()) {
+                // cancelled already
+                return;
+            }
+            MM5CallStats.Call call = connection.getCallStats().start("artwork", null);
+            artwork.whenComplete((icon, e) -> {
+                if (e == null) {
+                    call.succeeded();
+                } else {
+                    call.failed(e);
+                }
+            });
+            try {
+                connection.evaluateAsync("artwork.send", connection.call(getCover,
+                        Map.of("trackId", trackId, "requestId", requestId, "size", size)));
+            } catch (ScriptException e) {
+                log.error("Error loading cover art", e);
+                artwork.completeExceptionally(e);
+            }
+        });
+    }
+
+    /**
+     * Forgets the cached artwork of a track, because it may have changed.
+     */
+    public void invalidate(int trackId) {
+        cache.invalidate(String.valueOf(trackId));
+    }
+
+    private void onArtwork(PropertyChangeEvent event) {
+        if (!"artwork".equals(event.getPropertyName())) {
+            return;
+        }
+        String payload = (String) event.getNewValue();
+        decodePool.execute(() -> {
+            MM5JsonCodec.Artwork response;
+            try {
+                response = MM5JsonCodec.readArtwork(payload);
+            } catch (IOException e) {
+                log.error("Error parsing artwork payload", e);
+                return;
+            }
+            Request request = inFlight.get(response.requestId());
+            if (request == null) {
+                // timed out, or a duplicate response
+                return;
+            }
+            CompletableFuture<ImageIcon> artwork = request.artwork;
+            if (artwork.isDone()) {
+                // cancelled while MediaMonkey was working on it
+                return;
+            }
+            try {
+                Decoded decoded = decode(response.data(), response.url());
+                if (decoded == null) {
+                    artwork.complete(null);
+                    return;
+                }
+                String[] key = response.requestId().split(":");
+                BufferedImage image = cache.put(key[0], Integer.parseInt(key[1]), decoded.hash(), decoded.image());
+                artwork.complete(new ImageIcon(image, decoded.url()));
+            } catch (IOException | RuntimeException e) {
+                log.error("Error decoding cover art {}", response.url(), e);
+                artwork.completeExceptionally(e);
+            }
+        });
+    }
+
+    @Nullable
+    private Decoded decode(@Nullable String data, @Nullable String url) throws IOException {
+        byte[] encoded;
+        if (data != null) {
+            encoded = Base64.getDecoder().decode(data);
+        } else if (url != null) {
+            // MediaMonkey's temp directory is inside ours
+            String filterTemp = url.replace("file:///temp/", "");
+            filterTemp = filterTemp.replace("file:///", "");
+            Path fullPath = Path.of(System.getProperty("java.io.tmpdir")).resolve(Path.of(filterTemp));
+            log.info("reading thumbnail from {}", fullPath);
+            encoded = Files.readAllBytes(fullPath);
+        } else {
+            // this track has no artwork
+            return null;
+        }
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(encoded));
+        return image == null
+                ? null
+                : new Decoded(image, ArtworkCache.hash(encoded), url);
+    }
+
+    /**
+     * @return a one line summary of how well the artwork cache is working
+     */
+    public String getCacheStats() {
+        return cache.report();
+    }
+
+    void shutdown() {
+        decodePool.shutdownNow();
+        cache.shutdown();
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright (c) 2024. Dan Clark
+ */
+
+package org.nekocode.nowplaying.remote.mediamonkey5;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.time.LocalTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Timing statistics for the calls made to MediaMonkey, grouped by logical operation
+ * (getCurrentTrack, getTrack, findTracks, rating, position, ...).
+ * <p>
+ * For each operation, it keeps a latency histogram, the number of calls currently in flight, and
+ * the number of calls that failed.  Calls slower than {@link #SLOW_CALL_THRESHOLD_MS} are also
+ * kept, with the start of their script, in a small ring buffer of recent slow calls.  Recording
+ * a call doesn't take any lock except when the call was slow.
+ * <p>
+ * Operations that get their result through a binding are timed twice: the CDP call that sends
+ * the script ("findTracks.send"), and the whole round trip until the result arrives
+ * ("findTracks").  Comparing the two shows whether time is spent sending the request or waiting
+ * for MediaMonkey to answer.
+ */
+public class MM5CallStats {
+    /**
+     * calls that take at least this long are kept in the slow call buffer
+     */
+    public static final long SLOW_CALL_THRESHOLD_MS = 250;
+    private static final int SLOW_CALL_CAPACITY = 32;
+    private static final int SCRIPT_PREVIEW_LENGTH = 160;
+    /**
+     * histogram bucket i counts calls that took less than 2^i ms; the last bucket counts the rest
+     */
+    private static final int BUCKET_COUNT = 18;
+
+    private final Map<String, OperationStats> operations = new ConcurrentHashMap<>();
+    private final SlowCall[] slowCalls = new SlowCall[SLOW_CALL_CAPACITY];
+    private int nextSlowCall;
+
+    /**
+     * A call that took at least {@link #SLOW_CALL_THRESHOLD_MS}.
+     *
+     * @param script the start of the script, or null if the operation isn't a single script
+     * @param error  the error message, if the call failed
+     */
+    public record SlowCall(LocalTime time, String operation, long durationMs,
+                           @Nullable String script, @Nullable String error) { }
+
+    private static class OperationStats {
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Long::max, 0);
+        private final AtomicLongArray histogram = new AtomicLongArray(BUCKET_COUNT);
+    }
+
+    /**
+     * One call in progress.  Exactly one of {@link #succeeded()} or {@link #failed(Throwable)}
+     * must be called when it ends.
+     */
+    public class Call {
+        private final String operation;
+        private final OperationStats stats;
+        @Nullable
+        private final String script;
+        private final long start = System.nanoTime();
+
+        private Call(String operation, @Nullable String script) {
+            this.operation = operation;
+            this.stats = operations.computeIfAbsent(operation, it -> new OperationStats());
+            this.script = script;
+            stats.inFlight.incrementAndGet();
+        }
+
+        public void succeeded() {
+            end(null);
+        }
+
+        public void failed(Throwable error) {
+            stats.errors.increment();
+            end(error.getMessage() == null ? error.getClass().getSimpleName() : error.getMessage());
+        }
+
+        private void end(@Nullable String error) {
+            long nanos = System.nanoTime() - start;
+            stats.inFlight.decrementAndGet();
+            stats.calls.increment();
+            stats.totalNanos.add(nanos);
+            stats.maxNanos.accumulate(nanos);
+            long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+            stats.histogram.incrementAndGet(bucket(millis));
+            if (millis >= SLOW_CALL_THRESHOLD_MS) {
+                addSlowCall(new SlowCall(LocalTime.now().truncatedTo(ChronoUnit.MILLIS), operation, millis,
+                        preview(script), error));
+            }
+        }
+    }
+
+    /**
+     * Starts timing a call.
+     *
+     * @param operation logical operation the call is part of
+     * @param script    script being sent, or null if the operation isn't a single script
+     */
+    public Call start(String operation, @Nullable String script) {
+        return new Call(operation, script);
+    }
+
+    private static int bucket(long millis) {
+        // number of bits needed to hold millis: 0 ms -> 0, 1 ms -> 1, 2-3 ms -> 2, 4-7 ms -> 3, ...
+        int bits = 64 - Long.numberOfLeadingZeros(millis);
+        return Math.min(bits, BUCKET_COUNT - 1);
+    }
+
+    @Nullable
+    private static String preview(@Nullable String script) {
+        if (script == null) {
+            return null;
+        }
+        String oneLine = script.strip().replaceAll("\\s+", " ");
+        return oneLine.length() <= SCRIPT_PREVIEW_LENGTH
+                ? oneLine
+                : oneLine.substring(0, SCRIPT_PREVIEW_LENGTH) + "...";
+    }
+
+    private void addSlowCall(SlowCall slowCall) {
+        synchronized (slowCalls) {
+            slowCalls[nextSlowCall] = slowCall;
+            nextSlowCall = (nextSlowCall + 1) % SLOW_CALL_CAPACITY;
+        }
+    }
+
+    /**
+     * @return recent slow calls, slowest first
+     */
+    public List<SlowCall> getSlowCalls() {
+        List<SlowCall> calls = new ArrayList<>();
+        synchronized (slowCalls) {
+            for (SlowCall call : slowCalls) {
+                if (call != null) {
+                    calls.add(call);
+                }
+            }
+        }
+        calls.sort(Comparator.comparingLong(SlowCall::durationMs).reversed());
+        return calls;
+    }
+
+    /**
+     * @return number of calls currently in flight, over all operations
+     */
+    public int getInFlight() {
+        return operations.values().stream()
+                .mapToInt(stats -> stats.inFlight.get())
+                .sum();
+    }
+
+    /**
+     * Forgets all statistics collected so far.  Calls in flight are still counted when they end.
+     */
+    public void reset() {
+        operations.clear();
+        synchronized (slowCalls) {
+            Arrays.fill(slowCalls, null);
+            nextSlowCall = 0;
+        }
+    }
+
+    /**
+     * @return a plain text report of all operations and recent slow calls
+     */
+    public String report() {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%-24s %8s %7s %9s %9s %9s %9s %9s %9s%n",
+                "operation", "calls", "errors", "in-flight", "mean ms", "p50 ms", "p95 ms", "p99 ms", "max ms"));
+        new TreeMap<>(operations).forEach((operation, stats) -> {
+            long calls = stats.calls.sum();
+            report.append(String.format("%-24s %8d %7d %9d %9.1f %9s %9s %9s %9.1f%n",
+                    operation,
+                    calls,
+                    stats.errors.sum(),
+                    stats.inFlight.get(),
+                    calls == 0 ? 0 : stats.totalNanos.sum() / 1e6 / calls,
+                    percentile(stats, 0.50),
+                    percentile(stats, 0.95),
+                    percentile(stats, 0.99),
+                    stats.maxNanos.get() / 1e6));
+        });
+
+        List<SlowCall> slow = getSlowCalls();
+        report.append(String.format("%nslow calls (>= %d ms), slowest first:%n", SLOW_CALL_THRESHOLD_MS));
+        if (slow.isEmpty()) {
+            report.append("  none\n");
+        }
+        for (SlowCall call : slow) {
+            report.append(String.format("  %s %-24s %6d ms%s%n", call.time(), call.operation(), call.durationMs(),
+                    call.error() == null ? "" : "  FAILED: " + call.error()));
+            if (call.script() != null) {
+                report.append("      ").append(call.script()).append('\n');
+            }
+        }
+        return report.toString();
+    }
+
+    /**
+     * @return upper bound of the histogram bucket the percentile falls in, as text ("<= 16",
+     *         or "> 65535" for the last bucket)
+     */
+    private static String percentile(OperationStats stats, double fraction) {
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            total += stats.histogram.get(i);
+        }
+        if (total == 0) {
+            return "-";
+        }
+        long target = (long) Math.ceil(total * fraction);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT - 1; i++) {
+            seen += stats.histogram.get(i);
+            if (seen >= target) {
+                return "<= " + Math.max(0, (1L << i) - 1);
+            }
+        }
+        return "> " + ((1L << (BUCKET_COUNT - 2)) - 1);
+    }
+}
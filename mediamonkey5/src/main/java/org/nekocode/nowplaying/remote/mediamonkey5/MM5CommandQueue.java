@@ -0,0 +1,245 @@
+/*
+ * Copyright (c) 2024. Dan Clark
+ */
+
+package org.nekocode.nowplaying.remote.mediamonkey5;
+
+import org.nekocode.nowplaying.internals.NamedThreadFactory;
+
+import lombok.extern.log4j.Log4j2;
+
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Sends transport and rating commands to MediaMonkey from a single background thread, in the
+ * order they were issued, so that the caller (usually the event dispatch thread) never waits on
+ * MediaMonkey.
+ * <p>
+ * Commands that haven't been sent yet are coalesced: a burst of next (or previous) presses is sent
+ * as a single script that skips several tracks, a play or pause replaces a play or pause that
+ * is still waiting, and a new rating for a track replaces a rating for the same track that is
+ * still waiting.  Every caller still gets a future that completes when its command (or the
+ * command it was merged into) has finished.
+ */
+@Log4j2
+public class MM5CommandQueue {
+    private enum Kind {PLAY_PAUSE, SKIP, RATING}
+
+    /**
+     * plays, pauses or skips (count times); the returned promise settles once the player has
+     * done all of it
+     */
+    private static final String TRANSPORT_SCRIPT = """
+            async function(command) {
+                for (var i = 0; i < command.count; i++) {
+                    await app.player[command.action + 'Async']();
+                }
+            }
+            """;
+    private static final String RATING_SCRIPT = """
+            function(command) {
+                return app.getObject('track', { id: command.trackId })
+                    .then(function(track) { if (track) {track.rating = command.rating; return track.commitAsync();} });
+            }
+            """;
+
+    /**
+     * A pending command.  Only accessed while holding the queue's lock until it is taken off the
+     * queue to be sent.
+     */
+    private static class Command {
+        private final Kind kind;
+        private final List<CompletableFuture<Void>> futures = new ArrayList<>();
+        /**
+         * PLAY_PAUSE: "play" or "pause"; SKIP: "next" or "prev"
+         */
+        private String action;
+        /**
+         * SKIP: number of tracks to skip
+         */
+        private int count;
+        /**
+         * RATING: track to rate, and its new rating
+         */
+        private int trackId;
+        private int rating;
+
+        private Command(Kind kind) {
+            this.kind = kind;
+        }
+
+        private String toScript(MM5Connection connection) throws ScriptException {
+            return switch (kind) {
+                case PLAY_PAUSE -> connection.call(TRANSPORT_SCRIPT, Map.of("action", action, "count", 1));
+                case SKIP -> connection.call(TRANSPORT_SCRIPT, Map.of("action", action, "count", count));
+                case RATING -> connection.call(RATING_SCRIPT, Map.of("trackId", trackId, "rating", rating));
+            };
+        }
+
+        @Override
+        public String toString() {
+            return switch (kind) {
+                case PLAY_PAUSE -> action;
+                case SKIP -> action + " x" + count;
+                case RATING -> "rate " + trackId + " " + rating;
+            };
+        }
+    }
+
+    private final MM5Connection connection;
+    private final ExecutorService sender = Executors.newSingleThreadExecutor(
+            new NamedThreadFactory("MM5Commands", true));
+
+    private final Object lock = new Object();
+    private final Deque<Command> pending = new LinkedList<>();
+    /**
+     * true while the sender has been asked to drain the queue
+     */
+    private boolean draining;
+    /**
+     * true once {@link #shutdown()} has been called; nothing more is queued after that
+     */
+    private boolean shutdown;
+
+    MM5CommandQueue(MM5Connection connection) {
+        this.connection = connection;
+    }
+
+    public CompletableFuture<Void> play() {
+        return submitPlayPause("play");
+    }
+
+    public CompletableFuture<Void> pause() {
+        return submitPlayPause("pause");
+    }
+
+    public CompletableFuture<Void> next() {
+        return submitSkip("next");
+    }
+
+    public CompletableFuture<Void> previous() {
+        return submitSkip("prev");
+    }
+
+    public CompletableFuture<Void> rate(int trackId, int rating) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        synchronized (lock) {
+            if (shutdown) {
+                return closedFuture();
+            }
+            Command command = pending.stream()
+                    .filter(it -> it.kind == Kind.RATING && it.trackId == trackId)
+                    .findFirst()
+                    .orElse(null);
+            if (command == null) {
+                command = new Command(Kind.RATING);
+                command.trackId = trackId;
+                enqueue(command);
+            }
+            // the last rating wins
+            command.rating = rating;
+            command.futures.add(future);
+        }
+        return future;
+    }
+
+    private CompletableFuture<Void> submitPlayPause(String action) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        synchronized (lock) {
+            if (shutdown) {
+                return closedFuture();
+            }
+            Command command = pending.peekLast();
+            if (command == null || command.kind != Kind.PLAY_PAUSE) {
+                command = new Command(Kind.PLAY_PAUSE);
+                enqueue(command);
+            }
+            // only the last play or pause matters
+            command.action = action;
+            command.futures.add(future);
+        }
+        return future;
+    }
+
+    private CompletableFuture<Void> submitSkip(String action) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        synchronized (lock) {
+            if (shutdown) {
+                return closedFuture();
+            }
+            Command command = pending.peekLast();
+            if (command == null || command.kind != Kind.SKIP || !command.action.equals(action)) {
+                command = new Command(Kind.SKIP);
+                command.action = action;
+                enqueue(command);
+            }
+            command.count++;
+            command.futures.add(future);
+        }
+        return future;
+    }
+
+    private static CompletableFuture<Void> closedFuture() {
+        return CompletableFuture.failedFuture(new ScriptException("Command queue has been shut down"));
+    }
+
+    /**
+     * must be called while holding the lock, and only before shutdown
+     */
+    private void enqueue(Command command) {
+        pending.addLast(command);
+        if (!draining) {
+            draining = true;
+            sender.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            Command command;
+            synchronized (lock) {
+                command = pending.pollFirst();
+                if (command == null) {
+                    draining = false;
+                    return;
+                }
+            }
+            send(command);
+        }
+    }
+
+    private void send(Command command) {
+        log.debug("sending {}", command);
+        try {
+            // wait for each command to finish, so the next one sees its effects
+            connection.evaluateAsyncAndWait(command.kind == Kind.RATING ? "rating" : "transport", command.toScript(connection));
+            command.futures.forEach(future -> future.complete(null));
+        } catch (ScriptException | RuntimeException e) {
+            log.error("Error in '{}':", command, e);
+            command.futures.forEach(future -> future.completeExceptionally(e));
+        }
+    }
+
+    /**
+     * Stops sending commands.  Commands that haven't been sent yet are cancelled.
+     */
+    void shutdown() {
+        List<Command> unsent;
+        synchronized (lock) {
+            // checked by every submit under the same lock, so nothing can be queued once the
+            // sender has stopped
+            shutdown = true;
+            unsent = new ArrayList<>(pending);
+            pending.clear();
+        }
+        sender.shutdownNow();
+        unsent.forEach(command -> command.futures.forEach(future -> future.cancel(false)));
+    }
+}
@@ -5,86 +5,141 @@
 package org.nekocode.nowplaying.remote.mediamonkey5;
 
 import org.nekocode.nowplaying.NowPlayingProperties;
+import org.nekocode.nowplaying.internals.NamedThreadFactory;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.github.kklisura.cdt.protocol.commands.Runtime;
+import com.github.kklisura.cdt.protocol.events.runtime.BindingCalled;
 import com.github.kklisura.cdt.protocol.events.runtime.ExceptionThrown;
 import com.github.kklisura.cdt.protocol.types.runtime.Evaluate;
 import com.github.kklisura.cdt.protocol.types.runtime.ExceptionDetails;
 import com.github.kklisura.cdt.protocol.types.runtime.RemoteObject;
 import com.github.kklisura.cdt.services.ChromeDevToolsService;
 import com.github.kklisura.cdt.services.ChromeService;
+import com.github.kklisura.cdt.services.config.ChromeDevToolsServiceConfiguration;
 import com.github.kklisura.cdt.services.impl.ChromeServiceImpl;
 import lombok.extern.log4j.Log4j2;
 
 import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeSupport;
-import java.util.HashMap;
-import java.util.List;
+import java.io.IOException;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
+/**
+ * Connection to MediaMonkey 5 through the Chrome Dev Tools protocol.
+ * <p>
+ * The connection supervises itself: if MediaMonkey isn't running yet, restarts, or the websocket
+ * drops, it keeps trying to reconnect (with exponential backoff), and re-registers its callbacks
+ * and bindings when it succeeds.  Listeners registered on this object survive reconnects.  While
+ * disconnected, all evaluate calls fail immediately with a {@link ScriptException}.
+ */
 @Log4j2
 public class MM5Connection {
-    private final Runtime runtime;
-    private final ChromeDevToolsService devToolsService;
+    /**
+     * time between checks that MediaMonkey is still responding
+     */
+    private static final long HEARTBEAT_INTERVAL_MS = 10_000;
+    private static final long INITIAL_RECONNECT_DELAY_MS = 1_000;
+    private static final long MAX_RECONNECT_DELAY_MS = 60_000;
+    /**
+     * how long a single call may wait for a response before it is abandoned
+     */
+    private static final long READ_TIMEOUT_SECONDS = 20;
+
+    private final String host;
+    private final int port;
     private final ObjectMapper objectMapper;
+    private final ScheduledExecutorService supervisor;
 
     private final PropertyChangeSupport playbackStateListeners;
     private final PropertyChangeSupport bindingListeners;
+    /**
+     * names of bindings that must be (re-)added every time a connection is established
+     */
+    private final Set<String> bindings = ConcurrentHashMap.newKeySet();
+    private final MM5ArtworkLoader artworkLoader;
+    private final MM5CallStats callStats = new MM5CallStats();
+
+    private final Object connectionLock = new Object();
+    private volatile ChromeDevToolsService devToolsService;
+    private volatile Runtime runtime;
+    private long reconnectDelayMs = INITIAL_RECONNECT_DELAY_MS;
+    private volatile boolean closed;
 
-    private final Object notificationLock = new Object();
     /**
-     * minimum time that must pass between identical notifications before they
-     * are not considered a duplicate of the same event
+     * binding that MediaMonkey's player and library events are sent through
      */
-    private final static long DUPLICATE_NOTIFICATION_WINDOW_MS = 100;
-    private long lastNotificationTime;
-    private String lastNotificationValue;
+    private static final String EVENT_BINDING = "nowPlayingEvent";
+    /**
+     * minimum time that must pass between identical events of each type before they are not
+     * considered a duplicate of the same event.  MediaMonkey often raises the same event several
+     * times in a row; editing a track can raise a burst of trackModified events.
+     */
+    private static final Map<String, Long> DUPLICATE_EVENT_WINDOW_MS = Map.of(
+            "seekChange", 100L,
+            "playbackState", 100L,
+            "playbackEnd", 100L,
+            "trackModified", 500L,
+            "nowPlayingModified", 250L);
+    private static final long DEFAULT_DUPLICATE_EVENT_WINDOW_MS = 100;
+    /**
+     * the last event accepted for each event type
+     */
+    private final Map<String, MM5Event> lastEvents = new ConcurrentHashMap<>();
 
     public MM5Connection() {
         Properties properties = NowPlayingProperties.loadProperties();
-        String host = properties.getProperty(NowPlayingProperties.REMOTE_MACHINE.name());
-        int port = Integer.parseInt(properties.getProperty(NowPlayingProperties.REMOTE_PORT.name()));
+        host = properties.getProperty(NowPlayingProperties.REMOTE_MACHINE.name());
+        port = Integer.parseInt(properties.getProperty(NowPlayingProperties.REMOTE_PORT.name()));
 
         objectMapper = new ObjectMapper();
         playbackStateListeners = new PropertyChangeSupport(this);
         bindingListeners = new PropertyChangeSupport(this);
+        supervisor = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("MM5Connection", true));
 
-        ChromeService chromeService = new ChromeServiceImpl(host, port);
-        Optional<ChromeDevToolsService> devToolsServiceOptional = chromeService.getTabs()
-                .stream()
-                .filter(tab -> Objects.equals("file:///mainwindow.html", tab.getUrl()))
-                .findFirst()
-                .map(chromeService::createDevToolsService);
-        if (devToolsServiceOptional.isPresent()) {
-            // Get DevTools service to this tab
-            devToolsService = devToolsServiceOptional.get();
-            runtime = devToolsService.getRuntime();
-            runtime.onExceptionThrown(this::handleRuntimeException);
-            runtime.enable();
-            registerCallbacks();
-        } else {
-            throw new RuntimeException("Could not connect to Chrome Dev Tools");
+        bindings.add(EVENT_BINDING);
+        bindings.add("getTrack");
+        bindings.add("findTracks");
+        bindings.add("artwork");
+        artworkLoader = new MM5ArtworkLoader(this);
+
+        if (!connect()) {
+            scheduleReconnect();
         }
+        supervisor.scheduleWithFixedDelay(this::heartbeat,
+                HEARTBEAT_INTERVAL_MS, HEARTBEAT_INTERVAL_MS, TimeUnit.MILLISECONDS);
     }
 
     /**
-     * valid property names: seekChange, playbackState, playbackEnd
+     * valid property names: seekChange, playbackState, playbackEnd, trackModified, nowPlayingModified,
+     * connected
+     * <p>
+     * Player and library events are fired with the {@link MM5Event} as the new value, after
+     * duplicates have been filtered out.  "connected" is fired with a Boolean new value whenever the connection to MediaMonkey is
+     * lost or (re-)established.
      */
     void addPropertyChangeListener(PropertyChangeListener listener) {
         playbackStateListeners.addPropertyChangeListener(listener);
     }
 
+    void removePropertyChangeListener(PropertyChangeListener listener) {
+        playbackStateListeners.removePropertyChangeListener(listener);
+    }
+
     /**
-     * valid property names: getTrack
+     * valid property names: getTrack, findTracks, artwork
      * <p>
-     * the "new" value will contain the payload
+     * the "new" value will contain the payload (a JSON string)
      *
      * @param listener the PropertyChangeListener to be added
      */
@@ -102,91 +157,229 @@ public class MM5Connection {
     }
 
     /**
-     * Use the console to receive events
+     * @return the loader shared by all tracks from this connection
      */
-    private void registerCallbacks() {
+    MM5ArtworkLoader getArtworkLoader() {
+        return artworkLoader;
+    }
+
+    /**
+     * @return timing statistics for every call made through this connection
+     */
+    public MM5CallStats getCallStats() {
+        return callStats;
+    }
+
+    /**
+     * @return true if there is currently a live connection to MediaMonkey
+     */
+    public boolean isConnected() {
+        return runtime != null;
+    }
+
+    /**
+     * Finds the MediaMonkey main window and connects to it.
+     *
+     * @return true if the connection was established
+     */
+    private boolean connect() {
+        synchronized (connectionLock) {
+            if (closed) {
+                return false;
+            }
+            try {
+                ChromeService chromeService = new ChromeServiceImpl(host, port);
+                ChromeDevToolsServiceConfiguration configuration = new ChromeDevToolsServiceConfiguration();
+                configuration.setReadTimeout(READ_TIMEOUT_SECONDS);
+                Optional<ChromeDevToolsService> devToolsServiceOptional = chromeService.getTabs()
+                        .stream()
+                        .filter(tab -> Objects.equals("file:///mainwindow.html", tab.getUrl()))
+                        .findFirst()
+                        .map(tab -> chromeService.createDevToolsService(tab, configuration));
+                if (devToolsServiceOptional.isEmpty()) {
+                    log.warn("MediaMonkey main window not found at {}:{}", host, port);
+                    return false;
+                }
+
+                // Get DevTools service to this tab
+                devToolsService = devToolsServiceOptional.get();
+                Runtime newRuntime = devToolsService.getRuntime();
+                newRuntime.onExceptionThrown(this::handleRuntimeException);
+                newRuntime.onBindingCalled(this::onBindingCalled);
+                newRuntime.enable();
+                registerCallbacks(newRuntime);
+                // only publish the runtime once it is fully set up
+                runtime = newRuntime;
+                reconnectDelayMs = INITIAL_RECONNECT_DELAY_MS;
+                log.info("Connected to Chrome Dev Tools at {}:{}", host, port);
+            } catch (RuntimeException | ScriptException e) {
+                log.warn("Could not connect to Chrome Dev Tools at {}:{}: {}", host, port, e.getMessage());
+                dropSession();
+                return false;
+            }
+        }
+        playbackStateListeners.firePropertyChange("connected", false, true);
+        return true;
+    }
+
+    private void scheduleReconnect() {
+        synchronized (connectionLock) {
+            if (closed) {
+                return;
+            }
+            log.info("Reconnecting to MediaMonkey in {} ms", reconnectDelayMs);
+            supervisor.schedule(this::reconnect, reconnectDelayMs, TimeUnit.MILLISECONDS);
+            reconnectDelayMs = Math.min(reconnectDelayMs * 2, MAX_RECONNECT_DELAY_MS);
+        }
+    }
+
+    private void reconnect() {
+        if (!connect()) {
+            scheduleReconnect();
+        }
+    }
+
+    /**
+     * Checks that MediaMonkey is still responding.  A failed call will start the reconnect cycle.
+     */
+    private void heartbeat() {
+        Runtime current = runtime;
+        if (closed || current == null) {
+            // nothing to check - either shut down or already reconnecting
+            return;
+        }
         try {
-            String callbacks = """
-                    var seekChange = e => console.debug('seekChange:' + e);
-                    var playbackState = e => console.debug('playbackState:' + e);
-                    var playbackEnd = e => console.debug('playbackEnd:' + e);
-                    var trackModified = e => console.debug('trackModified:' + e.id);
-                                        
-                    app.listen(app.player, 'seekChange', seekChange);
-                    app.listen(app.player, 'playbackState', playbackState);
-                    app.listen(app.player, 'playbackEnd', playbackEnd);
-                    app.listen(app, 'trackModified', trackModified);
-                    """;
-
-            evaluateAsync(callbacks);
-            runtime.onConsoleAPICalled(e -> {
-                e.getArgs().forEach(a -> {
-                    String value = a.getValue().toString();
-                    if (isUniqueNotification(value)) {
-                        setLastNotification(value);
-                    } else {
-                        return;
-                    }
-
-                    String[] chunks = value.split(":");
-                    switch (chunks[0]) {
-                        case "seekChange", "playbackState", "trackModified" -> {
-                            log.info("event [{}] with value [{}]", chunks[0], chunks[1]);
-                            playbackStateListeners.firePropertyChange(chunks[0], null, chunks[1]);
-                        }
-                        case "thumbnail" -> {
-                            String url = String.join(":", List.of(chunks).subList(2, chunks.length));
-                            playbackStateListeners.firePropertyChange(chunks[0], chunks[1], url);
-                        }
-                        case "findTracks" -> {
-                            playbackStateListeners.firePropertyChange(chunks[0], chunks[1], chunks[2]);
-                        }
-                    }
-                });
-            });
+            ChromeDevToolsService service = devToolsService;
+            if (service == null || service.isClosed()) {
+                connectionLost(current, "websocket closed");
+                return;
+            }
+            // if the main window reloads, "app" will briefly be undefined and our callbacks are gone
+            String appType = evaluate("heartbeat", "typeof app");
+            if (!"object".equals(appType)) {
+                connectionLost(current, "MediaMonkey main window is not loaded");
+            }
+        } catch (ScriptException e) {
+            log.debug("heartbeat failed", e);
+        }
+    }
 
-            runtime.addBinding("getTrack");
-            runtime.onBindingCalled(event -> {
+    /**
+     * Tears down the given session (unless it has already been replaced) and starts reconnecting.
+     */
+    private void connectionLost(Runtime failedRuntime, String reason) {
+        synchronized (connectionLock) {
+            if (closed || runtime != failedRuntime) {
+                // someone else already noticed
+                return;
+            }
+            log.warn("Lost connection to MediaMonkey: {}", reason);
+            dropSession();
+        }
+        playbackStateListeners.firePropertyChange("connected", true, false);
+        scheduleReconnect();
+    }
+
+    private void dropSession() {
+        synchronized (connectionLock) {
+            ChromeDevToolsService service = devToolsService;
+            runtime = null;
+            devToolsService = null;
+            if (service != null && !service.isClosed()) {
                 try {
-                    JsonNode jsonNode = objectMapper.readTree(event.getPayload());
-                    Map<String, Object> trackProperties = new HashMap<>();
-                    jsonNode.fields().forEachRemaining(field -> {
-                        if (field.getValue().isFloatingPointNumber()) {
-                            trackProperties.put(field.getKey(), field.getValue().doubleValue());
-                        }
-                        if (field.getValue().isIntegralNumber()) {
-                            trackProperties.put(field.getKey(), field.getValue().longValue());
-                        }
-                        if (field.getValue().isTextual()) {
-                            trackProperties.put(field.getKey(), field.getValue().textValue());
+                    service.close();
+                } catch (RuntimeException e) {
+                    log.debug("error closing Chrome Dev Tools service", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Listens for player and library events, which are sent through a dedicated binding as
+     * {type, trackId, payload, ts}.  MediaMonkey's own console output is never looked at.
+     */
+    private void registerCallbacks(Runtime runtime) throws ScriptException {
+        // add the bindings first, so that no event is sent before we can receive it
+        bindings.forEach(runtime::addBinding);
+
+        // the page keeps these listeners if only the websocket dropped, so only add them once per page load
+        String callbacks = """
+                if (!window.nowPlayingEvents) {
+                    window.nowPlayingEvents = true;
+                    var send = (type, trackId, payload) => {
+                        if (window.%1$s) {
+                            window.%1$s(JSON.stringify({
+                                'type': type,
+                                'trackId': trackId,
+                                'payload': payload === undefined || payload === null ? null : String(payload),
+                                'ts': Date.now()}));
                         }
-                    });
-                    bindingListeners.firePropertyChange(event.getName(), null, trackProperties);
-                } catch (JsonProcessingException e) {
-                    log.error(STR."Error parsing getTrack payload: \{event.getPayload()}", e);
+                    };
+                    var currentTrackId = () => {
+                        var track = app.player.getCurrentTrack();
+                        return track ? track.id : 0;
+                    };
+
+                    app.listen(app.player, 'seekChange', e => send('seekChange', currentTrackId(), e));
+                    app.listen(app.player, 'playbackState', e => send('playbackState', currentTrackId(), e));
+                    app.listen(app.player, 'playbackEnd', e => send('playbackEnd', currentTrackId(), null));
+                    app.listen(app, 'trackModified', e => send('trackModified', e ? e.id : 0, null));
+                    // every list change is sent (numbered, so none is taken for a duplicate), since
+                    // the cached parts of the list are updated from each one in turn
+                    var listChanges = 0;
+                    app.listen(app.player.getSongList(), 'change', (type, index, count) => send('nowPlayingModified', 0,
+                        JSON.stringify({
+                            'type': typeof type === 'string' ? type : null,
+                            'index': typeof index === 'number' ? index : -1,
+                            'count': typeof count === 'number' ? count : 1,
+                            'seq': ++listChanges})));
                 }
-            });
+                """.formatted(EVENT_BINDING);
 
-        } catch (ScriptException e) {
-            log.error("Error registering listeners:", e);
-        }
+        handleException(evaluate(runtime, "events", callbacks, false, false).getExceptionDetails());
     }
 
     /**
-     * A notification is unique if enough time has passed, or the strings are different.
+     * Binding payloads are passed on as JSON strings; each listener decodes the payloads it is
+     * interested in with {@link MM5JsonCodec}.  Events are decoded here and passed to the playback
+     * state listeners.
      */
-    private boolean isUniqueNotification(String notificationValue) {
-        synchronized (notificationLock) {
-            return System.currentTimeMillis() > (lastNotificationTime + DUPLICATE_NOTIFICATION_WINDOW_MS)
-                    || !Objects.equals(lastNotificationValue, notificationValue);
+    private void onBindingCalled(BindingCalled event) {
+        if (EVENT_BINDING.equals(event.getName())) {
+            onEvent(event.getPayload());
+        } else {
+            bindingListeners.firePropertyChange(event.getName(), null, event.getPayload());
         }
     }
 
-    private void setLastNotification(String notificationValue) {
-        synchronized (notificationLock) {
-            lastNotificationTime = System.currentTimeMillis();
-            lastNotificationValue = notificationValue;
+    private void onEvent(String payload) {
+        MM5Event event;
+        try {
+            event = MM5JsonCodec.readEvent(payload);
+        } catch (IOException e) {
+            log.error("Error parsing event: {}", payload, e);
+            return;
+        }
+        if (!isUniqueEvent(event)) {
+            return;
         }
+        log.info("event [{}] for track {} with value [{}]", event.type(), event.trackId(), event.payload());
+        playbackStateListeners.firePropertyChange(event.type(), null, event);
+    }
+
+    /**
+     * An event is unique if it differs from the last accepted event of the same type, or enough
+     * time has passed since that event.  Each event type is checked independently, without a
+     * shared lock.
+     */
+    private boolean isUniqueEvent(MM5Event event) {
+        long window = DUPLICATE_EVENT_WINDOW_MS.getOrDefault(event.type(), DEFAULT_DUPLICATE_EVENT_WINDOW_MS);
+        MM5Event accepted = lastEvents.compute(event.type(), (type, last) ->
+                last != null && last.isSameAs(event) && event.ts() - last.ts() < window
+                        ? last
+                        : event);
+        return accepted == event;
     }
 
     private void handleRuntimeException(ExceptionThrown exceptionThrown) {
@@ -215,71 +408,120 @@ public class MM5Connection {
         }
     }
 
-    public <T> T evaluate(String script) throws ScriptException {
-        Evaluate evaluate = runtime.evaluate(
+    /**
+     * Sends a script to MediaMonkey.  Fails fast if there is no connection, and starts the
+     * reconnect cycle if the call fails because the connection has gone away.  Every call is
+     * timed in {@link #getCallStats()} under the given operation name.
+     */
+    private Evaluate invokeEvaluate(String operation, String script, boolean returnByValue, boolean awaitPromise)
+            throws ScriptException {
+        MM5CallStats.Call call = callStats.start(operation, script);
+        try {
+            Evaluate evaluate = invokeEvaluate(runtime, operation, script, returnByValue, awaitPromise);
+            call.succeeded();
+            return evaluate;
+        } catch (ScriptException e) {
+            call.failed(e);
+            throw e;
+        }
+    }
+
+    private Evaluate invokeEvaluate(Runtime current, String operation, String script,
+                                    boolean returnByValue, boolean awaitPromise) throws ScriptException {
+        if (current == null) {
+            throw new ScriptException("Not connected to MediaMonkey");
+        }
+        Evaluate evaluate;
+        try {
+            evaluate = evaluate(current, operation, script, returnByValue, awaitPromise);
+        } catch (RuntimeException e) {
+            connectionLost(current, e.getMessage());
+            throw new ScriptException("Lost connection to MediaMonkey", e);
+        }
+        handleException(evaluate.getExceptionDetails());
+        return evaluate;
+    }
+
+    /**
+     * The operation is sent as the evaluation's object group.  Results are returned by value or
+     * not at all, so MediaMonkey never holds on to anything in the group, but it tells whoever is
+     * at the other end what each script is for without having to read it.
+     */
+    private static Evaluate evaluate(Runtime runtime, String operation, String script,
+                                     boolean returnByValue, boolean awaitPromise) {
+        return runtime.evaluate(
                 script,
+                operation,
                 null,
                 null,
                 null,
-                null,
-                true,
-                null,
+                returnByValue,
                 null,
                 null,
+                awaitPromise,
                 null,
                 null,
                 null,
                 null,
                 null,
                 null);
-        handleException(evaluate.getExceptionDetails());
+    }
+
+    /**
+     * @param operation name the call is timed under
+     */
+    public <T> T evaluate(String operation, String script) throws ScriptException {
+        Evaluate evaluate = invokeEvaluate(operation, script, true, false);
         RemoteObject evaluateResult = evaluate.getResult();
 
         @SuppressWarnings("unchecked") T result = (T) evaluateResult.getValue();
         return result;
     }
 
-    public void evaluateAsyncAndWait(String promiseScript) throws ScriptException {
-        Evaluate evaluate = runtime.evaluate(
-                promiseScript,
-                null,
-                null,
-                null,
-                null,
-                false,
-                null,
-                null,
-                true,
-                null,
-                null,
-                null,
-                null,
-                null,
-                null);
-        handleException(evaluate.getExceptionDetails());
+    /**
+     * Encodes a value as JSON.  Since JSON is valid javascript, this is the safe way to pass
+     * arbitrary strings (which may contain quotes) into a script.
+     */
+    String toJson(Object value) throws ScriptException {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new ScriptException("Could not encode script parameter", e);
+        }
     }
 
-    public void evaluateAsync(String script) throws ScriptException {
-        Evaluate evaluate = runtime.evaluate(
-                script,
-                null,
-                null,
-                null,
-                null,
-                false,
-                null,
-                null,
-                false,
-                null,
-                null,
-                null,
-                null,
-                null,
-                null);
-        handleException(evaluate.getExceptionDetails());
+    /**
+     * Builds a script that applies a function to a single argument: {@code (function)(argument)},
+     * with the argument encoded as JSON.  Scripts that take parameters are built this way rather
+     * than by formatting values into their text, so every value is quoted safely and the arguments
+     * can be read back out of the script without knowing what the function says.
+     *
+     * @param function a javascript function expression taking one parameter
+     */
+    String call(String function, Object argument) throws ScriptException {
+        return "(" + function.strip() + ")(" + toJson(argument) + ")";
+    }
+
+    /**
+     * @param operation name the call is timed under
+     */
+    public void evaluateAsyncAndWait(String operation, String promiseScript) throws ScriptException {
+        invokeEvaluate(operation, promiseScript, false, true);
+    }
+
+    /**
+     * @param operation name the call is timed under
+     */
+    public void evaluateAsync(String operation, String script) throws ScriptException {
+        invokeEvaluate(operation, script, false, false);
     }
 
     public void close() {
-        devToolsService.close();
+        synchronized (connectionLock) {
+            closed = true;
+        }
+        supervisor.shutdownNow();
+        artworkLoader.shutdown();
+        dropSession();
     }
 }
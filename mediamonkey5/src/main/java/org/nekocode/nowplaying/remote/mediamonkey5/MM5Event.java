@@ -0,0 +1,29 @@
+/*
+ * Copyright (c) 2024. Dan Clark
+ */
+
+package org.nekocode.nowplaying.remote.mediamonkey5;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Objects;
+
+/**
+ * A player or library event sent by MediaMonkey through the "nowPlayingEvent" binding.
+ *
+ * @param type    name of the event: seekChange, playbackState, playbackEnd, trackModified or
+ *                nowPlayingModified (the Now Playing list changed)
+ * @param trackId track the event refers to, or 0 if the event doesn't refer to a track
+ * @param payload event value (for example, the new playback state), if the event has one
+ * @param ts      time the event was raised, in milliseconds since the epoch (MediaMonkey's clock)
+ */
+public record MM5Event(String type, int trackId, @Nullable String payload, long ts) {
+    /**
+     * @return true if the other event has the same type, track and payload
+     */
+    boolean isSameAs(MM5Event other) {
+        return type.equals(other.type)
+                && trackId == other.trackId
+                && Objects.equals(payload, other.payload);
+    }
+}
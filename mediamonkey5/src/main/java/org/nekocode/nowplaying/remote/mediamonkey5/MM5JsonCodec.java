@@ -0,0 +1,295 @@
+/*
+ * Copyright (c) 2024. Dan Clark
+ */
+
+package org.nekocode.nowplaying.remote.mediamonkey5;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Decodes the JSON that MediaMonkey sends back (binding payloads and script results) directly
+ * into typed objects with Jackson's streaming parser.  No intermediate tree or map is built, and
+ * fields that NowPlaying doesn't use are skipped without being materialized.
+ * <p>
+ * Tracks are read from (and written in) the format of MediaMonkey's track.asJSON, so the same
+ * code reads both MediaMonkey's payloads and the library mirror file.
+ */
+final class MM5JsonCodec {
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private MM5JsonCodec() { }
+
+    /**
+     * A page of search results.
+     */
+    record TrackPage(String requestId, List<MM5TrackData> tracks) { }
+
+    /**
+     * Player state, position and current track, as returned by the snapshot query.
+     */
+    record Snapshot(boolean isPlaying, boolean paused, long trackPositionMS, @Nullable MM5TrackData track) { }
+
+    /**
+     * Part of the Now Playing list.
+     *
+     * @param count    number of tracks in the whole list
+     * @param position index of the current track in the list, or -1 if nothing is playing
+     * @param tracks   the requested tracks
+     */
+    record PlaylistWindow(int count, int position, List<MM5TrackData> tracks) { }
+
+    /**
+     * Artwork for an artwork request.  Either data (base64 image bytes) or url (location of the
+     * image file) is set, unless the track has no artwork.
+     */
+    record Artwork(String requestId, @Nullable String url, @Nullable String data) { }
+
+    /**
+     * A change to the Now Playing list, as reported by the list's change event.
+     *
+     * @param type  kind of change (insert, delete, update, ...), or null if the event didn't say
+     * @param index index of the first track affected, or -1 if the event didn't say
+     * @param count number of tracks affected
+     */
+    record ListChange(@Nullable String type, int index, int count) { }
+
+    /**
+     * @param json a track's asJSON
+     */
+    static MM5TrackData readTrack(String json) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(json)) {
+            parser.nextToken();
+            return readTrack(parser);
+        }
+    }
+
+    static TrackPage readTrackPage(String json) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(json)) {
+            expect(parser.nextToken(), JsonToken.START_OBJECT);
+            String requestId = null;
+            List<MM5TrackData> tracks = List.of();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+                switch (field) {
+                    case "requestId" -> requestId = parser.getValueAsString();
+                    case "tracks" -> tracks = readTrackArray(parser);
+                    default -> parser.skipChildren();
+                }
+            }
+            return new TrackPage(requestId, tracks);
+        }
+    }
+
+    static Snapshot readSnapshot(String json) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(json)) {
+            expect(parser.nextToken(), JsonToken.START_OBJECT);
+            boolean isPlaying = false;
+            boolean paused = false;
+            long trackPositionMS = 0;
+            MM5TrackData track = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                switch (field) {
+                    case "isPlaying" -> isPlaying = parser.getValueAsBoolean();
+                    case "paused" -> paused = parser.getValueAsBoolean();
+                    case "trackPositionMS" -> trackPositionMS = parser.getValueAsLong();
+                    case "track" -> track = value == JsonToken.VALUE_NULL
+                            ? null
+                            : readTrack(parser);
+                    default -> parser.skipChildren();
+                }
+            }
+            return new Snapshot(isPlaying, paused, trackPositionMS, track);
+        }
+    }
+
+    static PlaylistWindow readPlaylistWindow(String json) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(json)) {
+            expect(parser.nextToken(), JsonToken.START_OBJECT);
+            int count = 0;
+            int position = -1;
+            List<MM5TrackData> tracks = List.of();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+                switch (field) {
+                    case "count" -> count = parser.getValueAsInt();
+                    case "position" -> position = parser.getValueAsInt(-1);
+                    case "tracks" -> tracks = readTrackArray(parser);
+                    default -> parser.skipChildren();
+                }
+            }
+            return new PlaylistWindow(count, position, tracks);
+        }
+    }
+
+    static ListChange readListChange(String json) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(json)) {
+            expect(parser.nextToken(), JsonToken.START_OBJECT);
+            String type = null;
+            int index = -1;
+            int count = 1;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+                switch (field) {
+                    case "type" -> type = parser.getValueAsString();
+                    case "index" -> index = parser.getValueAsInt(-1);
+                    case "count" -> count = parser.getValueAsInt(1);
+                    default -> parser.skipChildren();
+                }
+            }
+            return new ListChange(type, index, count);
+        }
+    }
+
+    static Artwork readArtwork(String json) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(json)) {
+            expect(parser.nextToken(), JsonToken.START_OBJECT);
+            String requestId = null;
+            String url = null;
+            String data = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+                switch (field) {
+                    case "requestId" -> requestId = parser.getValueAsString();
+                    case "url" -> url = parser.getValueAsString();
+                    case "data" -> data = parser.getValueAsString();
+                    default -> parser.skipChildren();
+                }
+            }
+            return new Artwork(requestId, url, data);
+        }
+    }
+
+    static MM5Event readEvent(String json) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(json)) {
+            expect(parser.nextToken(), JsonToken.START_OBJECT);
+            String type = null;
+            int trackId = 0;
+            String payload = null;
+            long ts = 0;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+                switch (field) {
+                    case "type" -> type = parser.getValueAsString();
+                    case "trackId" -> trackId = parser.getValueAsInt();
+                    case "payload" -> payload = parser.getValueAsString();
+                    case "ts" -> ts = parser.getValueAsLong();
+                    default -> parser.skipChildren();
+                }
+            }
+            if (type == null) {
+                throw new IOException("Event has no type: " + json);
+            }
+            return new MM5Event(type, trackId, payload, ts);
+        }
+    }
+
+    /**
+     * Reads a file containing an array of tracks.
+     */
+    static List<MM5TrackData> readTracks(File file) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(file)) {
+            parser.nextToken();
+            return readTrackArray(parser);
+        }
+    }
+
+    /**
+     * Writes an array of tracks to a file, in the format {@link #readTracks(File)} reads.
+     */
+    static void writeTracks(File file, Collection<MM5TrackData> tracks) throws IOException {
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(file, JsonEncoding.UTF8)) {
+            generator.writeStartArray();
+            for (MM5TrackData track : tracks) {
+                generator.writeStartObject();
+                generator.writeNumberField("id", track.id());
+                generator.writeStringField("title", track.title());
+                generator.writeStringField("artist", track.artist());
+                generator.writeStringField("album", track.album());
+                generator.writeStringField("genre", track.genre());
+                generator.writeStringField("commentShort", track.comment());
+                generator.writeStringField("custom1", track.grouping());
+                generator.writeNumberField("rating", track.rating());
+                generator.writeNumberField("songLength", Math.round(track.duration() * 1000));
+                generator.writeNumberField("trackNumber", track.trackNumber());
+                generator.writeStringField("path", track.path());
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+        }
+    }
+
+    /**
+     * @param parser positioned on the START_ARRAY token
+     */
+    private static List<MM5TrackData> readTrackArray(JsonParser parser) throws IOException {
+        expect(parser.currentToken(), JsonToken.START_ARRAY);
+        List<MM5TrackData> tracks = new ArrayList<>();
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            tracks.add(readTrack(parser));
+        }
+        return tracks;
+    }
+
+    /**
+     * @param parser positioned on the START_OBJECT token of the track
+     */
+    private static MM5TrackData readTrack(JsonParser parser) throws IOException {
+        expect(parser.currentToken(), JsonToken.START_OBJECT);
+        int id = 0;
+        String title = null;
+        String artist = null;
+        String album = null;
+        String genre = null;
+        String comment = null;
+        String grouping = null;
+        int rating = 0;
+        long songLength = 0;
+        int trackNumber = 0;
+        String path = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            switch (field) {
+                case "id" -> id = parser.getValueAsInt();
+                case "title" -> title = parser.getValueAsString();
+                case "artist" -> artist = parser.getValueAsString();
+                case "album" -> album = parser.getValueAsString();
+                case "genre" -> genre = parser.getValueAsString();
+                case "commentShort" -> comment = parser.getValueAsString();
+                case "custom1" -> grouping = parser.getValueAsString();
+                case "rating" -> rating = parser.getValueAsInt();
+                case "songLength" -> songLength = parser.getValueAsLong(); // units are MS
+                // asJSON sends this as a string; getValueAsInt parses it (and treats "" as 0)
+                case "trackNumber" -> trackNumber = parser.getValueAsInt();
+                case "path" -> path = parser.getValueAsString();
+                default -> parser.skipChildren();
+            }
+        }
+        return new MM5TrackData(id, title, artist, album, genre, comment, grouping, rating,
+                songLength / 1000d, trackNumber, path);
+    }
+
+    private static void expect(JsonToken actual, JsonToken expected) throws IOException {
+        if (actual != expected) {
+            throw new IOException("Expected " + expected + " but found " + actual);
+        }
+    }
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright (c) 2024. Dan Clark
+ */
+
+package org.nekocode.nowplaying.remote.mediamonkey5;
+
+import org.nekocode.nowplaying.NowPlayingProperties;
+import org.nekocode.nowplaying.internals.NamedThreadFactory;
+
+import lombok.extern.log4j.Log4j2;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A local, read-only copy of the parts of the MediaMonkey library that NowPlaying uses (id,
+ * title, artist, album, grouping, rating, duration, path, ...).  Lookups and searches against the
+ * mirror don't need to go to MediaMonkey at all.
+ * <p>
+ * The mirror is saved to a sidecar file on shutdown, so tracks can be looked up as soon as the
+ * application starts.  After each (re)connect, the whole library is re-read in chunks in the
+ * background to pick up tracks that were added or removed while NowPlaying wasn't watching.  In
+ * between, individual tracks are refreshed when MediaMonkey reports that they changed.
+ * <p>
+ * MediaMonkey doesn't report tracks being added to or deleted from the library, so every few
+ * minutes the mirror compares its ids with the library's, reading only the tracks that are new.
+ * Lookups that miss in between can go to MediaMonkey with {@link #fetchTrack(int)}.
+ * <p>
+ * Tracks are stored as {@link MM5TrackData}, and the sidecar file is streamed in and out with
+ * {@link MM5JsonCodec}.
+ */
+@Log4j2
+public class MM5LibraryMirror {
+    /**
+     * number of tracks fetched per query while loading the whole library
+     */
+    private static final int CHUNK_SIZE = 1000;
+    /**
+     * number of track ids fetched per query while looking for added and deleted tracks
+     */
+    private static final int ID_CHUNK_SIZE = 20000;
+    /**
+     * time between checks for added and deleted tracks, in minutes
+     */
+    private static final long SYNC_INTERVAL = 5;
+    private static final String DEFAULT_MIRROR_FILE = "mm5-library.json";
+
+    private final MM5Connection connection;
+    private final File mirrorFile;
+    private final ScheduledExecutorService syncThread = Executors.newSingleThreadScheduledExecutor(
+            new NamedThreadFactory("MM5LibraryMirror", true));
+
+    private final Map<Integer, MM5TrackData> tracks = new ConcurrentHashMap<>();
+    /**
+     * true once the whole library has been read during this session.  Until then, the mirror can
+     * answer lookups for tracks it knows about, but can't say that a track doesn't exist.
+     */
+    private volatile boolean complete;
+
+    public MM5LibraryMirror(MM5Connection connection) {
+        this.connection = connection;
+        mirrorFile = new File(NowPlayingProperties.loadProperties().getProperty(
+                NowPlayingProperties.LIBRARY_MIRROR.name(), DEFAULT_MIRROR_FILE));
+        load();
+        syncThread.scheduleWithFixedDelay(this::sync, SYNC_INTERVAL, SYNC_INTERVAL, TimeUnit.MINUTES);
+    }
+
+    /**
+     * @return true if the mirror holds the entire library, so searches can be answered locally
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * @return the given track, or null if the mirror doesn't know about it
+     */
+    @Nullable
+    public MM5TrackData getTrack(int trackId) {
+        return tracks.get(trackId);
+    }
+
+    /**
+     * Finds tracks the same way {@link MM5TrackFactory#findTracks} does: every non-blank search term
+     * must be contained (case-insensitively) in the matching property.
+     *
+     * @return matching tracks, ordered by id
+     */
+    public List<MM5TrackData> findTracks(@Nullable String title, @Nullable String artist, @Nullable String album) {
+        String titleTerm = toSearchTerm(title);
+        String artistTerm = toSearchTerm(artist);
+        String albumTerm = toSearchTerm(album);
+        return tracks.values().stream()
+                .filter(track -> matches(track.title(), titleTerm)
+                        && matches(track.artist(), artistTerm)
+                        && matches(track.album(), albumTerm))
+                .sorted(Comparator.comparingInt(MM5TrackData::id))
+                .toList();
+    }
+
+    @Nullable
+    private static String toSearchTerm(@Nullable String term) {
+        return term == null || term.isBlank()
+                ? null
+                : term.toLowerCase(Locale.ROOT);
+    }
+
+    private static boolean matches(@Nullable String value, @Nullable String term) {
+        return term == null
+                || (value != null && value.toLowerCase(Locale.ROOT).contains(term));
+    }
+
+    /**
+     * Re-reads the whole library in the background, replacing the contents of the mirror.
+     */
+    public void reload() {
+        syncThread.execute(() -> {
+            long start = System.currentTimeMillis();
+            Set<Integer> seen = new HashSet<>();
+            try {
+                List<MM5TrackData> chunk;
+                int lastId = 0;
+                do {
+                    // paged by id rather than by offset, so tracks added or deleted during the load
+                    // can't shift the rest of the library past a chunk boundary
+                    chunk = MM5TrackFactory.queryTracks(connection, Map.of("afterId", lastId, "limit", CHUNK_SIZE));
+                    for (MM5TrackData track : chunk) {
+                        seen.add(track.id());
+                        tracks.put(track.id(), track);
+                        lastId = track.id();
+                    }
+                } while (chunk.size() == CHUNK_SIZE);
+            } catch (ScriptException e) {
+                log.warn("Could not load library from MediaMonkey; mirror will be retried on reconnect", e);
+                return;
+            }
+            // anything not seen has been removed from MediaMonkey
+            tracks.keySet().retainAll(seen);
+            complete = true;
+            log.info("Loaded {} tracks from MediaMonkey in {} ms", seen.size(), System.currentTimeMillis() - start);
+        });
+    }
+
+    /**
+     * Reads a single track from MediaMonkey right away, and updates the mirror with it.
+     *
+     * @return the track, or null if it doesn't exist
+     */
+    @Nullable
+    public MM5TrackData fetchTrack(int trackId) throws ScriptException {
+        List<MM5TrackData> result = MM5TrackFactory.queryTracks(connection,
+                Map.of("id", trackId, "limit", 1));
+        if (result.isEmpty()) {
+            tracks.remove(trackId);
+            return null;
+        }
+        tracks.put(trackId, result.get(0));
+        return result.get(0);
+    }
+
+    /**
+     * Removes tracks that have been deleted from MediaMonkey and reads the ones that have been
+     * added, by comparing ids.  Only runs once the mirror is complete (until then, a reload is on
+     * its way), and while connected.
+     */
+    private void sync() {
+        if (!complete || !connection.isConnected()) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        Set<Integer> ids = new HashSet<>();
+        try {
+            List<MM5TrackData> chunk;
+            int lastId = 0;
+            do {
+                chunk = MM5TrackFactory.queryTracks(connection,
+                        Map.of("idsOnly", true, "afterId", lastId, "limit", ID_CHUNK_SIZE));
+                for (MM5TrackData track : chunk) {
+                    ids.add(track.id());
+                    lastId = track.id();
+                }
+            } while (chunk.size() == ID_CHUNK_SIZE);
+
+            int removed = tracks.size();
+            tracks.keySet().retainAll(ids);
+            removed -= tracks.size();
+
+            ids.removeAll(tracks.keySet());
+            if (ids.size() > CHUNK_SIZE) {
+                // faster to read everything than to ask for this many tracks one at a time
+                reload();
+            } else {
+                for (int trackId : ids) {
+                    fetchTrack(trackId);
+                }
+            }
+            if (removed > 0 || !ids.isEmpty()) {
+                log.info("Synced library mirror in {} ms: {} tracks added, {} removed",
+                        System.currentTimeMillis() - start, ids.size(), removed);
+            }
+        } catch (ScriptException | RuntimeException e) {
+            // an exception escaping would cancel the schedule
+            log.warn("Could not sync library mirror with MediaMonkey; will try again later", e);
+        }
+    }
+
+    /**
+     * Re-reads a single track in the background.  If it no longer exists, it is removed.
+     */
+    public void refresh(int trackId) {
+        syncThread.execute(() -> {
+            try {
+                fetchTrack(trackId);
+            } catch (ScriptException e) {
+                log.warn("Could not refresh track {} in library mirror", trackId, e);
+            }
+        });
+    }
+
+    /**
+     * Read the mirror saved by the last session, if there is one.
+     */
+    private void load() {
+        if (!mirrorFile.exists()) {
+            return;
+        }
+        try {
+            MM5JsonCodec.readTracks(mirrorFile).forEach(track -> tracks.put(track.id(), track));
+            log.info("Read {} tracks from {}", tracks.size(), mirrorFile);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not read library mirror from {}", mirrorFile, e);
+        }
+    }
+
+    /**
+     * Stops syncing and saves the mirror for the next session.
+     */
+    public void shutdown() {
+        syncThread.shutdownNow();
+        try {
+            syncThread.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            log.warn("interrupted while shutting down library mirror", e);
+        }
+        try {
+            MM5JsonCodec.writeTracks(mirrorFile, tracks.values());
+        } catch (IOException e) {
+            log.warn("Could not save library mirror to {}", mirrorFile, e);
+        }
+    }
+}
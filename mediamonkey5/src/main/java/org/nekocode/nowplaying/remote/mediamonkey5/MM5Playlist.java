@@ -0,0 +1,335 @@
+/*
+ * Copyright (c) 2024. Dan Clark
+ */
+
+package org.nekocode.nowplaying.remote.mediamonkey5;
+
+import org.nekocode.nowplaying.internals.NamedThreadFactory;
+import org.nekocode.nowplaying.objects.Playlist;
+import org.nekocode.nowplaying.objects.Track;
+
+import lombok.extern.log4j.Log4j2;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * MediaMonkey's Now Playing list, fetched lazily in fixed-size windows.
+ * <p>
+ * Only the windows that are asked for are fetched, and the most recently used ones are cached, so
+ * showing the next few tracks of a 10,000-track queue costs one small query.  When the current
+ * track changes, only the position is re-read, and the window after the new position is
+ * prefetched in the background.  When tracks are inserted into or deleted from the list, the
+ * cached tracks are shifted to match, and only the windows that now have gaps are dropped (to be
+ * re-fetched when they are needed).  A change that can't be interpreted drops everything.
+ * Windows fetched while the list was changing are discarded.
+ */
+@Log4j2
+public class MM5Playlist implements Playlist {
+    private static final int WINDOW_SIZE = 50;
+    /**
+     * number of windows kept in the cache; most lookups are around the current position
+     */
+    private static final int CACHED_WINDOWS = 8;
+    /**
+     * number of tracks after the current one to prefetch when the track changes
+     */
+    private static final int PREFETCH_TRACKS = 10;
+
+    private final MM5Connection connection;
+    private final ExecutorService prefetchThread = Executors.newSingleThreadExecutor(
+            new NamedThreadFactory("MM5Playlist", true));
+
+    private final Object lock = new Object();
+    /**
+     * cached windows by window index, least recently used first
+     */
+    private final Map<Integer, List<Track>> windows = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, List<Track>> eldest) {
+            return size() > CACHED_WINDOWS;
+        }
+    };
+    /**
+     * number of tracks in the list, or -1 if it has to be re-read
+     */
+    private int count = -1;
+    /**
+     * index of the current track, or -1 if nothing is playing
+     */
+    private int position = -1;
+    private boolean positionKnown;
+    /**
+     * incremented every time the list is modified, so results fetched from an older version of the
+     * list can be recognized and thrown away
+     */
+    private long generation;
+
+    MM5Playlist(MM5Connection connection) {
+        this.connection = connection;
+    }
+
+    /**
+     * Reads the whole list, one window at a time.
+     */
+    @Override
+    public List<Track> getTracks() {
+        return getTracks(0, count());
+    }
+
+    @Override
+    public int count() {
+        synchronized (lock) {
+            if (count >= 0) {
+                return count;
+            }
+        }
+        fetch(0, 0);
+        synchronized (lock) {
+            return Math.max(count, 0);
+        }
+    }
+
+    @Override
+    public int getCurrentIndex() {
+        synchronized (lock) {
+            if (positionKnown) {
+                return position;
+            }
+        }
+        fetch(0, 0);
+        synchronized (lock) {
+            return position;
+        }
+    }
+
+    @Override
+    public List<Track> getTracks(int offset, int limit) {
+        List<Track> tracks = new ArrayList<>();
+        if (offset < 0 || limit <= 0) {
+            return tracks;
+        }
+        int end = offset + limit;
+        for (int window = offset / WINDOW_SIZE; window * WINDOW_SIZE < end; window++) {
+            List<Track> windowTracks = getWindow(window);
+            int windowStart = window * WINDOW_SIZE;
+            int from = Math.max(offset - windowStart, 0);
+            int to = Math.min(end - windowStart, windowTracks.size());
+            if (from < to) {
+                tracks.addAll(windowTracks.subList(from, to));
+            }
+            if (windowTracks.size() < WINDOW_SIZE) {
+                // end of the list
+                break;
+            }
+        }
+        return tracks;
+    }
+
+    private List<Track> getWindow(int window) {
+        synchronized (lock) {
+            List<Track> cached = windows.get(window);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        return fetch(window * WINDOW_SIZE, WINDOW_SIZE);
+    }
+
+    /**
+     * Fetches part of the list, along with its length and the current position.  Windows are
+     * cached if the list hasn't been modified in the meantime.
+     *
+     * @return the fetched tracks, or an empty list if they couldn't be fetched
+     */
+    private List<Track> fetch(int offset, int limit) {
+        long fetchGeneration;
+        synchronized (lock) {
+            fetchGeneration = generation;
+        }
+        // asJSON is already JSON, so the result is built as a string instead of being parsed and re-encoded
+        String script = """
+                function(range) {
+                    var list = app.player.getSongList();
+                    var count = 0;
+                    var tracks = [];
+                    list.locked(function() {
+                        count = list.count;
+                        for (var i = range.offset; i < Math.min(count, range.offset + range.limit); i++) {
+                            tracks.push(list.getValue(i).asJSON);
+                        }
+                    });
+                    var position = app.player.playlistPos;
+                    return '{"count":' + count + ',"position":' + (position === undefined ? -1 : position)
+                        + ',"tracks":[' + tracks.join(',') + ']}';
+                }
+                """;
+        MM5JsonCodec.PlaylistWindow window;
+        try {
+            window = MM5JsonCodec.readPlaylistWindow(connection.evaluate("playlist",
+                    connection.call(script, Map.of("offset", offset, "limit", limit))));
+        } catch (ScriptException | IOException e) {
+            log.error("Error reading Now Playing list", e);
+            return List.of();
+        }
+        List<Track> tracks = window.tracks().stream()
+                .<Track>map(track -> MM5TrackFactory.createMM5Track(connection, track))
+                .toList();
+        synchronized (lock) {
+            if (fetchGeneration == generation) {
+                count = window.count();
+                position = window.position();
+                positionKnown = true;
+                if (limit == WINDOW_SIZE && offset % WINDOW_SIZE == 0) {
+                    windows.put(offset / WINDOW_SIZE, tracks);
+                }
+            }
+        }
+        return tracks;
+    }
+
+    /**
+     * The current track changed, but the list itself didn't.  Re-reads the position and prefetches
+     * the tracks that come next.
+     */
+    void currentTrackChanged() {
+        synchronized (lock) {
+            positionKnown = false;
+        }
+        prefetchThread.execute(() -> {
+            int index = getCurrentIndex();
+            if (index >= 0) {
+                getTracks(index + 1, PREFETCH_TRACKS);
+            }
+        });
+    }
+
+    /**
+     * The list may have been modified (after a reconnect).  Everything cached is dropped.
+     */
+    void listChanged() {
+        synchronized (lock) {
+            generation++;
+            windows.clear();
+            count = -1;
+            positionKnown = false;
+        }
+    }
+
+    /**
+     * The list was modified.  Inserted and deleted tracks are applied to the cached windows; any
+     * other change drops the windows it touches, and a change that can't be read drops them all.
+     *
+     * @param payload the change, as sent by the list's change listener
+     */
+    void listChanged(@Nullable String payload) {
+        MM5JsonCodec.ListChange change;
+        try {
+            change = payload == null ? null : MM5JsonCodec.readListChange(payload);
+        } catch (IOException e) {
+            log.debug("Unrecognized Now Playing change: {}", payload, e);
+            change = null;
+        }
+        if (change == null || change.type() == null || change.index() < 0 || change.count() < 1) {
+            listChanged();
+            return;
+        }
+        int index = change.index();
+        int n = change.count();
+        synchronized (lock) {
+            // anything being fetched right now was read from the list as it was before
+            generation++;
+            switch (change.type().toLowerCase(Locale.ROOT)) {
+                case "insert", "add" -> {
+                    shift(index, n);
+                    if (count >= 0) {
+                        count += n;
+                    }
+                    if (positionKnown && position >= index) {
+                        position += n;
+                    }
+                }
+                case "delete", "remove" -> {
+                    shift(index, -n);
+                    if (count >= 0) {
+                        count = Math.max(0, count - n);
+                    }
+                    if (positionKnown && position >= index + n) {
+                        position -= n;
+                    } else if (position >= index) {
+                        // the current track was deleted; MediaMonkey decides what comes next
+                        positionKnown = false;
+                    }
+                }
+                case "update", "modify" -> {
+                    // the same tracks in the same places, but their details may have changed
+                    for (int window = index / WINDOW_SIZE; window <= (index + n - 1) / WINDOW_SIZE; window++) {
+                        windows.remove(window);
+                    }
+                }
+                default -> {
+                    windows.clear();
+                    count = -1;
+                    positionKnown = false;
+                }
+            }
+        }
+    }
+
+    /**
+     * Moves the cached tracks from {@code index} on by {@code delta} places: forward to make room
+     * for inserted tracks, or back over deleted ones.  Windows that are no longer completely known
+     * are dropped.  Must be called with the lock held.
+     */
+    private void shift(int index, int delta) {
+        // every cached track, by its new index
+        TreeMap<Integer, Track> known = new TreeMap<>();
+        for (Map.Entry<Integer, List<Track>> entry : windows.entrySet()) {
+            int start = entry.getKey() * WINDOW_SIZE;
+            List<Track> tracks = entry.getValue();
+            for (int i = 0; i < tracks.size(); i++) {
+                int at = start + i;
+                if (at < index) {
+                    known.put(at, tracks.get(i));
+                } else if (delta > 0 || at >= index - delta) {
+                    // (deleted tracks, from index to index - delta, are left out)
+                    known.put(at + delta, tracks.get(i));
+                }
+            }
+        }
+        int newCount = count >= 0 ? Math.max(0, count + delta) : -1;
+        // windows the tracks are in now; the ones that were cached go last (in the order they
+        // were used), so they are the ones kept if there are too many
+        Set<Integer> candidates = new LinkedHashSet<>();
+        known.keySet().forEach(at -> candidates.add(at / WINDOW_SIZE));
+        candidates.removeAll(windows.keySet());
+        candidates.addAll(windows.keySet());
+        windows.clear();
+        for (int window : candidates) {
+            int start = window * WINDOW_SIZE;
+            // the last window of the list is shorter, which is only known if the length is
+            int end = newCount >= 0 ? Math.min(start + WINDOW_SIZE, newCount) : start + WINDOW_SIZE;
+            if (end <= start) {
+                continue;
+            }
+            List<Track> tracks = new ArrayList<>(known.subMap(start, end).values());
+            if (tracks.size() == end - start) {
+                windows.put(window, List.copyOf(tracks));
+            }
+        }
+    }
+
+    void shutdown() {
+        prefetchThread.shutdownNow();
+    }
+}
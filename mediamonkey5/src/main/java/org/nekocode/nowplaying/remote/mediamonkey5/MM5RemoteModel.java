@@ -6,6 +6,7 @@ package org.nekocode.nowplaying.remote.mediamonkey5;
 
 import org.nekocode.nowplaying.AbstractMediaPlayer;
 import org.nekocode.nowplaying.events.TrackChangeEvent;
+import org.nekocode.nowplaying.objects.PlayerSnapshot;
 import org.nekocode.nowplaying.objects.Playlist;
 import org.nekocode.nowplaying.objects.Track;
 
@@ -13,20 +14,14 @@ import lombok.extern.log4j.Log4j2;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import javax.swing.*;
-import java.nio.file.Path;
-import java.util.ArrayDeque;
-import java.util.Deque;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.function.Function;
 import java.util.stream.Stream;
 
-import static org.nekocode.nowplaying.events.TrackChangeEvent.ChangeType.ART_CHANGE;
 import static org.nekocode.nowplaying.events.TrackChangeEvent.ChangeType.CURRENT_SONG_CHANGE;
 import static org.nekocode.nowplaying.events.TrackChangeEvent.ChangeType.METADATA_CHANGE;
 import static org.nekocode.nowplaying.events.TrackChangeEvent.ChangeType.PLAY_STATE_CHANGE;
@@ -35,10 +30,19 @@ import static org.nekocode.nowplaying.events.TrackChangeEvent.ChangeType.PLAY_ST
 public class MM5RemoteModel extends AbstractMediaPlayer {
 
     private final MM5Connection connection;
+    private final MM5LibraryMirror libraryMirror;
+    private final MM5CommandQueue commandQueue;
+    private final MM5Playlist playlist;
     private Track currentTrack;
 
     public MM5RemoteModel() {
         connection = new MM5Connection();
+        libraryMirror = new MM5LibraryMirror(connection);
+        commandQueue = new MM5CommandQueue(connection);
+        playlist = new MM5Playlist(connection);
+        if (connection.isConnected()) {
+            libraryMirror.reload();
+        }
 
         connection.addPropertyChangeListener(e -> {
             switch (e.getPropertyName()) {
@@ -50,12 +54,15 @@ public class MM5RemoteModel extends AbstractMediaPlayer {
                     }
                 }
                 case "playbackState" -> {
-                    switch (e.getNewValue().toString()) {
+                    MM5Event event = (MM5Event) e.getNewValue();
+                    switch (Objects.requireNonNullElse(event.payload(), "")) {
                         case "trackChanged" -> {
+                            playlist.currentTrackChanged();
                             MM5RemoteModel.this.currentTrack = MM5TrackFactory.getCurrentTrack(connection);
                             fireTrackChanged(new TrackChangeEvent(MM5RemoteModel.this.currentTrack, CURRENT_SONG_CHANGE));
                         }
-                        case "play", "pause", "unpause" -> {
+                        // the position estimate depends on these, so stopping must be reported too
+                        case "play", "pause", "unpause", "stop" -> {
                             Track currentTrack = getCurrentTrack();
                             if (currentTrack != null) {
                                 fireTrackChanged(new TrackChangeEvent(currentTrack, PLAY_STATE_CHANGE));
@@ -63,32 +70,17 @@ public class MM5RemoteModel extends AbstractMediaPlayer {
                         }
                     }
                 }
+                case "nowPlayingModified" -> playlist.listChanged(((MM5Event) e.getNewValue()).payload());
 //                case "playbackEnd" -> {
 //                    MM5RemoteModel.this.currentTrack = MM5Track.getCurrentTrack(connection);
 //                    fireTrackChanged(new TrackChangeEvent(MM5RemoteModel.this.currentTrack, CURRENT_SONG_CHANGE));
 //                }
-                case "thumbnail" -> {
-                    log.debug("thumbnail update for track {}: {}", e.getOldValue(), e.getNewValue());
-                    String trackId = (String) e.getOldValue();
-                    Track currentTrack = getCurrentTrack();
-                    if (currentTrack instanceof MM5Track mmTrack) {
-                        if (Objects.equals(mmTrack.getPersistentId(), trackId)) {
-                            // TODO do in background
-                            String url = (String) e.getNewValue();
-                            String filterTemp = url.replace("file:///temp/", "");
-                            filterTemp = filterTemp.replace("file:///", "");
-                            Path mmPath = Path.of(filterTemp);
-                            Path fullPath = Path.of(System.getProperty("java.io.tmpdir")).resolve(mmPath);
-                            log.info("thumbnail for track {} available at: {}", trackId, fullPath);
-                            mmTrack.addArtwork(url, new ImageIcon(fullPath.toString()));
-                            fireTrackChanged(new TrackChangeEvent(currentTrack, ART_CHANGE));
-                        }
-                    }
-                }
                 case "trackModified" -> {
-                    String trackId = (String) e.getNewValue();
+                    int trackId = ((MM5Event) e.getNewValue()).trackId();
+                    libraryMirror.refresh(trackId);
+                    connection.getArtworkLoader().invalidate(trackId);
                     if (currentTrack instanceof MM5Track mmTrack) {
-                        if (Objects.equals(mmTrack.getPersistentId(), trackId)) {
+                        if (mmTrack.getTrackId() == trackId) {
                             // reload the current track and then push out an update for whatever changed
                             currentTrack = MM5TrackFactory.getCurrentTrack(connection);
                             switch (isSimpleChange(mmTrack, currentTrack)) {
@@ -98,8 +90,17 @@ public class MM5RemoteModel extends AbstractMediaPlayer {
                         }
                     }
                 }
-                case "findTracks" -> {
-                    addFindTracksResult(UUID.fromString(e.getOldValue().toString()), e.getNewValue().toString());
+                case "connected" -> {
+                    if (Boolean.TRUE.equals(e.getNewValue())) {
+                        // pick up anything that changed in the library while we were disconnected
+                        libraryMirror.reload();
+                        playlist.listChanged();
+                        // MediaMonkey may have restarted, so the cached track can't be trusted
+                        currentTrack = MM5TrackFactory.getCurrentTrack(connection);
+                        fireTrackChanged(new TrackChangeEvent(currentTrack, CURRENT_SONG_CHANGE));
+                    } else {
+                        log.warn("Connection to MediaMonkey lost; waiting for it to come back");
+                    }
                 }
             }
         });
@@ -140,58 +141,58 @@ public class MM5RemoteModel extends AbstractMediaPlayer {
         return currentTrack;
     }
 
-    private void asyncCommand(String command) {
-        try {
-            connection.evaluateAsync("app.player.%sAsync()".formatted(command));
-        } catch (ScriptException e) {
-            log.error("Error in '%s':".formatted(command), e);
-        }
-    }
+    /*
+     * Transport controls and rating changes go through the command queue, so they never block the
+     * caller (usually the event dispatch thread).  Errors are logged by the queue.
+     */
 
     @Override
     public void play() {
-        asyncCommand("play");
+        commandQueue.play();
     }
 
     @Override
     public void pause() {
-        asyncCommand("pause");
+        commandQueue.pause();
     }
 
     @Override
     public void next() {
-        asyncCommand("next");
+        commandQueue.next();
     }
 
     @Override
     public void previous() {
-        asyncCommand("prev");
+        commandQueue.previous();
+    }
+
+    @Override
+    public @Nullable String getDiagnostics() {
+        return (connection.isConnected() ? "Connected" : "Not connected") + " to MediaMonkey\n\n"
+                + connection.getCallStats().report()
+                + "\n" + connection.getArtworkLoader().getCacheStats() + "\n"
+                + "\n" + trackChangeDispatcher.report();
     }
 
     @Override
     public void onShutdown() {
         // TODO unregister callbacks
+        commandQueue.shutdown();
+        playlist.shutdown();
         connection.close();
+        libraryMirror.shutdown();
+        trackChangeDispatcher.shutdown();
     }
 
     @Override
     public void updateTrackRating(@NotNull Track track, int newRating) {
-        try {
-            String ratingCommand = """
-                    app.getObject('track', { id: %d })
-                       .then(function(track) { if (track) {track.rating = %d; track.commitAsync();}
-                    });
-                    """;
-            connection.evaluateAsyncAndWait(ratingCommand.formatted(track.getTrackId(), newRating));
-        } catch (ScriptException e) {
-            log.error("Error updating rating:", e);
-        }
+        commandQueue.rate(track.getTrackId(), newRating);
     }
 
     @Override
     public double getCurrentTrackPosition() {
         try {
-            return (Integer) connection.evaluate("app.player.trackPositionMS") / 1000.0;
+            return (Integer) connection.evaluate("position", "app.player.trackPositionMS") / 1000.0;
         } catch (ScriptException e) {
             log.error("Error in 'getCurrentTrackPosition':", e);
             return 0;
@@ -200,12 +201,23 @@ public class MM5RemoteModel extends AbstractMediaPlayer {
 
     @Override
     public Playlist getCurrentPlaylist() {
-        return null;
+        return playlist;
     }
 
     @Override
     public @Nullable Track getTrack(int trackId) {
-        return MM5TrackFactory.getTrack(connection, trackId);
+        MM5TrackData mirroredTrack = libraryMirror.getTrack(trackId);
+        if (mirroredTrack != null) {
+            return MM5TrackFactory.createMM5Track(connection, mirroredTrack);
+        }
+        // even a complete mirror doesn't know about tracks added since it last synced, so ask
+        try {
+            MM5TrackData track = libraryMirror.fetchTrack(trackId);
+            return track == null ? null : MM5TrackFactory.createMM5Track(connection, track);
+        } catch (ScriptException e) {
+            log.warn("Could not look up track {}; trying the slow way", trackId, e);
+            return MM5TrackFactory.getTrack(connection, trackId);
+        }
     }
 
     @Override
@@ -217,7 +229,7 @@ public class MM5RemoteModel extends AbstractMediaPlayer {
                          'paused': app.player.paused};
                     playState
                     """;
-            Map<String, Object> playState = connection.evaluate(playStateQuery);
+            Map<String, Object> playState = connection.evaluate("playerState", playStateQuery);
             Boolean isPlaying = (Boolean) playState.getOrDefault("isPlaying", Boolean.FALSE);
             Boolean paused = (Boolean) playState.getOrDefault("paused", Boolean.FALSE);
             return isPlaying && !paused
@@ -229,73 +241,123 @@ public class MM5RemoteModel extends AbstractMediaPlayer {
         }
     }
 
-
-    private final Map<UUID, Deque<String>> findTracksResults = new ConcurrentHashMap<>();
-
-    public void addFindTracksResult(UUID uuid, String trackId) {
-        log.info("addFindTracksResult({}): {}", uuid, trackId);
-        findTracksResults.computeIfAbsent(uuid, k -> new ConcurrentLinkedDeque<>()).add(trackId);
+    /**
+     * Fetches the player state, position and current track in a single script evaluation.
+     */
+    @Override
+    public @NotNull PlayerSnapshot getSnapshot() {
+        try {
+            String snapshotQuery = """
+                    (function() {
+                        var track = app.player.getCurrentTrack();
+                        return JSON.stringify({
+                            'isPlaying': app.player.isPlaying,
+                            'paused': app.player.paused,
+                            'trackPositionMS': app.player.trackPositionMS,
+                            'track': track ? JSON.parse(track.asJSON) : null});
+                    })()
+                    """;
+            MM5JsonCodec.Snapshot snapshot = MM5JsonCodec.readSnapshot(connection.evaluate("snapshot", snapshotQuery));
+            PlayerState playerState = snapshot.isPlaying() && !snapshot.paused()
+                    ? PlayerState.PLAYING
+                    : PlayerState.STOPPED;
+            double position = snapshot.trackPositionMS() / 1000.0;
+
+            Track track = null;
+            if (snapshot.track() != null) {
+                track = MM5TrackFactory.createMM5Track(connection, snapshot.track());
+                // keep the cached track (and any artwork it has loaded) if it's still current
+                Track cachedTrack = currentTrack;
+                if (cachedTrack != null && cachedTrack.getTrackId() == track.getTrackId()) {
+                    track = cachedTrack;
+                }
+            }
+            return new PlayerSnapshot(track, playerState, position);
+        } catch (ScriptException | IOException | RuntimeException e) {
+            log.error("Error in 'getSnapshot':", e);
+            return new PlayerSnapshot(currentTrack, PlayerState.STOPPED, 0);
+        }
     }
 
+    /**
+     * number of tracks requested at a time when all matches are wanted
+     */
+    private static final int SEARCH_PAGE_SIZE = 500;
+
     @Override
     public @NotNull List<Track> findTracks(@Nullable String title, @Nullable String artist, @Nullable String album) {
-        List<String> trackIds = findTrackIds(title, artist, album);
-        return trackIds.stream()
-                .mapToInt(Integer::parseInt)
-                .mapToObj(this::getTrack)
-                .filter(Objects::nonNull)
-                .filter(t -> !ErrorTrack.ERROR_TRACK.equals(t))
-                .toList();
+        log.info("findTracks({}, {}, {})", title, artist, album);
+        if (libraryMirror.isComplete()) {
+            List<Track> tracks = libraryMirror.findTracks(title, artist, album).stream()
+                    .<Track>map(track -> MM5TrackFactory.createMM5Track(connection, track))
+                    .toList();
+            if (!tracks.isEmpty()) {
+                return tracks;
+            }
+            // nothing matched, but the match may have been added since the mirror last synced
+        }
+        List<Track> tracks = new ArrayList<>();
+        List<Track> page;
+        do {
+            page = findTracks(title, artist, album, tracks.size(), SEARCH_PAGE_SIZE);
+            tracks.addAll(page);
+        } while (page.size() == SEARCH_PAGE_SIZE);
+        return tracks;
     }
 
     @Override
-    public @NotNull List<String> findTrackIds(@Nullable String title, @Nullable String artist, @Nullable String album) {
-        UUID uuid = UUID.randomUUID();
+    public @NotNull List<Track> findTracks(@Nullable String title, @Nullable String artist, @Nullable String album,
+                                           int offset, int limit) {
+        if (libraryMirror.isComplete()) {
+            List<Track> tracks = libraryMirror.findTracks(title, artist, album).stream()
+                    .skip(offset)
+                    .limit(limit)
+                    .<Track>map(track -> MM5TrackFactory.createMM5Track(connection, track))
+                    .toList();
+            if (!tracks.isEmpty()) {
+                return tracks;
+            }
+            // past the end of the mirror's matches, but there may be more added since it last synced
+        }
         try {
-            log.info("findTracks({}, {}, {}, {})", uuid, title, artist, album);
-
-            int libraryId = connection.evaluate("app.collections.getEntireLibrary().id");
-
-            connection.evaluateAsync(STR."""
-                  var list = app.db.getTracklist('SELECT * FROM Songs WHERE Songs.SongTitle LIKE "%\{title}%"', \{libraryId});
-                  list.whenLoaded()
-                      .then(function () {
-                        list.forEach(function (track) {
-                            console.debug("findTracks:\{uuid}:" + track.id);
-                        });
-                        console.debug("findTracks:\{uuid}:Done");
-                      });
-            """);
+            return MM5TrackFactory.findTracks(connection, title, artist, album, offset, limit);
         } catch (ScriptException e) {
             log.error("Error in 'findTracks':", e);
             return List.of();
         }
+    }
 
-        // busy wait for results up to one minute
-        long start = System.currentTimeMillis();
-        int maxWaitTime = 30_000;
-        Deque<String> results = new ArrayDeque<>();
-        while (System.currentTimeMillis() - start < maxWaitTime) {
-            var currentResults = findTracksResults.get(uuid);
-            log.info("currentResults: {}", currentResults);
-            if (currentResults != null && Objects.equals("Done", currentResults.peekLast()))
-            {
-                log.info("findTrackResults found 'Done'");
-                results = currentResults;
-                break;
-            }
-            try {
-                Thread.sleep(100);
-            } catch (InterruptedException e) {
-                break;
+    /**
+     * number of track ids requested at a time
+     */
+    private static final int ID_SEARCH_PAGE_SIZE = 20000;
+
+    @Override
+    public @NotNull List<String> findTrackIds(@Nullable String title, @Nullable String artist, @Nullable String album) {
+        log.info("findTrackIds({}, {}, {})", title, artist, album);
+        if (libraryMirror.isComplete()) {
+            List<String> trackIds = libraryMirror.findTracks(title, artist, album).stream()
+                    .map(track -> String.valueOf(track.id()))
+                    .toList();
+            if (!trackIds.isEmpty()) {
+                return trackIds;
             }
+            // nothing matched, but the match may have been added since the mirror last synced
         }
-        findTracksResults.remove(uuid);
-
-        log.info("findTrackResults complete");
-        return results.stream()
-                .filter(k -> !"Done".equals(k))
-                .toList();
-
+        // only the ids are read, so even a search for the whole library stays small
+        List<String> trackIds = new ArrayList<>();
+        try {
+            List<Integer> page;
+            int lastId = 0;
+            do {
+                page = MM5TrackFactory.findTrackIds(connection, title, artist, album, lastId, ID_SEARCH_PAGE_SIZE);
+                page.forEach(trackId -> trackIds.add(String.valueOf(trackId)));
+                lastId = page.isEmpty() ? lastId : page.get(page.size() - 1);
+            } while (page.size() == ID_SEARCH_PAGE_SIZE);
+        } catch (ScriptException e) {
+            log.error("Error in 'findTrackIds':", e);
+            return List.of();
+        }
+        return trackIds;
     }
 }
@@ -4,6 +4,7 @@
 
 package org.nekocode.nowplaying.remote.mediamonkey5;
 
+import org.nekocode.nowplaying.components.ImageScaler;
 import org.nekocode.nowplaying.objects.Track;
 
 import lombok.Getter;
@@ -11,11 +12,13 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.log4j.Log4j2;
 
 import javax.swing.*;
-import java.awt.*;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 @RequiredArgsConstructor
@@ -149,33 +152,48 @@ public class MM5Track implements Track {
 
     @Override
     public Collection<ImageIcon> getArtwork(int size) {
+        // don't block - if the artwork isn't loaded yet, this starts loading it
+        return getArtworkAsync(size).getNow(Collections.emptyList());
+    }
+
+    @Override
+    public CompletableFuture<Collection<ImageIcon>> getArtworkAsync(int size) {
         synchronized (artworkLock) {
             if (!artwork.isEmpty()) {
-                return artwork.stream()
+                return CompletableFuture.completedFuture(artwork.stream()
                         .map(image -> resizeArt(image, size))
-                        .collect(Collectors.toList());
+                        .collect(Collectors.toList()));
             }
         }
 
-        // asynchronously acquire a reference to the artwork
-        // TODO figure out how to do this synchronously
-        String getCover = """
-                    app.getObject('track', { id: %d })
-                        .then(function(track) {
-                            if (track) {
-                                var cover = track.getThumbAsync(%d, %d,
-                                    function(thumb) {
-                                        console.debug('thumbnail:%d:' + thumb);
-                                    });
-                            }
-                        });
-                """.formatted(persistentId, size, size, persistentId);
-        try {
-            connection.evaluateAsync(getCover);
-        } catch (ScriptException e) {
-            log.error("Error loading cover art", e);
-        }
-        return Collections.emptyList();
+        CompletableFuture<ImageIcon> load = connection.getArtworkLoader().load(persistentId, size);
+        CompletableFuture<Collection<ImageIcon>> result = load
+                .<Collection<ImageIcon>>handle((imageIcon, e) -> {
+                    if (e != null) {
+                        if (!(e instanceof CancellationException)) {
+                            log.error("Error loading cover art", e);
+                        }
+                        return Collections.emptyList();
+                    }
+                    if (imageIcon == null) {
+                        return Collections.emptyList();
+                    }
+                    synchronized (artworkLock) {
+                        // a request for another size (or a prefetch) may have finished first
+                        if (artwork.isEmpty()) {
+                            addArtwork(imageIcon.getDescription(), imageIcon);
+                        }
+                    }
+                    return List.of(imageIcon);
+                });
+        // the caller no longer wants the artwork (this track was skipped).  load is this caller's
+        // own future, so this only gives up the request if nobody else is waiting for it.
+        result.whenComplete((artwork, e) -> {
+            if (result.isCancelled()) {
+                load.cancel(false);
+            }
+        });
+        return result;
     }
 
     @Override
@@ -190,15 +208,7 @@ public class MM5Track implements Track {
      */
     private ImageIcon resizeArt(ImageIcon imageIcon, int size) {
         if (imageIcon.getIconWidth() > size || imageIcon.getIconHeight() > size) {
-            Image image = imageIcon.getImage();
-            int height = imageIcon.getIconHeight() >= imageIcon.getIconWidth()
-                    ? size
-                    : -1;
-            int width = imageIcon.getIconWidth() >= imageIcon.getIconHeight()
-                    ? size
-                    : -1;
-            Image newimg = image.getScaledInstance(width, height, java.awt.Image.SCALE_SMOOTH);
-            return new ImageIcon(newimg);
+            return new ImageIcon(ImageScaler.scaleToFit(imageIcon.getImage(), size), imageIcon.getDescription());
         } else {
             return imageIcon;
         }
@@ -0,0 +1,28 @@
+/*
+ * Copyright (c) 2024. Dan Clark
+ */
+
+package org.nekocode.nowplaying.remote.mediamonkey5;
+
+/**
+ * The metadata NowPlaying reads for a MediaMonkey track, exactly as decoded from MediaMonkey's
+ * JSON.  Unlike {@link MM5Track}, it isn't tied to a connection and holds no artwork, so it can
+ * be kept around cheaply (for instance, by {@link MM5LibraryMirror}).
+ *
+ * @param id         MediaMonkey's song id (idsong and persistentID contain the same value)
+ * @param grouping   the Custom1 field (anime series)
+ * @param duration   length of the track in seconds
+ * @param path       location of the file, if known
+ */
+public record MM5TrackData(int id,
+                           String title,
+                           String artist,
+                           String album,
+                           String genre,
+                           String comment,
+                           String grouping,
+                           int rating,
+                           double duration,
+                           int trackNumber,
+                           String path) {
+}
@@ -8,19 +8,31 @@ import org.nekocode.nowplaying.objects.Track;
 
 import lombok.extern.log4j.Log4j2;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.beans.PropertyChangeListener;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 @Log4j2
 public class MM5TrackFactory {
 
     public static Track getCurrentTrack(MM5Connection connection) {
         try {
-            Map<String, Object> trackProperties = connection.evaluate("app.player.getCurrentTrack()");
-            return createMM5Track(connection, trackProperties);
+            String trackJson = connection.evaluate("getCurrentTrack", """
+                    (function() {
+                        var track = app.player.getCurrentTrack();
+                        return track ? track.asJSON : null;
+                    })()
+                    """);
+            return createMM5Track(connection, MM5JsonCodec.readTrack(trackJson));
         } catch (Exception e) {
             log.error("Error parsing property map", e);
             return ErrorTrack.ERROR_TRACK;
@@ -30,45 +42,191 @@ public class MM5TrackFactory {
     public static Track getTrack(MM5Connection connection, int trackId) {
         CompletableFuture<Track> trackFuture = new CompletableFuture<>();
         PropertyChangeListener getTrackListener = event -> {
+            if (!"getTrack".equals(event.getPropertyName())) {
+                return;
+            }
             log.info("getTrack/binding: {}", event.getNewValue());
-            @SuppressWarnings("unchecked") // we know it's a Map from MM5Connection
-            Map<String, Object> trackProperties = (Map<String, Object>) event.getNewValue();
-            Track track = createMM5Track(connection, trackProperties);
-            if (track.getTrackId() == trackId) {
-                trackFuture.complete(track);
+            try {
+                MM5TrackData track = MM5JsonCodec.readTrack((String) event.getNewValue());
+                if (track.id() == trackId) {
+                    trackFuture.complete(createMM5Track(connection, track));
+                }
+            } catch (IOException e) {
+                trackFuture.completeExceptionally(e);
+            }
+        };
+        // don't wait for a response that will never come if the connection drops
+        PropertyChangeListener connectionListener = event -> {
+            if ("connected".equals(event.getPropertyName()) && Boolean.FALSE.equals(event.getNewValue())) {
+                trackFuture.completeExceptionally(new ScriptException("Lost connection to MediaMonkey"));
             }
         };
+        MM5CallStats.Call call = connection.getCallStats().start("getTrack", null);
         try {
+            connection.addPropertyChangeListener(connectionListener);
             connection.addBindingListener(getTrackListener);
-            connection.evaluateAsync(
-                    STR."""
-                        app.getObject('track', { id: \{trackId} })
-                           .then(function(track) { return window.getTrack(track.asJSON); })
-                    """);
-            return trackFuture.get(15, TimeUnit.SECONDS);
+            connection.evaluateAsync("getTrack.send", connection.call("""
+                    function(request) {
+                        app.getObject('track', { id: request.trackId })
+                           .then(function(track) { return window.getTrack(track.asJSON); });
+                    }
+                    """, Map.of("trackId", trackId)));
+            Track track = trackFuture.get(15, TimeUnit.SECONDS);
+            call.succeeded();
+            return track;
         } catch (Exception e) {
+            call.failed(e);
             log.error("Error parsing property map", e);
             return ErrorTrack.ERROR_TRACK;
         } finally {
             connection.removeBindingListener(getTrackListener);
+            connection.removePropertyChangeListener(connectionListener);
         }
     }
 
-    @NotNull
-    private static MM5Track createMM5Track(MM5Connection connection, Map<String, Object> trackProperties) {
-        String title = (String) trackProperties.get("title");
-        String artist = (String) trackProperties.get("artist");
-        String album = (String) trackProperties.get("album");
-        String genre = (String) trackProperties.get("genre");
-        String comment = (String) trackProperties.get("commentShort");
-//        String path = trackProperties.get("path");
-        String grouping1 = (String) trackProperties.get("custom1"); // anime series
-//        String custom2 = trackProperties.get("custom2"); // anime
-        int id = ((Number) trackProperties.get("id")).intValue(); // idsong and persistentID contain the same value
-        int rating = ((Number) trackProperties.get("rating")).intValue();
-        double songLength = ((Number) trackProperties.get("songLength")).longValue() / 1000d; // units are MS
-        int trackNumber = Integer.parseInt((String) trackProperties.get("trackNumber"));
+    /**
+     * Searches the MediaMonkey database for one page of tracks.  Each non-blank search term must
+     * be contained (case-insensitively) in the matching column.  Only the columns needed to build
+     * an {@link MM5Track} are selected, and the whole page is returned in a single payload.
+     *
+     * @param offset number of matching tracks to skip
+     * @param limit maximum number of tracks to return
+     * @return matching tracks, ordered by id
+     */
+    public static List<Track> findTracks(MM5Connection connection,
+                                         @Nullable String title, @Nullable String artist, @Nullable String album,
+                                         int offset, int limit) throws ScriptException {
+        Map<String, Object> search = new HashMap<>();
+        search.put("title", title);
+        search.put("artist", artist);
+        search.put("album", album);
+        search.put("offset", offset);
+        search.put("limit", limit);
+        return queryTracks(connection, search).stream()
+                .<Track>map(track -> createMM5Track(connection, track))
+                .toList();
+    }
+
+    /**
+     * Searches the MediaMonkey database for one page of track ids, the same way
+     * {@link #findTracks} does, but without reading any other columns.  Pages are keyed by id, so
+     * tracks added or deleted between pages don't shift the ones that follow.
+     *
+     * @param afterId only tracks with a greater id are returned; 0 for the first page
+     * @param limit maximum number of track ids to return
+     * @return ids of matching tracks, in order
+     */
+    public static List<Integer> findTrackIds(MM5Connection connection,
+                                             @Nullable String title, @Nullable String artist, @Nullable String album,
+                                             int afterId, int limit) throws ScriptException {
+        Map<String, Object> search = new HashMap<>();
+        search.put("title", title);
+        search.put("artist", artist);
+        search.put("album", album);
+        search.put("idsOnly", true);
+        search.put("afterId", afterId);
+        search.put("limit", limit);
+        return queryTracks(connection, search).stream()
+                .map(MM5TrackData::id)
+                .toList();
+    }
 
-        return new MM5Track(connection, id, title, artist, album, rating, genre, comment, grouping1, songLength, trackNumber);
+    /**
+     * Runs a track search and returns the decoded track metadata.
+     *
+     * @param search search terms: any of id, title, artist and album, plus limit and either offset
+     *               or afterId (only tracks with a greater id).  If idsOnly is true, only the id of
+     *               each track is read.
+     * @return matching tracks, ordered by id
+     */
+    static List<MM5TrackData> queryTracks(MM5Connection connection, Map<String, Object> search)
+            throws ScriptException {
+        String requestId = UUID.randomUUID().toString();
+        search = new HashMap<>(search);
+        search.put("requestId", requestId);
+
+        CompletableFuture<List<MM5TrackData>> resultFuture = new CompletableFuture<>();
+        PropertyChangeListener findTracksListener = event -> {
+            if (!"findTracks".equals(event.getPropertyName())) {
+                return;
+            }
+            try {
+                MM5JsonCodec.TrackPage page = MM5JsonCodec.readTrackPage((String) event.getNewValue());
+                if (requestId.equals(page.requestId())) {
+                    resultFuture.complete(page.tracks());
+                }
+            } catch (IOException e) {
+                resultFuture.completeExceptionally(e);
+            }
+        };
+        PropertyChangeListener connectionListener = event -> {
+            if ("connected".equals(event.getPropertyName()) && Boolean.FALSE.equals(event.getNewValue())) {
+                resultFuture.completeExceptionally(new ScriptException("Lost connection to MediaMonkey"));
+            }
+        };
+
+        // search terms are passed in as JSON and quoted for SQL inside the script
+        String findTracks = connection.call("""
+                function(search) {
+                    var quote = s => "'" + s.replace(/'/g, "''") + "'";
+                    var contains = (column, s) => 'instr(lower(' + column + '), lower(' + quote(s) + ')) > 0';
+                    var conditions = [];
+                    if (search.id) conditions.push('ID = ' + Number(search.id));
+                    if (search.afterId) conditions.push('ID > ' + Number(search.afterId));
+                    if (search.title) conditions.push(contains('SongTitle', search.title));
+                    if (search.artist) conditions.push(contains('Artist', search.artist));
+                    if (search.album) conditions.push(contains('Album', search.album));
+                    var sql = 'SELECT ' + (search.idsOnly ? 'ID' : 'ID, SongTitle, Artist, Album, Genre, Comment, Custom1, Rating, SongLength, TrackNumber, SongPath')
+                        + ' FROM Songs'
+                        + (conditions.length ? ' WHERE ' + conditions.join(' AND ') : '')
+                        + ' ORDER BY ID LIMIT ' + Number(search.limit)
+                        + (search.offset ? ' OFFSET ' + Number(search.offset) : '');
+                    app.db.getQueryResultAsync(sql).then(function(result) {
+                        var tracks = [];
+                        while (!result.eof) {
+                            var fields = result.fields;
+                            tracks.push(search.idsOnly ? {'id': Number(fields.getValue(0))} : {
+                                'id': Number(fields.getValue(0)),
+                                'title': fields.getValue(1),
+                                'artist': fields.getValue(2),
+                                'album': fields.getValue(3),
+                                'genre': fields.getValue(4),
+                                'commentShort': fields.getValue(5),
+                                'custom1': fields.getValue(6),
+                                'rating': Number(fields.getValue(7)),
+                                'songLength': Number(fields.getValue(8)),
+                                'trackNumber': String(fields.getValue(9) || '0'),
+                                'path': fields.getValue(10)});
+                            result.next();
+                        }
+                        window.findTracks(JSON.stringify({'requestId': search.requestId, 'tracks': tracks}));
+                    });
+                }
+                """, search);
+
+        MM5CallStats.Call call = connection.getCallStats().start("findTracks", null);
+        try {
+            connection.addPropertyChangeListener(connectionListener);
+            connection.addBindingListener(findTracksListener);
+            connection.evaluateAsync("findTracks.send", findTracks);
+            List<MM5TrackData> tracks = resultFuture.get(30, TimeUnit.SECONDS);
+            call.succeeded();
+            return tracks;
+        } catch (ScriptException e) {
+            call.failed(e);
+            throw e;
+        } catch (InterruptedException | ExecutionException | TimeoutException e) {
+            call.failed(e);
+            throw new ScriptException("findTracks did not complete", e);
+        } finally {
+            connection.removeBindingListener(findTracksListener);
+            connection.removePropertyChangeListener(connectionListener);
+        }
+    }
+
+    @NotNull
+    static MM5Track createMM5Track(MM5Connection connection, MM5TrackData track) {
+        return new MM5Track(connection, track.id(), track.title(), track.artist(), track.album(), track.rating(),
+                track.genre(), track.comment(), track.grouping(), track.duration(), track.trackNumber());
     }
 }
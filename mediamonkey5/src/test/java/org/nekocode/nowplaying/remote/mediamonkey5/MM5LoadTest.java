@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2024. Dan Clark
+ */
+
+package org.nekocode.nowplaying.remote.mediamonkey5;
+
+import org.nekocode.nowplaying.NowPlayingProperties;
+import org.nekocode.nowplaying.remote.mediamonkey5.fake.FakeMediaMonkey;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Properties;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Measures search, fetch and event throughput of the MediaMonkey connection against a
+ * {@link FakeMediaMonkey}, so it can be run anywhere.
+ * <p>
+ * Arguments (all optional, in order): track count, latency (ms), jitter (ms), events per second,
+ * console messages per second, iterations per operation.
+ */
+public class MM5LoadTest {
+    /**
+     * how long the library mirror may take to load before the run is abandoned
+     */
+    private static final long RELOAD_TIMEOUT_SECONDS = 120;
+
+    public static void main(String[] args) throws Exception {
+        int trackCount = (int) arg(args, 0, 50_000);
+        int iterations = (int) arg(args, 5, 200);
+        FakeMediaMonkey.Settings settings = FakeMediaMonkey.Settings.builder()
+                .trackCount(trackCount)
+                .latencyMs(arg(args, 1, 5))
+                .jitterMs(arg(args, 2, 5))
+                .eventsPerSecond(arg(args, 3, 50))
+                .consoleMessagesPerSecond(arg(args, 4, 500))
+                .build();
+
+        // nothing is read from or written to the user's own mirror and artwork cache
+        File mirrorFile = File.createTempFile("mm5-load-test", ".json");
+        // only the name is wanted; an empty file would be read as a broken mirror
+        Files.delete(mirrorFile.toPath());
+        mirrorFile.deleteOnExit();
+        Path artworkCache = Files.createTempDirectory("mm5-load-test-artwork");
+        try (FakeMediaMonkey mediaMonkey = new FakeMediaMonkey(settings)) {
+            Properties properties = NowPlayingProperties.loadProperties();
+            properties.setProperty(NowPlayingProperties.REMOTE_MACHINE.name(), "127.0.0.1");
+            properties.setProperty(NowPlayingProperties.REMOTE_PORT.name(), String.valueOf(mediaMonkey.getPort()));
+            properties.setProperty(NowPlayingProperties.LIBRARY_MIRROR.name(), mirrorFile.getPath());
+            properties.setProperty(NowPlayingProperties.ARTWORK_CACHE.name(), artworkCache.toString());
+
+            MM5Connection connection = new MM5Connection();
+            try {
+                run(mediaMonkey, connection, trackCount, iterations);
+            } finally {
+                connection.close();
+            }
+        } finally {
+            deleteRecursively(artworkCache);
+        }
+    }
+
+    private static void run(FakeMediaMonkey mediaMonkey, MM5Connection connection, int trackCount, int iterations)
+            throws Exception {
+        AtomicLong eventsReceived = new AtomicLong();
+        connection.addPropertyChangeListener(e -> {
+            if (e.getNewValue() instanceof MM5Event) {
+                eventsReceived.incrementAndGet();
+            }
+        });
+        long start = System.nanoTime();
+        long eventsSentAtStart = mediaMonkey.getEventsSent();
+
+        time("getCurrentTrack", iterations, () -> MM5TrackFactory.getCurrentTrack(connection));
+        time("getTrack", iterations, () ->
+                MM5TrackFactory.getTrack(connection, ThreadLocalRandom.current().nextInt(1, trackCount + 1)));
+        time("findTracks (album, 1 page)", iterations, () ->
+                MM5TrackFactory.findTracks(connection, null, null,
+                        "Album " + ThreadLocalRandom.current().nextInt(trackCount / 12), 0, 500));
+        time("findTracks (title, 1 page)", iterations, () ->
+                MM5TrackFactory.findTracks(connection, "track 1", null, null, 0, 100));
+        time("artwork", iterations, () ->
+                connection.getArtworkLoader().load(ThreadLocalRandom.current().nextInt(1, trackCount + 1), 256)
+                        .get(30, TimeUnit.SECONDS));
+
+        MM5LibraryMirror mirror = new MM5LibraryMirror(connection);
+        try {
+            time("library mirror reload", 1, () -> {
+                mirror.reload();
+                // a failed reload only logs a warning and leaves the mirror incomplete
+                long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(RELOAD_TIMEOUT_SECONDS);
+                while (!mirror.isComplete()) {
+                    if (System.nanoTime() - deadline > 0) {
+                        throw new TimeoutException("library mirror did not load within "
+                                + RELOAD_TIMEOUT_SECONDS + " s; see the log for why");
+                    }
+                    Thread.sleep(10);
+                }
+            });
+        } finally {
+            mirror.shutdown();
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long eventsSent = mediaMonkey.getEventsSent() - eventsSentAtStart;
+        System.out.printf("events: %d sent, %d delivered after de-duplication, %.1f/s over %.1f s%n",
+                eventsSent, eventsReceived.get(), eventsReceived.get() / seconds, seconds);
+        System.out.printf("scripts evaluated: %d%n%n", mediaMonkey.getEvaluations());
+        System.out.print(connection.getCallStats().report());
+    }
+
+    private interface Operation {
+        void run() throws Exception;
+    }
+
+    private static void time(String name, int iterations, Operation operation) throws Exception {
+        long[] nanos = new long[iterations];
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            operation.run();
+            nanos[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(nanos);
+        System.out.printf("%-28s n=%-5d mean=%8.2f ms  p50=%8.2f ms  p95=%8.2f ms  max=%8.2f ms%n",
+                name, iterations,
+                Arrays.stream(nanos).average().orElse(0) / 1e6,
+                nanos[iterations / 2] / 1e6,
+                nanos[(int) (iterations * 0.95)] / 1e6,
+                nanos[iterations - 1] / 1e6);
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder())
+                    .forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private static long arg(String[] args, int index, long defaultValue) {
+        return args.length > index
+                ? Long.parseLong(args[index])
+                : defaultValue;
+    }
+}
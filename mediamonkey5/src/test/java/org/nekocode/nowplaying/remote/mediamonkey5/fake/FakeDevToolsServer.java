@@ -0,0 +1,397 @@
+/*
+ * Copyright (c) 2024. Dan Clark
+ */
+
+package org.nekocode.nowplaying.remote.mediamonkey5.fake;
+
+import org.nekocode.nowplaying.internals.NamedThreadFactory;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.log4j.Log4j2;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+/**
+ * A minimal stand-in for a Chrome Dev Tools endpoint, for exercising {@link
+ * org.nekocode.nowplaying.remote.mediamonkey5.MM5Connection} without MediaMonkey.
+ * <p>
+ * It serves the HTTP tab listing ({@code /json} and {@code /json/list}) with a single
+ * "file:///mainwindow.html" tab, and speaks just enough of the websocket protocol for the subset of
+ * CDP that NowPlaying uses: {@code Runtime.enable}, {@code Runtime.evaluate} and
+ * {@code Runtime.addBinding} requests, and {@code Runtime.bindingCalled} and
+ * {@code Runtime.consoleAPICalled} events.  Every other method succeeds with an empty result.
+ * <p>
+ * Scripts are not actually run: each expression is handed to the evaluator along with its object
+ * group (which NowPlaying sets to the name of the operation), and the evaluator returns the value
+ * the script would have produced (a String, Number, Boolean, Map or null), or throws to report a
+ * script error.  Every response is delayed by the configured latency plus a random
+ * jitter, so responses can arrive out of order, as they can from a busy MediaMonkey.
+ */
+@Log4j2
+public class FakeDevToolsServer implements Closeable {
+    private static final String WEBSOCKET_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+    private static final String TAB_ID = "fake-mediamonkey";
+    private static final int OPCODE_CONTINUATION = 0x0;
+    private static final int OPCODE_TEXT = 0x1;
+    private static final int OPCODE_CLOSE = 0x8;
+    private static final int OPCODE_PING = 0x9;
+    private static final int OPCODE_PONG = 0xA;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ServerSocket serverSocket;
+    private final ExecutorService connectionThreads = Executors.newCachedThreadPool(
+            new NamedThreadFactory("FakeDevTools", true));
+    private final ScheduledExecutorService responseThread = Executors.newSingleThreadScheduledExecutor(
+            new NamedThreadFactory("FakeDevToolsResponses", true));
+    private final Set<Session> sessions = ConcurrentHashMap.newKeySet();
+
+    private final BiFunction<String, String, Object> evaluator;
+    private volatile long latencyMs;
+    private volatile long jitterMs;
+
+    /**
+     * @param port      port to listen on, or 0 to pick a free one (see {@link #getPort()})
+     * @param evaluator produces the result of each evaluated expression, given its object group
+     *                  and the expression
+     */
+    public FakeDevToolsServer(int port, BiFunction<String, String, Object> evaluator) throws IOException {
+        this.evaluator = evaluator;
+        serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        connectionThreads.execute(this::accept);
+        log.info("Fake Dev Tools listening on port {}", getPort());
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Sets the delay added to every response and event.  Each message is delayed by latency plus a
+     * random amount between zero and jitter.
+     */
+    public void setLatency(long latencyMs, long jitterMs) {
+        this.latencyMs = latencyMs;
+        this.jitterMs = jitterMs;
+    }
+
+    /**
+     * Sends a Runtime.bindingCalled event to every session that has added the binding.
+     */
+    public void bindingCalled(String name, String payload) {
+        Map<String, Object> params = new LinkedHashMap<>();
+        params.put("name", name);
+        params.put("payload", payload);
+        params.put("executionContextId", 1);
+        sessions.stream()
+                .filter(session -> session.bindings.contains(name))
+                .forEach(session -> session.sendLater(Map.of("method", "Runtime.bindingCalled", "params", params)));
+    }
+
+    /**
+     * Sends a Runtime.consoleAPICalled event (a console.debug call) to every session.
+     */
+    public void consoleDebug(String message) {
+        Map<String, Object> params = new LinkedHashMap<>();
+        params.put("type", "debug");
+        params.put("args", List.of(Map.of("type", "string", "value", message)));
+        params.put("executionContextId", 1);
+        params.put("timestamp", (double) System.currentTimeMillis());
+        sessions.forEach(session -> session.sendLater(Map.of("method", "Runtime.consoleAPICalled", "params", params)));
+    }
+
+    /**
+     * Closes every open websocket, as if MediaMonkey had gone away, without stopping the server.
+     */
+    public void dropConnections() {
+        sessions.forEach(Session::close);
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        dropConnections();
+        connectionThreads.shutdownNow();
+        responseThread.shutdownNow();
+    }
+
+    private long nextDelay() {
+        long jitter = jitterMs;
+        return latencyMs + (jitter > 0 ? ThreadLocalRandom.current().nextLong(jitter + 1) : 0);
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                connectionThreads.execute(() -> handle(socket));
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    log.warn("error accepting connection", e);
+                }
+            }
+        }
+    }
+
+    private void handle(Socket socket) {
+        try (socket) {
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            String requestLine = readLine(in);
+            Map<String, String> headers = new HashMap<>();
+            for (String line = readLine(in); !line.isEmpty(); line = readLine(in)) {
+                int colon = line.indexOf(':');
+                if (colon > 0) {
+                    headers.put(line.substring(0, colon).trim().toLowerCase(Locale.ROOT), line.substring(colon + 1).trim());
+                }
+            }
+            String path = requestLine.split(" ")[1];
+            if ("websocket".equalsIgnoreCase(headers.get("upgrade"))) {
+                Session session = new Session(socket, in);
+                session.handshake(headers.get("sec-websocket-key"));
+                sessions.add(session);
+                try {
+                    session.readMessages();
+                } finally {
+                    sessions.remove(session);
+                }
+            } else if (path.startsWith("/json")) {
+                String host = headers.getOrDefault("host", "localhost:" + getPort());
+                Map<String, Object> tab = new LinkedHashMap<>();
+                tab.put("id", TAB_ID);
+                tab.put("type", "page");
+                tab.put("title", "MediaMonkey");
+                tab.put("url", "file:///mainwindow.html");
+                tab.put("description", "");
+                tab.put("webSocketDebuggerUrl", "ws://" + host + "/devtools/page/" + TAB_ID);
+                tab.put("devtoolsFrontendUrl", "/devtools/inspector.html?ws=" + host + "/devtools/page/" + TAB_ID);
+                writeHttp(socket, "200 OK", objectMapper.writeValueAsBytes(List.of(tab)));
+            } else {
+                writeHttp(socket, "404 Not Found", new byte[0]);
+            }
+        } catch (EOFException | SocketException e) {
+            // client went away
+        } catch (IOException | RuntimeException e) {
+            log.warn("error handling connection", e);
+        }
+    }
+
+    private static void writeHttp(Socket socket, String status, byte[] body) throws IOException {
+        BufferedOutputStream out = new BufferedOutputStream(socket.getOutputStream());
+        out.write(("HTTP/1.1 " + status + "\r\n"
+                + "Content-Type: application/json; charset=UTF-8\r\n"
+                + "Content-Length: " + body.length + "\r\n"
+                + "Connection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+        out.write(body);
+        out.flush();
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b < 0) {
+                throw new EOFException();
+            }
+            if (b != '\r') {
+                line.write(b);
+            }
+        }
+        return line.toString(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * One websocket connection.
+     */
+    private class Session {
+        private final Socket socket;
+        private final DataInputStream in;
+        private final DataOutputStream out;
+        private final Set<String> bindings = ConcurrentHashMap.newKeySet();
+
+        private Session(Socket socket, InputStream in) throws IOException {
+            this.socket = socket;
+            this.in = new DataInputStream(in);
+            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        }
+
+        private void handshake(String key) throws IOException {
+            String accept;
+            try {
+                byte[] digest = MessageDigest.getInstance("SHA-1")
+                        .digest((key + WEBSOCKET_GUID).getBytes(StandardCharsets.US_ASCII));
+                accept = Base64.getEncoder().encodeToString(digest);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IOException(e);
+            }
+            synchronized (out) {
+                out.write(("HTTP/1.1 101 Switching Protocols\r\n"
+                        + "Upgrade: websocket\r\n"
+                        + "Connection: Upgrade\r\n"
+                        + "Sec-WebSocket-Accept: " + accept + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+                out.flush();
+            }
+        }
+
+        private void readMessages() throws IOException {
+            ByteArrayOutputStream message = new ByteArrayOutputStream();
+            while (true) {
+                int first = in.readUnsignedByte();
+                boolean fin = (first & 0x80) != 0;
+                int opcode = first & 0x0F;
+                int second = in.readUnsignedByte();
+                long length = second & 0x7F;
+                if (length == 126) {
+                    length = in.readUnsignedShort();
+                } else if (length == 127) {
+                    length = in.readLong();
+                }
+                byte[] mask = new byte[4];
+                if ((second & 0x80) != 0) {
+                    in.readFully(mask);
+                }
+                byte[] payload = new byte[(int) length];
+                in.readFully(payload);
+                for (int i = 0; i < payload.length; i++) {
+                    payload[i] ^= mask[i % 4];
+                }
+
+                switch (opcode) {
+                    case OPCODE_TEXT, OPCODE_CONTINUATION -> {
+                        message.write(payload);
+                        if (fin) {
+                            onMessage(message.toString(StandardCharsets.UTF_8));
+                            message.reset();
+                        }
+                    }
+                    case OPCODE_PING -> writeFrame(OPCODE_PONG, payload);
+                    case OPCODE_CLOSE -> {
+                        writeFrame(OPCODE_CLOSE, payload);
+                        return;
+                    }
+                    default -> {
+                        // binary frames and pongs aren't used by CDP
+                    }
+                }
+            }
+        }
+
+        private void onMessage(String text) throws IOException {
+            JsonNode request = objectMapper.readTree(text);
+            long id = request.path("id").asLong();
+            String method = request.path("method").asText();
+            JsonNode params = request.path("params");
+
+            Map<String, Object> result = new LinkedHashMap<>();
+            switch (method) {
+                case "Runtime.addBinding" -> bindings.add(params.path("name").asText());
+                case "Runtime.removeBinding" -> bindings.remove(params.path("name").asText());
+                case "Runtime.evaluate" ->
+                        evaluate(params.path("objectGroup").asText(""), params.path("expression").asText(), result);
+                default -> {
+                    // Runtime.enable and anything else simply succeeds
+                }
+            }
+            sendLater(Map.of("id", id, "result", result));
+        }
+
+        private void evaluate(String objectGroup, String expression, Map<String, Object> result) {
+            try {
+                result.put("result", toRemoteObject(evaluator.apply(objectGroup, expression)));
+            } catch (RuntimeException e) {
+                String description = "Error: " + e.getMessage();
+                Map<String, Object> exception = Map.of("type", "object", "subtype", "error", "description", description);
+                result.put("result", exception);
+                result.put("exceptionDetails", Map.of(
+                        "exceptionId", 1,
+                        "text", "Uncaught",
+                        "lineNumber", 0,
+                        "columnNumber", 0,
+                        "exception", exception));
+            }
+        }
+
+        private Map<String, Object> toRemoteObject(Object value) {
+            Map<String, Object> remoteObject = new LinkedHashMap<>();
+            switch (value) {
+                case null -> remoteObject.put("type", "undefined");
+                case String s -> remoteObject.put("type", "string");
+                case Number n -> remoteObject.put("type", "number");
+                case Boolean b -> remoteObject.put("type", "boolean");
+                default -> remoteObject.put("type", "object");
+            }
+            if (value != null) {
+                remoteObject.put("value", value);
+            }
+            return remoteObject;
+        }
+
+        private void sendLater(Map<String, Object> message) {
+            try {
+                byte[] text = objectMapper.writeValueAsBytes(message);
+                responseThread.schedule(() -> {
+                    try {
+                        writeFrame(OPCODE_TEXT, text);
+                    } catch (IOException e) {
+                        log.debug("could not send to closed session", e);
+                    }
+                }, nextDelay(), TimeUnit.MILLISECONDS);
+            } catch (IOException e) {
+                log.error("could not encode message", e);
+            }
+        }
+
+        private void writeFrame(int opcode, byte[] payload) throws IOException {
+            synchronized (out) {
+                out.writeByte(0x80 | opcode);
+                if (payload.length < 126) {
+                    out.writeByte(payload.length);
+                } else if (payload.length < 65536) {
+                    out.writeByte(126);
+                    out.writeShort(payload.length);
+                } else {
+                    out.writeByte(127);
+                    out.writeLong(payload.length);
+                }
+                out.write(payload);
+                out.flush();
+            }
+        }
+
+        private void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                log.debug("error closing session", e);
+            }
+        }
+    }
+}
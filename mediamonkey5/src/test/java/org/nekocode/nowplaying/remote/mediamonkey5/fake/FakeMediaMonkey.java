@@ -0,0 +1,491 @@
+/*
+ * Copyright (c) 2024. Dan Clark
+ */
+
+package org.nekocode.nowplaying.remote.mediamonkey5.fake;
+
+import org.nekocode.nowplaying.internals.NamedThreadFactory;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+import org.jetbrains.annotations.Nullable;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * A synthetic MediaMonkey 5 behind a {@link FakeDevToolsServer}, for load and latency testing of
+ * the MediaMonkey connection on any platform.
+ * <p>
+ * It holds a generated library of tracks and a simple player, and answers the operations that
+ * {@link org.nekocode.nowplaying.remote.mediamonkey5.MM5Connection} and its helpers evaluate: the
+ * event listener registration, heartbeat, player snapshots, current track, track lookup, search,
+ * artwork, the Now Playing list (which is the whole library), transport controls and rating
+ * changes.  Scripts are told apart by the operation name they are evaluated under, never by their
+ * text, and parameters are read from the JSON argument that scripts built with
+ * {@code MM5Connection.call} are applied to.  Results that MediaMonkey delivers through bindings
+ * are delivered the same way.  Other operations can be answered by adding a handler with
+ * {@link #addScriptHandler}; any operation that nothing answers fails with a script error.
+ * <p>
+ * While running, it raises player and library events and console noise at the configured rates.
+ */
+@Log4j2
+public class FakeMediaMonkey implements Closeable {
+    /**
+     * How the fake behaves.  Everything has a default, so {@code Settings.builder().build()} gives
+     * a small, fast, quiet MediaMonkey.
+     */
+    @Builder
+    @Getter
+    public static class Settings {
+        /**
+         * port for the Dev Tools endpoint; 0 picks a free port
+         */
+        @Builder.Default
+        private final int port = 0;
+        @Builder.Default
+        private final int trackCount = 10_000;
+        /**
+         * seed for generating the library, so runs are repeatable
+         */
+        @Builder.Default
+        private final long seed = 1;
+        @Builder.Default
+        private final long latencyMs = 0;
+        @Builder.Default
+        private final long jitterMs = 0;
+        /**
+         * rate of player and library events (seek changes, track modifications and track changes)
+         */
+        @Builder.Default
+        private final double eventsPerSecond = 0;
+        /**
+         * rate of console.debug messages that have nothing to do with NowPlaying
+         */
+        @Builder.Default
+        private final double consoleMessagesPerSecond = 0;
+    }
+
+    private static final String[] GENRES = {"Anime", "Soundtrack", "J-Pop", "Rock", "Classical", "Game"};
+
+    /**
+     * trailing tokens must fail, so that script text after a candidate argument isn't ignored
+     */
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .enable(DeserializationFeature.FAIL_ON_TRAILING_TOKENS);
+    private final Settings settings;
+    private final FakeDevToolsServer server;
+    private final ScheduledExecutorService eventThread = Executors.newScheduledThreadPool(2,
+            new NamedThreadFactory("FakeMediaMonkeyEvents", true));
+    private final Map<String, Function<String, Object>> scriptHandlers = new ConcurrentHashMap<>();
+    private final Map<Integer, String> artworkBySize = new ConcurrentHashMap<>();
+
+    /**
+     * the library, indexed by track id - 1
+     */
+    private final List<Map<String, Object>> library;
+    private final Object playerLock = new Object();
+    private int currentIndex;
+    private boolean playing;
+    private boolean paused;
+    /**
+     * playing: wall clock time the current track started; otherwise: position in the track
+     */
+    private long positionBase;
+    /**
+     * true once the event listener script has run
+     */
+    private volatile boolean listening;
+
+    private final AtomicLong evaluations = new AtomicLong();
+    private final AtomicLong eventsSent = new AtomicLong();
+
+    public FakeMediaMonkey(Settings settings) throws IOException {
+        this.settings = settings;
+        library = generateLibrary(settings.getTrackCount(), settings.getSeed());
+        server = new FakeDevToolsServer(settings.getPort(), this::evaluate);
+        server.setLatency(settings.getLatencyMs(), settings.getJitterMs());
+        schedule(settings.getEventsPerSecond(), this::raiseRandomEvent);
+        schedule(settings.getConsoleMessagesPerSecond(),
+                () -> server.consoleDebug("fake MediaMonkey debug message " + System.nanoTime()));
+    }
+
+    public int getPort() {
+        return server.getPort();
+    }
+
+    public FakeDevToolsServer getServer() {
+        return server;
+    }
+
+    /**
+     * @return number of scripts evaluated so far
+     */
+    public long getEvaluations() {
+        return evaluations.get();
+    }
+
+    /**
+     * @return number of player and library events sent so far
+     */
+    public long getEventsSent() {
+        return eventsSent.get();
+    }
+
+    /**
+     * Answers every script evaluated under the given operation name with the given handler,
+     * instead of the built-in behaviour.  The handler is given the script, and returns the
+     * script's value or throws to make the script fail.
+     */
+    public void addScriptHandler(String operation, Function<String, Object> handler) {
+        scriptHandlers.put(operation, handler);
+    }
+
+    /**
+     * Starts playing the given track, as if the user had double-clicked it in MediaMonkey.
+     */
+    public void playTrack(int trackId) {
+        synchronized (playerLock) {
+            currentIndex = Math.floorMod(trackId - 1, library.size());
+            playing = true;
+            paused = false;
+            positionBase = System.currentTimeMillis();
+        }
+        sendEvent("playbackState", trackId, "trackChanged");
+    }
+
+    @Override
+    public void close() throws IOException {
+        eventThread.shutdownNow();
+        server.close();
+    }
+
+    private void schedule(double perSecond, Runnable task) {
+        if (perSecond > 0) {
+            long periodNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / perSecond));
+            eventThread.scheduleAtFixedRate(task, periodNanos, periodNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private static List<Map<String, Object>> generateLibrary(int trackCount, long seed) {
+        Random random = new Random(seed);
+        int artistCount = Math.max(1, trackCount / 100);
+        List<Map<String, Object>> tracks = new ArrayList<>(trackCount);
+        for (int id = 1; id <= trackCount; id++) {
+            int album = (id - 1) / 12;
+            int trackNumber = (id - 1) % 12 + 1;
+            String artist = "Artist " + (album % artistCount);
+            String albumName = "Album " + album;
+            String title = "Track " + id;
+            Map<String, Object> track = new LinkedHashMap<>();
+            track.put("id", id);
+            track.put("title", title);
+            track.put("artist", artist);
+            track.put("album", albumName);
+            track.put("genre", GENRES[random.nextInt(GENRES.length)]);
+            track.put("commentShort", random.nextInt(4) == 0 ? "comment " + id : "");
+            track.put("custom1", random.nextInt(3) == 0 ? "Series " + (album % 50) : "");
+            track.put("rating", random.nextInt(11) * 10);
+            track.put("songLength", 120_000 + random.nextInt(300_000));
+            track.put("trackNumber", String.valueOf(trackNumber));
+            track.put("path", "C:\\Music\\%s\\%s\\%02d %s.mp3".formatted(artist, albumName, trackNumber, title));
+            tracks.add(track);
+        }
+        return tracks;
+    }
+
+    /**
+     * @param operation the operation name the script was evaluated under (its object group)
+     */
+    private Object evaluate(String operation, String script) {
+        evaluations.incrementAndGet();
+        Function<String, Object> handler = scriptHandlers.get(operation);
+        if (handler != null) {
+            return handler.apply(script);
+        }
+
+        switch (operation) {
+            case "heartbeat" -> {
+                return "object";
+            }
+            case "events" -> listening = true;
+            case "findTracks.send" -> findTracks(argument(script));
+            case "getTrack.send" -> getTrack(argument(script));
+            case "artwork.send" -> getArtwork(argument(script));
+            case "rating" -> rate(argument(script));
+            case "transport" -> {
+                JsonNode command = argument(script);
+                transport(command.path("action").asText(), command.path("count").asInt(1));
+            }
+            case "playlist" -> {
+                return playlistWindow(argument(script));
+            }
+            case "snapshot" -> {
+                return snapshot();
+            }
+            case "getCurrentTrack" -> {
+                synchronized (playerLock) {
+                    return toJson(library.get(currentIndex));
+                }
+            }
+            case "playerState" -> {
+                synchronized (playerLock) {
+                    return Map.of("isPlaying", playing, "paused", paused);
+                }
+            }
+            case "position" -> {
+                synchronized (playerLock) {
+                    return position();
+                }
+            }
+            default -> throw new IllegalArgumentException("fake MediaMonkey can't evaluate operation '" + operation + "'");
+        }
+        return null;
+    }
+
+    /**
+     * Reads the argument of a script built by {@code MM5Connection.call}, which applies a function
+     * to a single JSON object: {@code (function)(argument)}.  The function's text isn't looked
+     * at: the argument is the first JSON object that follows a {@code )(} and runs up to the
+     * closing parenthesis.
+     */
+    private JsonNode argument(String script) {
+        String expression = script.strip();
+        if (expression.endsWith(")")) {
+            for (int i = expression.indexOf(")("); i >= 0; i = expression.indexOf(")(", i + 1)) {
+                try {
+                    JsonNode argument = objectMapper.readTree(expression.substring(i + 2, expression.length() - 1));
+                    if (argument.isObject()) {
+                        return argument;
+                    }
+                } catch (JsonProcessingException e) {
+                    // still inside the function; keep looking
+                }
+            }
+        }
+        throw new IllegalArgumentException("script has no argument");
+    }
+
+    /**
+     * The whole library doubles as the Now Playing list.
+     */
+    private String playlistWindow(JsonNode range) {
+        int offset = range.path("offset").asInt();
+        int limit = range.path("limit").asInt();
+        Map<String, Object> window = new LinkedHashMap<>();
+        window.put("count", library.size());
+        synchronized (playerLock) {
+            window.put("position", currentIndex);
+        }
+        window.put("tracks", library.subList(Math.min(offset, library.size()), Math.min(offset + limit, library.size())));
+        return toJson(window);
+    }
+
+    private String snapshot() {
+        synchronized (playerLock) {
+            Map<String, Object> snapshot = new LinkedHashMap<>();
+            snapshot.put("isPlaying", playing);
+            snapshot.put("paused", paused);
+            snapshot.put("trackPositionMS", position());
+            snapshot.put("track", library.get(currentIndex));
+            return toJson(snapshot);
+        }
+    }
+
+    /**
+     * must be called while holding the player lock
+     */
+    private long position() {
+        return playing && !paused
+                ? System.currentTimeMillis() - positionBase
+                : positionBase;
+    }
+
+    private void transport(String action, int count) {
+        int trackId;
+        String state;
+        synchronized (playerLock) {
+            switch (action) {
+                case "play" -> {
+                    if (!playing || paused) {
+                        positionBase = System.currentTimeMillis() - (playing ? positionBase : 0);
+                    }
+                    playing = true;
+                    paused = false;
+                }
+                case "pause" -> {
+                    if (playing && !paused) {
+                        positionBase = System.currentTimeMillis() - positionBase;
+                        paused = true;
+                    }
+                }
+                case "next", "prev" -> {
+                    int step = action.equals("next") ? count : -count;
+                    currentIndex = Math.floorMod(currentIndex + step, library.size());
+                    positionBase = playing && !paused ? System.currentTimeMillis() : 0;
+                }
+            }
+            trackId = currentIndex + 1;
+            state = switch (action) {
+                case "play" -> "play";
+                case "pause" -> "pause";
+                default -> "trackChanged";
+            };
+        }
+        sendEvent("playbackState", trackId, state);
+    }
+
+    private void findTracks(JsonNode search) {
+        int id = search.path("id").asInt(0);
+        int afterId = search.path("afterId").asInt(0);
+        String title = search.path("title").asText(null);
+        String artist = search.path("artist").asText(null);
+        String album = search.path("album").asText(null);
+        boolean idsOnly = search.path("idsOnly").asBoolean(false);
+        List<Map<String, Object>> tracks = library.stream()
+                .filter(track -> id == 0 || (int) track.get("id") == id)
+                .filter(track -> (int) track.get("id") > afterId)
+                .filter(track -> contains(track.get("title"), title)
+                        && contains(track.get("artist"), artist)
+                        && contains(track.get("album"), album))
+                .skip(search.path("offset").asInt(0))
+                .limit(search.path("limit").asInt(Integer.MAX_VALUE))
+                .map(track -> idsOnly ? Map.of("id", track.get("id")) : track)
+                .toList();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("requestId", search.path("requestId").asText());
+        result.put("tracks", tracks);
+        server.bindingCalled("findTracks", toJson(result));
+    }
+
+    private static boolean contains(Object value, @Nullable String term) {
+        return term == null
+                || term.isEmpty()
+                || value.toString().toLowerCase(Locale.ROOT).contains(term.toLowerCase(Locale.ROOT));
+    }
+
+    private void getTrack(JsonNode request) {
+        Map<String, Object> track = findTrack(request);
+        if (track != null) {
+            server.bindingCalled("getTrack", toJson(track));
+        }
+    }
+
+    private void getArtwork(JsonNode request) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("requestId", request.path("requestId").asText());
+        if (findTrack(request) != null) {
+            int thumbSize = request.path("size").asInt();
+            result.put("url", "file:///temp/fake-" + thumbSize + ".png");
+            result.put("data", artworkBySize.computeIfAbsent(thumbSize, FakeMediaMonkey::renderArtwork));
+        }
+        server.bindingCalled("artwork", toJson(result));
+    }
+
+    private void rate(JsonNode command) {
+        Map<String, Object> track = findTrack(command);
+        if (track != null) {
+            synchronized (track) {
+                track.put("rating", command.path("rating").asInt());
+            }
+            sendEvent("trackModified", (int) track.get("id"), null);
+        }
+    }
+
+    /**
+     * @return the track named by the argument's trackId, or null if there is no such track
+     */
+    @Nullable
+    private Map<String, Object> findTrack(JsonNode argument) {
+        if (!argument.has("trackId")) {
+            throw new IllegalArgumentException("track id not found");
+        }
+        int index = argument.path("trackId").asInt() - 1;
+        return index >= 0 && index < library.size()
+                ? library.get(index)
+                : null;
+    }
+
+    private static String renderArtwork(int size) {
+        BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setPaint(new GradientPaint(0, 0, Color.PINK, size, size, Color.DARK_GRAY));
+        g.fillRect(0, 0, size, size);
+        g.dispose();
+        try {
+            ByteArrayOutputStream png = new ByteArrayOutputStream();
+            ImageIO.write(image, "png", png);
+            return Base64.getEncoder().encodeToString(png.toByteArray());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void raiseRandomEvent() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int roll = random.nextInt(10);
+        if (roll == 0) {
+            transport("next", 1);
+        } else if (roll < 4) {
+            int index = random.nextInt(library.size());
+            Map<String, Object> track = library.get(index);
+            synchronized (track) {
+                track.put("rating", random.nextInt(11) * 10);
+            }
+            sendEvent("trackModified", index + 1, null);
+        } else {
+            int trackId;
+            long position;
+            synchronized (playerLock) {
+                trackId = currentIndex + 1;
+                position = position();
+            }
+            sendEvent("seekChange", trackId, String.valueOf(position / 1000.0));
+        }
+    }
+
+    private void sendEvent(String type, int trackId, @Nullable String payload) {
+        if (!listening) {
+            return;
+        }
+        Map<String, Object> event = new LinkedHashMap<>();
+        event.put("type", type);
+        event.put("trackId", trackId);
+        event.put("payload", payload);
+        event.put("ts", System.currentTimeMillis());
+        eventsSent.incrementAndGet();
+        server.bindingCalled("nowPlayingEvent", toJson(event));
+    }
+
+    private String toJson(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
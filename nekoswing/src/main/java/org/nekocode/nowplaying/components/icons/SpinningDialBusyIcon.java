@@ -5,25 +5,56 @@
 package org.nekocode.nowplaying.components.icons;
 
 import furbelow.SpinningDial;
+import org.divxdede.swing.busy.AnimationClock;
 import org.divxdede.swing.busy.BusyIcon;
+import org.divxdede.swing.busy.BusyModel;
 
 import javax.swing.*;
+import java.awt.*;
+import java.lang.ref.WeakReference;
 
 /**
- * furbelow's SpinningDial in a form that BusyComponent can use
+ * furbelow's SpinningDial in a form that BusyComponent can use.
+ * <p>
+ * The dial is turned by the shared {@link AnimationClock} instead of a timer of its own, and only
+ * while it is busy (always, if it has no model) and the component it was last painted on is showing.
  */
 public class SpinningDialBusyIcon extends SpinningDial implements BusyIcon {
     private BoundedRangeModel model;
+    private final AnimationClock.Animation animation = new DialAnimation();
+    private WeakReference<Component> lastPainted;
 
     public SpinningDialBusyIcon() {
+        stopOwnTimer();
     }
 
     public SpinningDialBusyIcon(int w, int h) {
         super(w, h);
+        stopOwnTimer();
     }
 
     public SpinningDialBusyIcon(int w, int h, int spokes) {
         super(w, h, spokes);
+        stopOwnTimer();
+    }
+
+    private void stopOwnTimer() {
+        // furbelow starts its timer the first time the dial is painted, and only stops it when
+        // told to; without an interval it doesn't have one
+        setFrameInterval(0);
+        AnimationClock.getInstance().add(animation);
+    }
+
+    @Override
+    public synchronized void paintIcon(Component c, Graphics g, int x, int y) {
+        if (lastPainted == null || lastPainted.get() != c) {
+            lastPainted = new WeakReference<>(c);
+        }
+        super.paintIcon(c, g, x, y);
+        // painted, so showing: make sure the dial turns
+        if (animation.isAnimating()) {
+            AnimationClock.getInstance().wake();
+        }
     }
 
     @Override
@@ -42,6 +73,30 @@ public class SpinningDialBusyIcon extends SpinningDial implements BusyIcon {
     }
 
     public void shutdown() {
-        setFrameInterval(0);
+        AnimationClock.getInstance().remove(animation);
+    }
+
+    /**
+     * Turns the dial.
+     */
+    private class DialAnimation implements AnimationClock.Animation {
+        @Override
+        public boolean isAnimating() {
+            if (model instanceof BusyModel busyModel && !busyModel.isBusy()) {
+                return false;
+            }
+            Component c = lastPainted == null ? null : lastPainted.get();
+            return c != null && c.isShowing();
+        }
+
+        @Override
+        public int getFrameInterval() {
+            return SPIN_INTERVAL;
+        }
+
+        @Override
+        public void nextFrame() {
+            SpinningDialBusyIcon.this.nextFrame();
+        }
     }
 }
@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2024. Dan Clark
+ */
+
+package org.nekocode.nowplaying.components.swing;
+
+/**
+ * Grows and blurs the alpha channel of an image, to make the glow around text.
+ * <p>
+ * The 5x5 dilate+blur kernel this replaces is (to within a few percent) the outer product of
+ * {@code [4, 10, 14, 10, 4] / 14} with itself, so it is applied as a horizontal pass followed by
+ * a vertical pass, on plain {@code int[]} pixels.  That is 10 multiplications per pixel instead of
+ * 25 (times four channels), and no image objects, so it can run on any thread.
+ * <p>
+ * The color of every pixel is the same (the glow color), so only alpha is filtered.
+ */
+final class GlowFilter {
+    private static final int[] KERNEL = {4, 10, 14, 10, 4};
+    private static final int RADIUS = KERNEL.length / 2;
+    /**
+     * each pass multiplies by this much
+     */
+    private static final int SCALE = 14;
+
+    private GlowFilter() {
+    }
+
+    /**
+     * @param pixels ARGB pixels (not premultiplied)
+     * @param rgb    color of the result (the alpha byte is ignored)
+     * @return ARGB pixels of the given color, with the grown and blurred alpha of {@code pixels}
+     */
+    static int[] filter(int[] pixels, int width, int height, int rgb) {
+        // horizontal pass, keeping the full precision for the vertical pass
+        int[] horizontal = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            int row = y * width;
+            for (int x = 0; x < width; x++) {
+                int sum = 0;
+                for (int k = 0; k < KERNEL.length; k++) {
+                    int sx = Math.max(0, Math.min(width - 1, x + k - RADIUS));
+                    sum += KERNEL[k] * (pixels[row + sx] >>> 24);
+                }
+                horizontal[row + x] = sum;
+            }
+        }
+
+        // vertical pass
+        int color = rgb & 0xffffff;
+        int[] result = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int sum = 0;
+                for (int k = 0; k < KERNEL.length; k++) {
+                    int sy = Math.max(0, Math.min(height - 1, y + k - RADIUS));
+                    sum += KERNEL[k] * horizontal[sy * width + x];
+                }
+                int alpha = Math.min(255, (sum + SCALE * SCALE / 2) / (SCALE * SCALE));
+                result[y * width + x] = (alpha << 24) | color;
+            }
+        }
+        return result;
+    }
+}
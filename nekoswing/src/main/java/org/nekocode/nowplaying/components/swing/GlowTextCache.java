@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2024. Dan Clark
+ */
+
+package org.nekocode.nowplaying.components.swing;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Text rendered with a glow, shared by every {@link NekoTextPainter} in the process.
+ * <p>
+ * Rendering the glow is by far the most expensive part of painting a label, so rendered text is
+ * kept in a least recently used cache, bounded by the memory its images take up.  Text that isn't
+ * in the cache is rendered on a background thread; the caller keeps painting the text it had
+ * before in the meantime and is told to repaint when it is ready, so painting never waits for the
+ * filter.
+ *
+ * @author dan.clark@nekocode.org
+ */
+final class GlowTextCache {
+    private static final long MAX_BYTES = 8L * 1024 * 1024;
+    private static final Color BACKGROUND_COLOR = new Color(.9f, .9f, .9f, 0);
+    private static final Color GLOW_COLOR = new Color(.9f, .9f, .9f, .8f);
+
+    private static final GlowTextCache INSTANCE = new GlowTextCache();
+
+    /**
+     * Everything that affects how the text looks.
+     *
+     * @param width  width of the image, which is the component's (unrotated) width
+     * @param height height of the image
+     * @param x      x position of the text
+     * @param y      y position of the text's baseline
+     */
+    record Key(String text, Font font, Color foreground, Rotation rotation, int width, int height, int x, int y) { }
+
+    private final ExecutorService renderer = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "NekoTextGlow");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // guarded by this
+    private final LinkedHashMap<Key, BufferedImage> images = new LinkedHashMap<>(16, 0.75f, true);
+    /**
+     * text being rendered, and what to run when it is done
+     */
+    private final Map<Key, List<Runnable>> pending = new HashMap<>();
+    private long bytes;
+
+    private GlowTextCache() {
+    }
+
+    static GlowTextCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Looks up rendered text.  If it isn't cached, it is rendered in the background, and
+     * {@code whenRendered} is run (on the background thread) once it is.
+     *
+     * @return the rendered text, or null if it isn't ready yet
+     */
+    BufferedImage get(Key key, Runnable whenRendered) {
+        synchronized (this) {
+            BufferedImage image = images.get(key);
+            if (image != null) {
+                return image;
+            }
+            List<Runnable> waiting = pending.get(key);
+            if (waiting != null) {
+                // already being rendered
+                waiting.add(whenRendered);
+                return null;
+            }
+            waiting = new ArrayList<>();
+            waiting.add(whenRendered);
+            pending.put(key, waiting);
+        }
+        renderer.execute(() -> {
+            BufferedImage image = null;
+            List<Runnable> waiting;
+            try {
+                image = render(key);
+            } finally {
+                // if rendering failed, the next paint tries again
+                synchronized (this) {
+                    waiting = pending.remove(key);
+                    if (image != null) {
+                        add(key, image);
+                    }
+                }
+            }
+            waiting.forEach(Runnable::run);
+        });
+        return null;
+    }
+
+    private void add(Key key, BufferedImage image) {
+        BufferedImage previous = images.put(key, image);
+        if (previous != null) {
+            bytes -= bytes(previous);
+        }
+        bytes += bytes(image);
+        Iterator<BufferedImage> eldest = images.values().iterator();
+        while (bytes > MAX_BYTES && images.size() > 1) {
+            bytes -= bytes(eldest.next());
+            eldest.remove();
+        }
+    }
+
+    private static long bytes(BufferedImage image) {
+        return (long) image.getWidth() * image.getHeight() * 4;
+    }
+
+    /**
+     * Draws the text, with a glow around it, into an image the size of the component.
+     */
+    static BufferedImage render(Key key) {
+        BufferedImage buffer = new BufferedImage(key.width(), key.height(), BufferedImage.TYPE_INT_ARGB);
+
+        // clear the background
+        //    make sure the background is the same color (but not opacity)
+        //    as the glow color because the partially opaque portion will
+        //    pull some color from the background color when rendering
+        // NOTE: this is the same general effect as premultiplying the data,
+        //       but the results are slightly different, and I like this better
+        Graphics2D clear = buffer.createGraphics();
+        clear.setBackground(BACKGROUND_COLOR);
+        clear.clearRect(0, 0, key.width(), key.height());
+        clear.dispose();
+
+        Graphics2D g = buffer.createGraphics();
+        g.setFont(key.font());
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setColor(GLOW_COLOR);
+        g.drawString(key.text(), key.x(), key.y());
+
+        int[] pixels = buffer.getRGB(0, 0, key.width(), key.height(), null, 0, key.width());
+        BufferedImage glow = new BufferedImage(key.width(), key.height(), BufferedImage.TYPE_INT_ARGB);
+        glow.setRGB(0, 0, key.width(), key.height(),
+                GlowFilter.filter(pixels, key.width(), key.height(), GLOW_COLOR.getRGB()), 0, key.width());
+
+        // add the blurred image to the original to achieve the glow
+        g.setComposite(AlphaComposite.SrcOut);
+        g.drawImage(glow, 0, 0, null);
+        g.setComposite(AlphaComposite.SrcOver);
+
+        g.setColor(key.foreground());
+        g.drawString(key.text(), key.x(), key.y());
+        g.dispose();
+
+        // the format Java2D draws fastest
+        BufferedImage result = new BufferedImage(key.width(), key.height(), BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D rg = result.createGraphics();
+        rg.drawImage(buffer, 0, 0, null);
+        rg.dispose();
+        return result;
+    }
+}
@@ -4,18 +4,16 @@
 
 package org.nekocode.nowplaying.components.swing;
 
-import com.jhlabs.image.ConvolveFilter;
-
 import javax.swing.*;
 import javax.swing.plaf.ComponentUI;
 import javax.swing.plaf.basic.BasicHTML;
 import javax.swing.text.View;
 import java.awt.*;
 import java.awt.image.BufferedImage;
-import java.awt.image.Kernel;
 
 /**
- * Rendering for pretty text components.
+ * Rendering for pretty text components.  The text, with its glow, comes from the
+ * {@link GlowTextCache}.
  */
 class NekoTextPainter extends ComponentUI {
     /**
@@ -23,22 +21,19 @@ class NekoTextPainter extends ComponentUI {
      */
     static final int TEXT_INSET = 2;
 
-    private static final DilateBlurFilter GROW_AND_BLUR_FILTER = new DilateBlurFilter();
-    private static final Color BACKGROUND_COLOR = new Color(.9f, .9f, .9f, 0);
-    private static final Color GLOW_COLOR = new Color(.9f, .9f, .9f, .8f);
-
     private final Rotation rotation;
 
-    private BufferedImage tempBuffer1;
-    private Dimension cachedSize;
-    private String cachedString;
-
     // these rectangles get used a lot, so keep them as fields
     // (this pattern is copied from BasicLabelUI/BasicButtonUI)
     private final Rectangle paintIconR = new Rectangle();
     private final Rectangle paintTextR = new Rectangle();
     private final Rectangle paintViewR = new Rectangle();
 
+    /**
+     * the glow text painted last, which is shown while the glow for new text is being rendered
+     */
+    private BufferedImage lastGlowText;
+
     public NekoTextPainter() {
         rotation = Rotation.NONE;
     }
@@ -60,12 +55,6 @@ class NekoTextPainter extends ComponentUI {
      * @see #paint(java.awt.Graphics, javax.swing.JComponent)
      */
     protected void paintText(JComponent c, Graphics g, String s, Color foreground, int textX, int textY) {
-        if (c.getSize().equals(cachedSize) && s.equals(cachedString)) {
-            // nothing has changed, so no need to recalculate everything
-            g.drawImage(tempBuffer1, 0, 0, null);
-            return;
-        }
-
         int yOffSet;
         if (c instanceof NekoLabel)
         {
@@ -76,51 +65,34 @@ class NekoTextPainter extends ComponentUI {
             yOffSet = 0;
         }
 
-        cachedSize = c.getSize();
-        cachedString = s;
+        int width = rotation.isVertical() ? c.getHeight() : c.getWidth();
+        int height = rotation.isVertical() ? c.getWidth() : c.getHeight();
+        if (width <= 0 || height <= 0) {
+            return;
+        }
 
-        BufferedImage tempBuffer2;
-        if (rotation.isVertical()) {
-            // switch the height and width
-            tempBuffer1 = new BufferedImage(c.getHeight(), c.getWidth(), BufferedImage.TYPE_INT_ARGB);
-            tempBuffer2 = new BufferedImage(c.getHeight(), c.getWidth(), BufferedImage.TYPE_INT_ARGB);
-        } else {
-            tempBuffer1 = new BufferedImage(c.getWidth(), c.getHeight(), BufferedImage.TYPE_INT_ARGB);
-            tempBuffer2 = new BufferedImage(c.getWidth(), c.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        GlowTextCache.Key key = new GlowTextCache.Key(s, c.getFont(), foreground, rotation, width, height,
+                textX + TEXT_INSET, textY + yOffSet);
+        BufferedImage glowText = GlowTextCache.getInstance().get(key, c::repaint);
+        if (glowText != null) {
+            lastGlowText = glowText;
+            g.drawImage(glowText, 0, 0, null);
+            return;
         }
 
-        // clear the background
-        //    make sure the background is the same color (but not opacity)
-        //    as the glow color because the partially opaque portion will
-        //    pull some color from the background color when rendering
-        // NOTE: this is the same general effect as premultiplying the data,
-        //       but the results are slightly different, and I like this better
-        Graphics2D tempGraphics1_1 = tempBuffer1.createGraphics();
-        tempGraphics1_1.setBackground(BACKGROUND_COLOR);
-        tempGraphics1_1.clearRect(0, 0, tempBuffer1.getWidth(), tempBuffer1.getHeight());
-        tempGraphics1_1.dispose();
-
-        // no clue why I have to do this with a separate graphics object
-        Graphics2D tempGraphics1_2 = tempBuffer1.createGraphics();
-        tempGraphics1_2.setFont(c.getFont());
-        tempGraphics1_2.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
-                RenderingHints.VALUE_ANTIALIAS_ON);
-        tempGraphics1_2.setColor(GLOW_COLOR);
-        tempGraphics1_2.drawString(s, textX + TEXT_INSET, textY + yOffSet);
-
-        GROW_AND_BLUR_FILTER.filter(tempBuffer1, tempBuffer2);
-
-        // add the blurred image to the original to achieve the glow
-        Composite originalComposite = tempGraphics1_2.getComposite();
-        tempGraphics1_2.setComposite(AlphaComposite.SrcOut);
-        tempGraphics1_2.drawImage(tempBuffer2, 0, 0, null);
-        tempGraphics1_2.setComposite(originalComposite);
-
-        tempGraphics1_2.setColor(foreground);
-        tempGraphics1_2.drawString(s, textX + TEXT_INSET, textY + yOffSet);
-        tempGraphics1_2.dispose();
-
-        g.drawImage(tempBuffer1, 0, 0, null);
+        // the glow is being rendered in the background (usually only for a frame or two); keep
+        // showing the previous text until then, rather than flashing the new text without a glow
+        if (lastGlowText != null) {
+            g.drawImage(lastGlowText, 0, 0, null);
+            return;
+        }
+        // nothing painted yet, so show the text without the glow
+        Graphics2D g2 = (Graphics2D) g.create();
+        g2.setFont(c.getFont());
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g2.setColor(foreground);
+        g2.drawString(s, key.x(), key.y());
+        g2.dispose();
     }
 
     /**
@@ -197,22 +169,4 @@ class NekoTextPainter extends ComponentUI {
     public Rotation getRotation() {
         return rotation;
     }
-
-    public static class DilateBlurFilter extends ConvolveFilter {
-        protected static final float[] DILATE_BLUR_KERNEL = {
-                1/14f,  3/14f,  4/14f,  3/14f, 1/14f,
-                3/14f,  7/14f, 10/14f,  7/14f, 3/14f,
-                4/14f, 10/14f, 14/14f, 10/14f, 4/14f,
-                3/14f,  7/14f, 10/14f,  7/14f, 3/14f,
-                1/14f,  3/14f,  4/14f,  3/14f, 1/14f
-        };
-
-        public DilateBlurFilter() {
-            super(new Kernel(5, 5, DILATE_BLUR_KERNEL));
-        }
-
-        public String toString() {
-            return "Dilation+Blur";
-        }
-    }
 }
@@ -11,6 +11,7 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.RenderingHints.Key;
 import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
 import java.util.Collections;
 import java.util.Map;
 
@@ -21,6 +22,12 @@ import static java.lang.String.format;
 
 /**
  * A panel that draws album art.
+ * <p>
+ * The art, with its rounded corners and transparency applied, is composited once per change into
+ * an image compatible with the screen, and copied from there into a {@link VolatileImage}, so
+ * that the frequent repaints caused by the progress layer are plain (usually accelerated) blits.
+ * The compatible image is kept as the master copy, to restore the volatile image from when its
+ * contents are lost.
  *
  * @author dan.clark@nekocode.org
  */
@@ -35,7 +42,14 @@ public class ArtPanel extends JPanel
 	 */
 	private int artId = 0;
 	private Image art;
-	private Image background;
+	/**
+	 * the composited art, or null if it needs to be composited again
+	 */
+	private BufferedImage background;
+	/**
+	 * copy of {@link #background} in video memory, or null if it needs to be copied again
+	 */
+	private VolatileImage volatileBackground;
 	private int fixedWidth;
 	private final int maxSize;
 	private float transparency;
@@ -97,7 +111,7 @@ public class ArtPanel extends JPanel
 	public void setArt(Image art) {
 		log.debug("art changed");
 		this.art = art;
-        background = null;
+		invalidateBackground();
 		artId++;
 	}
 
@@ -116,7 +130,55 @@ public class ArtPanel extends JPanel
         if (background == null) {
             background = mergeLayers();
 		}
-		g.drawImage(background, 0, 0, null);
+		GraphicsConfiguration gc = getGraphicsConfiguration();
+		if (gc == null) {
+			g.drawImage(background, 0, 0, null);
+			return;
+		}
+		do {
+			int status = volatileBackground == null
+					? VolatileImage.IMAGE_INCOMPATIBLE
+					: volatileBackground.validate(gc);
+			if (status == VolatileImage.IMAGE_INCOMPATIBLE
+					|| volatileBackground.getWidth() != background.getWidth()
+					|| volatileBackground.getHeight() != background.getHeight()) {
+				// first paint, new size, or the window moved to a different screen
+				if (volatileBackground != null) {
+					volatileBackground.flush();
+				}
+				volatileBackground = gc.createCompatibleVolatileImage(
+						background.getWidth(), background.getHeight(), Transparency.TRANSLUCENT);
+				status = VolatileImage.IMAGE_RESTORED;
+			}
+			if (status == VolatileImage.IMAGE_RESTORED) {
+				Graphics2D vg = volatileBackground.createGraphics();
+				vg.setComposite(AlphaComposite.Src);
+				vg.drawImage(background, 0, 0, null);
+				vg.dispose();
+			}
+			g.drawImage(volatileBackground, 0, 0, null);
+		} while (volatileBackground.contentsLost());
+	}
+
+	@Override
+	public void removeNotify() {
+		super.removeNotify();
+		// video memory is scarce; it is copied back from background when the panel is shown again
+		if (volatileBackground != null) {
+			volatileBackground.flush();
+			volatileBackground = null;
+		}
+	}
+
+	/**
+	 * Discards the composited art, so that it is composited again on the next paint.
+	 */
+	private void invalidateBackground() {
+		background = null;
+		if (volatileBackground != null) {
+			volatileBackground.flush();
+			volatileBackground = null;
+		}
 	}
 
     /**
@@ -219,8 +281,13 @@ public class ArtPanel extends JPanel
 		// see: http://weblogs.java.net/blog/campbell/archive/2006/07/java_2d_tricker.html
 		//   also: http://java.sun.com/docs/books/tutorial/2d/advanced/compositing.html
 
-		BufferedImage background = new BufferedImage(size.width, size.height, BufferedImage.TYPE_4BYTE_ABGR);
-		Graphics2D g = (Graphics2D)background.getGraphics();
+		// a translucent image in the screen's own format is drawn without conversion, and can be
+		// cached in video memory
+		GraphicsConfiguration gc = getGraphicsConfiguration();
+		BufferedImage background = gc != null
+				? gc.createCompatibleImage(size.width, size.height, Transparency.TRANSLUCENT)
+				: new BufferedImage(size.width, size.height, BufferedImage.TYPE_INT_ARGB_PRE);
+		Graphics2D g = background.createGraphics();
 		maskImage(g, size.width, size.height, 0, 0, cornerRadius, transparency); // for the default white background
 
 		// draw the art
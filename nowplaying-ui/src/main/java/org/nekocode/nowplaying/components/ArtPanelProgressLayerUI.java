@@ -8,329 +8,317 @@ import lombok.extern.log4j.Log4j2;
 import javax.swing.*;
 import javax.swing.plaf.LayerUI;
 import java.awt.*;
-import java.awt.RenderingHints.Key;
-import java.awt.geom.AffineTransform;
-import java.awt.geom.Arc2D;
-import java.awt.geom.Rectangle2D;
-import java.awt.image.BufferedImage;
+import java.awt.geom.Path2D;
 import java.beans.PropertyChangeEvent;
-import java.util.Collections;
-import java.util.Map;
 
 import static java.awt.RenderingHints.KEY_ANTIALIASING;
 import static java.awt.RenderingHints.VALUE_ANTIALIAS_ON;
 import static java.lang.Math.*;
 
 /**
- * A layer that draws a progress bar around the ArtPanel.
+ * A layer that draws progress bars around the ArtPanel.
+ * <p>
+ * The progress bar runs clockwise around the edge of the panel, starting at the top center.  Any
+ * number of {@link Ring}s (bars of different widths and colors, drawn in order on top of each
+ * other) are drawn in a single pass.
+ * <p>
+ * The path around the edge is sampled once per size, one sample per pixel of its length, into a
+ * lookup table of points and inward normals.  Each progress update only repaints the bounds of
+ * the part of the path that changed, and painting only fills the part of each ring that falls in
+ * the clip, reusing the same path object every time, so an update normally touches a few hundred
+ * pixels and allocates nothing.
  *
  * @author dan.clark@nekocode.org
  */
 @Log4j2
 public class ArtPanelProgressLayerUI extends LayerUI<JComponent> {
-    private static final Map<Key, Object> RENDERING_HINTS = Collections.singletonMap(KEY_ANTIALIASING, VALUE_ANTIALIAS_ON);
-    private static final String DIRTY_SONG = "dirty song";
+    private static final String DIRTY_ALL = "dirty all";
     private static final String DIRTY = "dirty";
-
-    private final int borderSize;
-	private final Color progressColor;
-
-	/**
-	 * The song has changed.
-	 */
-	private boolean dirtySong;
-
-	private int lastArtId;
-
-	/**
-	 * Number of pixels of the border that were filled in as of the last update.
-	 */
-	private double lastFilledLength;
     /**
-     * Number of pixels of the border that are currently filled in.
+     * extra pixels around the changed part of the path to repaint, for antialiasing
      */
-	private double currentFilledLength;
-
-	private BufferedImage corner;
-    private BufferedImage partial;
-	private final ArtPanel artPanel;
-
-	// cached information about the current panel
-	private int cornerDiameter;
-	private int cornerRadius;
-	private final int[] sectionLengths;
-	private int height;
-	private int width;
-	// total length (in pixels) of the layer's perimeter
-	private int perimeter;
-	// lengths (in pixels) of the parts of the perimeter
-	private double cornerLength;
-	private int side;
-	private int bottom;
-	private int topHalf;
-
-	// precalculated clip region
-	private Rectangle clipAll;
-
-    public ArtPanelProgressLayerUI(ArtPanel artPanel, int borderSize, Color progressColor) {
-		this.borderSize = borderSize;
-		this.progressColor = progressColor;
-		this.artPanel = artPanel;
-		// always initialize things the first time this is displayed
-		dirtySong = true;
-		sectionLengths = new int[9];
-	}
+    private static final int DIRTY_MARGIN = 2;
 
     /**
-     * {@inheritDoc}
+     * A progress bar.
      *
-     * The JComponent passed in is actually the JLayer wrapping the component.
+     * @param borderSize width of the bar, in pixels
+     * @param color      color of the bar
      */
-	@Override
-    public void paint(Graphics g, JComponent component) {
-		super.paint(g, component);
-
-		boolean dirtyPanel = lastArtId != artPanel.getArtId();
-		lastArtId = artPanel.getArtId();
+    public record Ring(int borderSize, Color color) { }
 
-		// has the song changed, or time gone down?
-		if (dirtySong || dirtyPanel) {
-			log.debug("song: {}, panel: {}", dirtySong, dirtyPanel);
-
-			initializeLayer(component);
-		}
-
-		drawTrackProgress(g);
-
-		// song hasn't changed
-		dirtySong = false;
-	}
+    private final ArtPanel artPanel;
+    private final Ring[] rings;
+    /**
+     * width of the widest ring, which bounds the area any ring can change
+     */
+    private final int maxBorderSize;
 
-	private void initializeLayer(JComponent component) {
-        if (cornerRadius != artPanel.getCornerRadius()) {
-            cornerRadius = artPanel.getCornerRadius();
-            cornerDiameter = cornerRadius * 2;
+    /**
+     * fraction of the track that has been played
+     */
+    private volatile double progress;
+    /**
+     * the path around the current size of the layer, or null before the first paint
+     */
+    private volatile Geometry geometry;
+
+    // scratch objects for painting, only used on the event dispatch thread
+    private final Path2D.Float path = new Path2D.Float(Path2D.WIND_NON_ZERO, 256);
+    private final Rectangle clip = new Rectangle();
+    // scratch object for progress updates, only used by the thread calling setTrackProgress
+    private final Rectangle dirty = new Rectangle();
+
+    public ArtPanelProgressLayerUI(ArtPanel artPanel, Ring... rings) {
+        this.artPanel = artPanel;
+        this.rings = rings.clone();
+        int max = 0;
+        for (Ring ring : rings) {
+            max = Math.max(max, ring.borderSize());
+        }
+        this.maxBorderSize = max;
+    }
 
-            corner = new BufferedImage(cornerRadius, cornerRadius, BufferedImage.TYPE_4BYTE_ABGR);
-            partial = new BufferedImage(cornerRadius, cornerRadius, BufferedImage.TYPE_4BYTE_ABGR);
-            Graphics2D g = (Graphics2D) corner.getGraphics();
-            g.setRenderingHints(RENDERING_HINTS);
-            g.setColor(progressColor);
-            g.fillArc(-cornerRadius, 0, cornerDiameter, cornerDiameter, 90, -90); // arc for NE corner
-            g.setComposite(AlphaComposite.DstOut);
-            g.fillArc(-cornerRadius+borderSize, borderSize,
-                    cornerDiameter - borderSize*2, cornerDiameter - borderSize*2, 90, -90); // arc for NE corner
-            g.dispose();
+    /**
+     * The path around the edge of the layer, sampled every pixel of its length.  Immutable, so
+     * it can be shared between the event dispatch thread and the thread updating the progress.
+     */
+    private static final class Geometry {
+        final int width;
+        final int height;
+        final int cornerRadius;
+        /**
+         * length of the path, in pixels
+         */
+        final double perimeter;
+        // sample i is at distance min(i, perimeter) along the path
+        final float[] x;
+        final float[] y;
+        // unit normals, pointing into the panel
+        final float[] normalX;
+        final float[] normalY;
+
+        Geometry(int width, int height, int cornerRadius) {
+            this.width = width;
+            this.height = height;
+            this.cornerRadius = clampRadius(width, height, cornerRadius);
+            double r = this.cornerRadius;
+            double topHalf = width / 2.0 - r;
+            double side = height - 2 * r;
+            double bottom = width - 2 * r;
+            double corner = PI / 2 * r;
+            // lengths of the sections: top right half, NE corner, right side, SE corner, bottom,
+            // SW corner, left side, NW corner, top left half
+            double[] sections = {topHalf, corner, side, corner, bottom, corner, side, corner, topHalf};
+            double total = 0;
+            for (double section : sections) {
+                total += section;
+            }
+            perimeter = total;
+
+            int samples = (int) ceil(perimeter) + 1;
+            x = new float[samples];
+            y = new float[samples];
+            normalX = new float[samples];
+            normalY = new float[samples];
+            for (int i = 0; i < samples; i++) {
+                double s = Math.min(i, perimeter);
+                int section = 0;
+                while (section < sections.length - 1 && s > sections[section]) {
+                    s -= sections[section];
+                    section++;
+                }
+                switch (section) {
+                    case 0 -> set(i, width / 2.0 + s, 0, 0, 1);
+                    case 1 -> setCorner(i, width - r, r, PI / 2 - s / Math.max(r, 1e-9));
+                    case 2 -> set(i, width, r + s, -1, 0);
+                    case 3 -> setCorner(i, width - r, height - r, -s / Math.max(r, 1e-9));
+                    case 4 -> set(i, width - r - s, height, 0, -1);
+                    case 5 -> setCorner(i, r, height - r, -PI / 2 - s / Math.max(r, 1e-9));
+                    case 6 -> set(i, 0, height - r - s, 1, 0);
+                    case 7 -> setCorner(i, r, r, -PI - s / Math.max(r, 1e-9));
+                    default -> set(i, r + s, 0, 0, 1);
+                }
+            }
         }
 
-        width = component.getWidth();
-        height = component.getHeight();
-        
-		perimeter = 2*width + 2*height - 8* cornerRadius + (int)(2*PI* cornerRadius);
+        private void set(int i, double px, double py, double nx, double ny) {
+            x[i] = (float) px;
+            y[i] = (float) py;
+            normalX[i] = (float) nx;
+            normalY[i] = (float) ny;
+        }
 
-		topHalf = width / 2 - cornerRadius;
-		bottom = width - 2* cornerRadius;
-		side = height - 2* cornerRadius;
-		cornerLength = PI / 2 * cornerRadius;
+        /**
+         * @param angle angle from the corner's center to the point, counterclockwise from east
+         *              (y pointing up)
+         */
+        private void setCorner(int i, double centerX, double centerY, double angle) {
+            double cos = cos(angle);
+            double sin = sin(angle);
+            set(i, centerX + cornerRadius * cos, centerY - cornerRadius * sin, -cos, sin);
+        }
 
-		sectionLengths[0] = topHalf;
-		sectionLengths[1] = sectionLengths[0] + (int)cornerLength;
-		sectionLengths[2] = sectionLengths[1] + side;
-		sectionLengths[3] = sectionLengths[0] + side + (int)(2 * cornerLength);
-		sectionLengths[4] = sectionLengths[3] + bottom;
-		sectionLengths[5] = sectionLengths[0] + side + bottom + (int)(3 * cornerLength);
-		sectionLengths[6] = sectionLengths[5] + side;
-		sectionLengths[7] = sectionLengths[0] + side + side + bottom + (int)(4 * cornerLength);
-		sectionLengths[8] = perimeter; // do I need this one?
+        /**
+         * @return the corner radius, limited to what fits in the layer
+         */
+        private static int clampRadius(int width, int height, int cornerRadius) {
+            return Math.max(0, Math.min(cornerRadius, Math.min(width, height) / 2));
+        }
 
-		clipAll = new Rectangle(0, 0, width, height);
-	}
+        boolean matches(int width, int height, int cornerRadius) {
+            return this.width == width && this.height == height
+                    && this.cornerRadius == clampRadius(width, height, cornerRadius);
+        }
 
-    /**
-     * Draws the current track progress into the progress bar.
-     * Track progress (currentFilledLength, in pixels) is set prior to invoking this method.
-     *
-     * @param g2 graphics object to draw progress bar into
-     */
-    private void drawTrackProgress(Graphics g2) {
-		double filledLength = currentFilledLength;
+        float pointX(double s, int inset) {
+            int i = (int) s;
+            float t = (float) (s - i);
+            int j = Math.min(i + 1, x.length - 1);
+            return x[i] + (x[j] - x[i]) * t + (normalX[i] + (normalX[j] - normalX[i]) * t) * inset;
+        }
 
-        Graphics2D g = (Graphics2D) g2;
-        g.setRenderingHints(RENDERING_HINTS);
-        g.setColor(progressColor);
+        float pointY(double s, int inset) {
+            int i = (int) s;
+            float t = (float) (s - i);
+            int j = Math.min(i + 1, y.length - 1);
+            return y[i] + (y[j] - y[i]) * t + (normalY[i] + (normalY[j] - normalY[i]) * t) * inset;
+        }
 
-        // find out which section we're currently in by looping
-        int i = 0;
-        // find out if we drew any corners (and will need compositing)
-		for (; i < sectionLengths.length && sectionLengths[i] < filledLength; i++) {
-            // ensure that each previous section is fully filled in (to prevent gaps)
-			fillSection(g, i);
-		}
+        /**
+         * Appends the part of a ring between two distances along the path: along the outer edge,
+         * then back along the inner edge.
+         */
+        void appendSegment(Path2D.Float path, double from, double to, int borderSize) {
+            path.moveTo(pointX(from, 0), pointY(from, 0));
+            for (int i = (int) from + 1; i < to; i++) {
+                path.lineTo(x[i], y[i]);
+            }
+            path.lineTo(pointX(to, 0), pointY(to, 0));
+            path.lineTo(pointX(to, borderSize), pointY(to, borderSize));
+            for (int i = (int) ceil(to) - 1; i > from; i--) {
+                path.lineTo(x[i] + normalX[i] * borderSize, y[i] + normalY[i] * borderSize);
+            }
+            path.lineTo(pointX(from, borderSize), pointY(from, borderSize));
+            path.closePath();
+        }
 
-        log.trace("Drawing Progress [{}]: {}", i, filledLength);
-        if (i > 0) {
-            // change filledLength from the total # of pixels filled into the number
-            // of pixels filled of the current section
-            filledLength -= sectionLengths[i-1];
+        /**
+         * Sets {@code bounds} to the area covered by the part of the path between two distances,
+         * for a ring of the given width.
+         */
+        void getBounds(double from, double to, int borderSize, Rectangle bounds) {
+            int first = (int) from;
+            int last = Math.min((int) ceil(to), x.length - 1);
+            float minX = Float.MAX_VALUE;
+            float minY = Float.MAX_VALUE;
+            float maxX = -Float.MAX_VALUE;
+            float maxY = -Float.MAX_VALUE;
+            for (int i = first; i <= last; i++) {
+                float innerX = x[i] + normalX[i] * borderSize;
+                float innerY = y[i] + normalY[i] * borderSize;
+                minX = min(minX, min(x[i], innerX));
+                maxX = max(maxX, max(x[i], innerX));
+                minY = min(minY, min(y[i], innerY));
+                maxY = max(maxY, max(y[i], innerY));
+            }
+            bounds.setBounds((int) floor(minX) - DIRTY_MARGIN, (int) floor(minY) - DIRTY_MARGIN,
+                    (int) ceil(maxX - minX) + 2 * DIRTY_MARGIN + 1, (int) ceil(maxY - minY) + 2 * DIRTY_MARGIN + 1);
         }
-        double degrees = filledLength / cornerLength * -90;
-        AffineTransform originalTransform = g.getTransform();
 
-        switch (i) {
-		case 8:
-			g.fill(new Rectangle2D.Double(cornerRadius, 0, filledLength, borderSize));
-			break;
-		case 7:
-            g.transform(createCornerTransform(270, cornerRadius, cornerRadius, cornerRadius, 0));
-            g.drawImage(getPartialCorner(degrees), 0, 0, null);
-            break;
-		case 6:
-			// starts at bottom, so fillRect parameters need to be switched around
-			g.fill(new Rectangle2D.Double(0, cornerRadius + side - filledLength, borderSize, filledLength));
-			break;
-		case 5:
-            g.transform(createCornerTransform(180, cornerRadius, height - cornerRadius, cornerRadius, height - cornerDiameter));
-            g.drawImage(getPartialCorner(degrees), 0, 0, null);
-			break;
-		case 4:
-			// starts at right, so fillRect parameters need to be switched around
-			g.fill(new Rectangle2D.Double(cornerRadius + bottom - filledLength,
-                    height - borderSize, filledLength, borderSize));
-			break;
-		case 3:
-            g.transform(createCornerTransform(90, width - cornerRadius, height - cornerRadius, width - cornerRadius, height - cornerDiameter));
-            g.drawImage(getPartialCorner(degrees), 0, 0, null);
-			break;
-		case 2:
-			g.fill(new Rectangle2D.Double(width - borderSize, cornerRadius, borderSize, filledLength));
-			break;
-		case 1:
-            g.drawImage(getPartialCorner(degrees), width - cornerRadius, 0, null);
-			break;
-		case 0:
-			g.fill(new Rectangle2D.Double(width / 2, 0, filledLength, borderSize));
-			break;
-		}
-        g.setTransform(originalTransform);
+        /**
+         * @return true if sample i, or the ring of the given width at sample i, is within the clip
+         * (with a margin)
+         */
+        boolean isInClip(int i, int borderSize, Rectangle clip) {
+            float innerX = x[i] + normalX[i] * borderSize;
+            float innerY = y[i] + normalY[i] * borderSize;
+            return max(x[i], innerX) >= clip.x - DIRTY_MARGIN
+                    && min(x[i], innerX) <= clip.x + clip.width + DIRTY_MARGIN
+                    && max(y[i], innerY) >= clip.y - DIRTY_MARGIN
+                    && min(y[i], innerY) <= clip.y + clip.height + DIRTY_MARGIN;
+        }
     }
 
     /**
-     * Completely fill in a progress bar section.
-     * Used when jumping to a new position.
-     * Also used after a section has been completed to ensure that there are no gaps.
+     * {@inheritDoc}
      *
-     * @param g graphics object to draw into
-     * @param section section to fill
-     * @see #getSection(double)
+     * The JComponent passed in is actually the JLayer wrapping the component.
      */
-    private void fillSection(Graphics2D g, int section) {
-        AffineTransform originalTransform = g.getTransform();
-        switch (section) {
-            case 7:
-                g.transform(AffineTransform.getRotateInstance(Math.toRadians(270), cornerRadius, cornerRadius));
-                g.drawImage(corner, cornerRadius, 0, null);
-                break;
-            case 6:
-                g.fill(new Rectangle2D.Double(0, cornerRadius, borderSize, side));
-                break;
-            case 5:
-                g.transform(AffineTransform.getRotateInstance(Math.toRadians(180), cornerRadius, height - cornerRadius));
-                g.drawImage(corner, cornerRadius, height - cornerDiameter, null);
-                break;
-            case 4:
-                g.fill(new Rectangle2D.Double(cornerRadius, height - borderSize, bottom, borderSize));
-                break;
-            case 3:
-                g.transform(AffineTransform.getRotateInstance(Math.toRadians(90), width - cornerRadius, height - cornerRadius));
-                g.drawImage(corner, width - cornerRadius, height - cornerDiameter, null);
-                break;
-            case 2:
-                g.fill(new Rectangle2D.Double(width - borderSize, cornerRadius, borderSize, side));
-                break;
-            case 1:
-                g.drawImage(corner, width - cornerRadius, 0, null);
-                break;
-            case 0:
-                g.fill(new Rectangle2D.Double(width / 2, 0, topHalf, borderSize));
-                break;
+    @Override
+    public void paint(Graphics g, JComponent component) {
+        super.paint(g, component);
+
+        Geometry geometry = this.geometry;
+        if (geometry == null || !geometry.matches(component.getWidth(), component.getHeight(), artPanel.getCornerRadius())) {
+            log.debug("layer size: {}x{}", component.getWidth(), component.getHeight());
+            geometry = new Geometry(component.getWidth(), component.getHeight(), artPanel.getCornerRadius());
+            this.geometry = geometry;
         }
-        g.setTransform(originalTransform);
-    }
 
-    /**
-     * Clips the corner image to the given number of degrees (<= 90).
-     * @param degrees # of degrees to show (max = 90)
-     * @return image to display
-     */
-    private Image getPartialCorner(double degrees) {
-        Graphics2D g = (Graphics2D) partial.getGraphics();
-        g.setBackground(new Color(0, 0, 0, 0));
-        g.clearRect(0, 0, cornerRadius, cornerRadius);
-        g.setRenderingHints(RENDERING_HINTS);
-        final int buffer = 5; // need to draw this arc bigger than the arc in corner so nothing gets clipped
-        g.fill(new Arc2D.Double(-cornerRadius - buffer, -buffer,
-                cornerDiameter + buffer * 2, cornerDiameter + buffer * 2, 90, degrees, Arc2D.PIE));
-        g.setComposite(AlphaComposite.SrcIn);
-        g.drawImage(corner, 0, 0, null);
-        g.dispose();
-        return partial;
+        double filledLength = progress * geometry.perimeter;
+        if (filledLength <= 0) {
+            return;
+        }
+
+        // only the part of the path that is inside the clip needs to be filled
+        // (getClipBounds leaves the rectangle alone if there is no clip)
+        clip.setBounds(0, 0, geometry.width, geometry.height);
+        g.getClipBounds(clip);
+        int last = Math.min((int) ceil(filledLength), geometry.x.length - 1);
+        int first = 0;
+        while (first <= last && !geometry.isInClip(first, maxBorderSize, clip)) {
+            first++;
+        }
+        if (first > last) {
+            return;
+        }
+        int end = last;
+        while (end > first && !geometry.isInClip(end, maxBorderSize, clip)) {
+            end--;
+        }
+        double from = Math.max(0, first - 1);
+        double to = Math.min(filledLength, end + 1);
+
+        Graphics2D g2 = (Graphics2D) g;
+        g2.setRenderingHint(KEY_ANTIALIASING, VALUE_ANTIALIAS_ON);
+        for (Ring ring : rings) {
+            path.reset();
+            geometry.appendSegment(path, from, to, ring.borderSize());
+            g2.setColor(ring.color());
+            g2.fill(path);
+        }
+        log.trace("painted progress from {} to {} of {}", from, to, geometry.perimeter);
     }
 
     /**
-     * Create an affine transform that will position the corner in the correct location.
+     * Set the layer's progress bar to the specified percent complete.  Only the part of the
+     * progress bar that changed is repainted, whether it grew or shrank.
      *
-     * @param rotateAngle angle of rotation
-     * @param anchorX x anchor of rotation
-     * @param anchorY y anchor of rotation
-     * @param tx x translation
-     * @param ty y translation
-     * @return affine transform that will rotate then translate
+     * @param percent percent complete
      */
-    private AffineTransform createCornerTransform(int rotateAngle, int anchorX, int anchorY, int tx, int ty) {
-        AffineTransform rotate = AffineTransform.getRotateInstance(Math.toRadians(rotateAngle), anchorX, anchorY);
-        AffineTransform translate = AffineTransform.getTranslateInstance(tx, ty);
-        rotate.concatenate(translate);
-        return rotate;
-    }
-
-    /**
-	 * Set the layer's progress bar to the specified percent complete.
-	 *
-	 * @param percent percent complete
-	 */
-	public void setTrackProgress(double percent) {
-		double filledLength = percent * perimeter;
-        if (filledLength == currentFilledLength)
+    public void setTrackProgress(double percent) {
+        double previous = progress;
+        if (percent == previous) {
             return;
-
+        }
         log.trace("track progress: {}", percent);
+        progress = percent;
 
-		if (currentFilledLength > filledLength) {
-			dirtySong = true;
-
-            firePropertyChange(DIRTY_SONG, false, true);
-		}
-		if (currentFilledLength < filledLength) {
-            int lastSide = getSection(currentFilledLength);
-            int currentSide = getSection(filledLength);
-
-            if (currentSide > (lastSide + 1)) {
-                // this update was more than a single side, probably the track position jumped:
-                // redraw the whole thing
-                firePropertyChange(DIRTY_SONG, false, true);
-            } else {
-                // notify that we need a repaint (normal update)
-                firePropertyChange(DIRTY, false, true);
-            }
-		}
-
-        lastFilledLength = currentFilledLength;
-		currentFilledLength = filledLength;
-	}
+        Geometry geometry = this.geometry;
+        if (geometry == null) {
+            // not painted yet
+            firePropertyChange(DIRTY_ALL, false, true);
+            return;
+        }
+        geometry.getBounds(Math.min(previous, percent) * geometry.perimeter,
+                Math.min(Math.max(previous, percent), 1) * geometry.perimeter, maxBorderSize, dirty);
+        firePropertyChange(DIRTY, false, true);
+    }
 
     /**
      * Handles property changes on this LayerUI.  The property changes handled here are generated by
-     * {@link #invalidate()} or {@link #setTrackProgress(double)}.
+     * {@link #setTrackProgress(double)}, on the same thread.
      *
      * @param evt the PropertyChangeEvent generated by this {@code LayerUI}
      * @param l the {@code JLayer} this LayerUI is set to
@@ -338,112 +326,9 @@ public class ArtPanelProgressLayerUI extends LayerUI<JComponent> {
     @Override
     public void applyPropertyChange(PropertyChangeEvent evt, JLayer<? extends JComponent> l) {
         if (DIRTY.equals(evt.getPropertyName())) {
-            l.repaint(getClip());
-        } else if (DIRTY_SONG.equals(evt.getPropertyName())) {
+            l.repaint(dirty.x, dirty.y, dirty.width, dirty.height);
+        } else if (DIRTY_ALL.equals(evt.getPropertyName())) {
             l.repaint();
         }
     }
-
-    /**
-     * Get the appropriate clip region for a track update in the current song.
-     * The clip region depends upon the extent of the change.  At the minimum, it must
-     * encompass from the first changed pixel to the last changed pixel.  Larger clip
-     * areas will work fine, but repainting will be more expensive.
-     *
-     * @return clip region for current update
-     */
-    private Rectangle getClip() {
-        int i = getSection(currentFilledLength);
-
-        if (i < 0 || i > 8) {
-            log.warn("bad progress bar section: {} due to currentFilledLength = {} / {} pixels",
-                    i, currentFilledLength, perimeter);
-            // if we don't understand the input, redraw everything
-            return clipAll;
-        }
-
-        int sectionCurrentFill = (int) Math.ceil(currentFilledLength);
-        int sectionLastFill = (int) Math.floor(lastFilledLength);
-        if (i > 0) {
-            // change filledLength from the total # of pixels filled into the number
-            // of pixels filled of the current section
-            sectionCurrentFill -= sectionLengths[i-1];
-            sectionLastFill -= sectionLengths[i-1];
-        }
-
-        if (sectionLastFill < 0) {
-            // TODO need to handle special case for when currentFilledLength and lastFilledLength aren't on the same section of the border
-        }
-
-        // +2 on the end for 1 pixel overage on each side
-        int changeSize = sectionCurrentFill - sectionLastFill + 2;
-        switch (i) {
-        case 0:
-            return new Rectangle(width / 2 + sectionLastFill - 1, 0, changeSize, borderSize);
-        case 8:
-            return new Rectangle(cornerRadius + sectionLastFill - 1, 0, changeSize, borderSize);
-        case 2:
-            return new Rectangle(width - borderSize, cornerRadius + sectionLastFill - 1, borderSize, changeSize);
-        case 4:
-            return new Rectangle(width - cornerRadius - sectionCurrentFill - 1, height - borderSize, changeSize, borderSize);
-        case 6:
-            return new Rectangle(0, height - cornerRadius - sectionCurrentFill - 1, borderSize, changeSize);
-        }
-
-        // calculate small clip bounds for corners
-        double PI_2 = Math.PI / 2;
-        double lastFillRadians = (1 - (sectionLastFill / cornerLength)) * PI_2;
-        double currentFillRadians = (1 - (sectionCurrentFill / cornerLength)) * PI_2;
-//        log.trace("{} -> {} (of {})", sectionLastFill, sectionCurrentFill, cornerLength);
-
-        double lastXOffset = cornerRadius * cos(lastFillRadians);
-        double lastYOffset = cornerRadius * sin(lastFillRadians);
-        double currentXOffset = cornerRadius * cos(currentFillRadians);
-        double currentYOffset = cornerRadius * sin(currentFillRadians);
-
-        int buffer = borderSize + 2;
-        int minX = (int) min(lastXOffset, currentXOffset);
-        int maxX = (int) max(lastXOffset, currentXOffset);
-        int minY = (int) Math.ceil(min(lastYOffset, currentYOffset));
-        int maxY = (int) Math.ceil(max(lastYOffset, currentYOffset));
-        int clipWidth = (int) Math.ceil(maxX - minX) + buffer * 2;
-        int clipHeight = (int) Math.ceil(maxY - minY) + buffer * 2;
-
-        switch (i) {
-        case 7:
-            return new Rectangle(cornerRadius - minY - buffer, cornerRadius - minX - buffer, clipWidth, clipHeight);
-        case 5:
-            return new Rectangle(cornerRadius - minX - buffer, height - cornerRadius + minY - buffer, clipWidth, clipHeight);
-        case 3:
-            return new Rectangle(width - cornerRadius + minY - buffer, height - cornerRadius + minX - buffer, clipWidth, clipHeight);
-        case 1:
-            return new Rectangle(width - cornerRadius + minX - buffer, cornerRadius - minY - buffer, clipWidth, clipHeight);
-        }
-
-        // if we don't understand the input, redraw everything
-        return clipAll;
-	}
-
-    /**
-     * Finds the section of the progress bar that the indicated length (in pixels) from the start is located in.
-     * <ul>
-     *     <li>0: upper bar, right half</li>
-     *     <li>1: upper right corner</li>
-     *     <li>2: right bar</li>
-     *     <li>3: lower right corner</li>
-     *     <li>4: lower bar</li>
-     *     <li>5: lower left corner</li>
-     *     <li>6: left bar</li>
-     *     <li>7: upper left corner</li>
-     *     <li>8: upper bar, left half</li>
-     * </ul>
-     *
-     * @param fillLength length (in pixels) of progress bar location
-     * @return section number of progress bar location
-     */
-    private int getSection(double fillLength) {
-        int i = 0;
-        for (; i < sectionLengths.length && sectionLengths[i] < fillLength; i++);
-        return i;
-    }
 }
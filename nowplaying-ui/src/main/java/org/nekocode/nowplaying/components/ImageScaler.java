@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2024. Dan Clark
+ */
+package org.nekocode.nowplaying.components;
+
+import java.awt.*;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.stream.IntStream;
+
+/**
+ * Fast, good quality image downscaling, to use instead of {@link Image#getScaledInstance}.
+ * <p>
+ * The image is halved repeatedly, each step averaging 2x2 blocks of premultiplied pixels (so
+ * translucent edges don't pick up dark fringes), until it is less than twice the target size; a
+ * single bilinear step then takes it to the exact size.  Every pixel of the source contributes to
+ * the result, as with area averaging, but at a fraction of the cost.  The halving steps work
+ * directly on {@code int[]} pixels and are split across rows in parallel for large images.
+ * <p>
+ * Results are always {@link BufferedImage#TYPE_INT_ARGB_PRE}, which Java2D draws without
+ * conversion.  ImageScalerBenchmark, in the test sources, compares it with {@code getScaledInstance}.
+ *
+ * @author dan.clark@nekocode.org
+ */
+public final class ImageScaler {
+    /**
+     * images (after halving) with at least this many pixels are halved in parallel
+     */
+    private static final int PARALLEL_THRESHOLD = 512 * 512;
+    /**
+     * the color model of {@link BufferedImage#TYPE_INT_ARGB_PRE}
+     */
+    private static final DirectColorModel ARGB_PRE = new DirectColorModel(
+            ColorSpace.getInstance(ColorSpace.CS_sRGB), 32,
+            0x00ff0000, 0x0000ff00, 0x000000ff, 0xff000000, true, DataBuffer.TYPE_INT);
+
+    private ImageScaler() {
+    }
+
+    /**
+     * Scales an image down, keeping its aspect ratio, so that it fits in a square.  Images that
+     * already fit aren't enlarged, but are still returned as {@code TYPE_INT_ARGB_PRE}.
+     *
+     * @param image a fully loaded image
+     * @param size  maximum width and height of the result
+     */
+    public static BufferedImage scaleToFit(Image image, int size) {
+        int width = image.getWidth(null);
+        int height = image.getHeight(null);
+        if (width <= size && height <= size) {
+            return scale(image, width, height);
+        }
+        if (width >= height) {
+            return scale(image, size, Math.max(1, (int) Math.round((double) height * size / width)));
+        } else {
+            return scale(image, Math.max(1, (int) Math.round((double) width * size / height)), size);
+        }
+    }
+
+    /**
+     * Scales an image to the given size.  Meant for shrinking; enlarging works, but is plain
+     * bilinear interpolation.
+     *
+     * @param image a fully loaded image
+     */
+    public static BufferedImage scale(Image image, int targetWidth, int targetHeight) {
+        if (targetWidth <= 0 || targetHeight <= 0) {
+            throw new IllegalArgumentException("invalid size " + targetWidth + "x" + targetHeight);
+        }
+        int width = image.getWidth(null);
+        int height = image.getHeight(null);
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("image is not loaded");
+        }
+
+        if (width >= 2 * targetWidth && height >= 2 * targetHeight) {
+            int[] pixels = toPixels(image, width, height);
+            while (width >= 2 * targetWidth && height >= 2 * targetHeight) {
+                pixels = halve(pixels, width, height);
+                width /= 2;
+                height /= 2;
+            }
+            image = wrap(pixels, width, height);
+        }
+
+        BufferedImage result = new BufferedImage(targetWidth, targetHeight, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g = result.createGraphics();
+        g.setComposite(AlphaComposite.Src);
+        if (width != targetWidth || height != targetHeight) {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        }
+        g.drawImage(image, 0, 0, targetWidth, targetHeight, null);
+        g.dispose();
+        return result;
+    }
+
+    /**
+     * @return a copy of the image's pixels, as premultiplied ARGB; the image's own pixels aren't
+     * touched directly, since that would stop Java2D from accelerating it
+     */
+    private static int[] toPixels(Image image, int width, int height) {
+        BufferedImage converted = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g = converted.createGraphics();
+        g.setComposite(AlphaComposite.Src);
+        g.drawImage(image, 0, 0, null);
+        g.dispose();
+        return ((DataBufferInt) converted.getRaster().getDataBuffer()).getData();
+    }
+
+    /**
+     * Halves an image in each dimension by averaging each 2x2 block.  An odd last row or column
+     * is dropped, which shifts the image by less than a pixel of the result.
+     */
+    private static int[] halve(int[] source, int width, int height) {
+        int halfWidth = width / 2;
+        int halfHeight = height / 2;
+        int[] result = new int[halfWidth * halfHeight];
+        IntStream rows = IntStream.range(0, halfHeight);
+        if (halfWidth * halfHeight >= PARALLEL_THRESHOLD) {
+            rows = rows.parallel();
+        }
+        rows.forEach(y -> {
+            int top = 2 * y * width;
+            int bottom = top + width;
+            int out = y * halfWidth;
+            for (int x = 0; x < halfWidth; x++) {
+                int p0 = source[top + 2 * x];
+                int p1 = source[top + 2 * x + 1];
+                int p2 = source[bottom + 2 * x];
+                int p3 = source[bottom + 2 * x + 1];
+                // each channel of four pixels sums to at most 10 bits, so two channels at a time fit
+                // in an int without overlapping
+                int ag = ((p0 >>> 8) & 0xff00ff) + ((p1 >>> 8) & 0xff00ff)
+                        + ((p2 >>> 8) & 0xff00ff) + ((p3 >>> 8) & 0xff00ff) + 0x20002;
+                int rb = (p0 & 0xff00ff) + (p1 & 0xff00ff)
+                        + (p2 & 0xff00ff) + (p3 & 0xff00ff) + 0x20002;
+                result[out + x] = ((ag << 6) & 0xff00ff00) | ((rb >>> 2) & 0xff00ff);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Wraps premultiplied ARGB pixels in an image, without copying them.
+     */
+    private static BufferedImage wrap(int[] pixels, int width, int height) {
+        SinglePixelPackedSampleModel sampleModel = new SinglePixelPackedSampleModel(
+                DataBuffer.TYPE_INT, width, height, ARGB_PRE.getMasks());
+        WritableRaster raster = Raster.createWritableRaster(sampleModel, new DataBufferInt(pixels, pixels.length), null);
+        return new BufferedImage(ARGB_PRE, raster, true, null);
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2024. Dan Clark
+ */
+package org.nekocode.nowplaying.components;
+
+import javax.imageio.ImageIO;
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.function.Supplier;
+
+/**
+ * Compares {@link ImageScaler} with {@link Image#getScaledInstance} (the way artwork used to be
+ * scaled) and with a single bilinear {@code drawImage}, for speed and quality.
+ * <p>
+ * Quality is the PSNR (in dB, higher is better) of each result against an area averaged
+ * reference, which is what {@code SCALE_SMOOTH} computes, slowly.  {@code getScaledInstance}
+ * returns an image that is only scaled when drawn, so its timing includes drawing it once.
+ * <p>
+ * Arguments (all optional, in order): an image file to scale (by default a synthetic 3000x3000
+ * cover with fine detail that aliases badly when scaled naively), target size, iterations.
+ */
+public class ImageScalerBenchmark {
+    public static void main(String[] args) throws IOException {
+        BufferedImage source = args.length > 0 ? ImageIO.read(new File(args[0])) : syntheticCover(3000);
+        int size = args.length > 1 ? Integer.parseInt(args[1]) : 300;
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        System.out.printf("scaling %dx%d to fit %dx%d, %d iterations%n",
+                source.getWidth(), source.getHeight(), size, size, iterations);
+
+        BufferedImage reference = time("getScaledInstance(SCALE_SMOOTH)", iterations, null,
+                () -> scaledInstance(source, size));
+        time("drawImage, bilinear", iterations, reference, () -> bilinear(source, size));
+        time("ImageScaler.scaleToFit", iterations, reference, () -> ImageScaler.scaleToFit(source, size));
+    }
+
+    private static BufferedImage time(String name, int iterations, BufferedImage reference, Supplier<BufferedImage> scaler) {
+        // warm up
+        BufferedImage result = scaler.get();
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            result = scaler.get();
+        }
+        double ms = (System.nanoTime() - start) / 1e6 / iterations;
+        String quality = reference == null ? "reference" : String.format("PSNR %.1f dB", psnr(reference, result));
+        System.out.printf("%-34s %9.2f ms  %s%n", name, ms, quality);
+        return result;
+    }
+
+    private static BufferedImage scaledInstance(BufferedImage source, int size) {
+        Image scaled = new ImageIcon(source.getScaledInstance(
+                source.getWidth() >= source.getHeight() ? size : -1,
+                source.getHeight() >= source.getWidth() ? size : -1,
+                Image.SCALE_SMOOTH)).getImage();
+        return draw(scaled, scaled.getWidth(null), scaled.getHeight(null), null);
+    }
+
+    private static BufferedImage bilinear(BufferedImage source, int size) {
+        double scale = (double) size / Math.max(source.getWidth(), source.getHeight());
+        return draw(source, (int) Math.round(source.getWidth() * scale), (int) Math.round(source.getHeight() * scale),
+                RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+    }
+
+    private static BufferedImage draw(Image image, int width, int height, Object interpolation) {
+        BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g = result.createGraphics();
+        if (interpolation != null) {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, interpolation);
+        }
+        g.drawImage(image, 0, 0, width, height, null);
+        g.dispose();
+        return result;
+    }
+
+    /**
+     * @return peak signal to noise ratio of {@code image} against {@code reference}, over RGB
+     */
+    private static double psnr(BufferedImage reference, BufferedImage image) {
+        int width = Math.min(reference.getWidth(), image.getWidth());
+        int height = Math.min(reference.getHeight(), image.getHeight());
+        double squaredError = 0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int a = reference.getRGB(x, y);
+                int b = image.getRGB(x, y);
+                for (int shift = 0; shift <= 16; shift += 8) {
+                    int difference = ((a >> shift) & 0xff) - ((b >> shift) & 0xff);
+                    squaredError += difference * difference;
+                }
+            }
+        }
+        double meanSquaredError = squaredError / (3.0 * width * height);
+        return meanSquaredError == 0 ? Double.POSITIVE_INFINITY : 10 * Math.log10(255 * 255 / meanSquaredError);
+    }
+
+    /**
+     * @return a cover-like test image: smooth gradients, plus stripes and text too fine to survive
+     * scaling, which alias into moire unless every source pixel is averaged in
+     */
+    private static BufferedImage syntheticCover(int size) {
+        BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setPaint(new GradientPaint(0, 0, new Color(0x1d3557), size, size, new Color(0xe76f51)));
+        g.fillRect(0, 0, size, size);
+        g.setColor(Color.WHITE);
+        for (int x = 0; x < size / 2; x += 3) {
+            g.drawLine(x, 0, x, size / 2);
+        }
+        for (int r = 4; r < size / 2; r += 5) {
+            g.drawOval(size * 3 / 4 - r, size * 3 / 4 - r, 2 * r, 2 * r);
+        }
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g.setFont(new Font(Font.SERIF, Font.BOLD, size / 8));
+        g.drawString("Now Playing", size / 20, size - size / 6);
+        g.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 9));
+        for (int y = size / 2 + 10; y < size * 3 / 4; y += 10) {
+            g.drawString("the quick brown fox jumps over the lazy dog ".repeat(30), size / 2, y);
+        }
+        g.dispose();
+        return image;
+    }
+}
@@ -5,22 +5,20 @@
 package org.nekocode.nowplaying;
 
 import org.jetbrains.annotations.NotNull;
+import org.nekocode.nowplaying.events.TrackChangeDispatcher;
 import org.nekocode.nowplaying.events.TrackChangeEvent;
 import org.nekocode.nowplaying.events.TrackChangeListener;
 
-import java.util.HashSet;
-import java.util.Set;
-
 /**
  * Implements common functionality for MediaPlayers
  *
  * @author dan.clark@nekocode.org
  */
 public abstract class AbstractMediaPlayer implements MediaPlayer {
-	protected final Set<TrackChangeListener> trackChangeListeners;
+	protected final TrackChangeDispatcher trackChangeDispatcher;
 
 	public AbstractMediaPlayer() {
-		trackChangeListeners = new HashSet<>();
+		trackChangeDispatcher = new TrackChangeDispatcher();
 	}
 	
 	/**
@@ -31,16 +29,20 @@ public abstract class AbstractMediaPlayer implements MediaPlayer {
      * @param l
      */
 	public void addTrackChangeListener(@NotNull TrackChangeListener l) {
-		trackChangeListeners.add(l);
+		trackChangeDispatcher.addListener(l);
 	}
 
 	public void removeTrackChangeListener(@NotNull TrackChangeListener l) {
-		trackChangeListeners.remove(l);
+		trackChangeDispatcher.removeListener(l);
     }
 	
+	/**
+	 * Queues the event for every listener.  Listeners are called on their own threads, so this
+	 * returns without waiting for them.
+	 *
+	 * @see TrackChangeDispatcher
+	 */
 	protected void fireTrackChanged(@NotNull TrackChangeEvent e) {
-		for (TrackChangeListener listener : trackChangeListeners) {
-			listener.trackChanged(e);
-		}
+		trackChangeDispatcher.fire(e);
 	}
 }
@@ -7,6 +7,7 @@ package org.nekocode.nowplaying;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.nekocode.nowplaying.events.TrackChangeListener;
+import org.nekocode.nowplaying.objects.PlayerSnapshot;
 import org.nekocode.nowplaying.objects.Playlist;
 import org.nekocode.nowplaying.objects.Track;
 
@@ -92,6 +93,18 @@ public interface MediaPlayer {
 	@NotNull
 	PlayerState getPlayerState();
 
+	/**
+	 * Gets the current track, player state and track position together.  MediaPlayers that
+	 * can answer all three with a single query should override this; the default simply asks
+	 * for each one separately.
+	 *
+	 * @return current state of media player
+	 */
+	@NotNull
+	default PlayerSnapshot getSnapshot() {
+		return new PlayerSnapshot(getCurrentTrack(), getPlayerState(), getCurrentTrackPosition());
+	}
+
     /**
      * Finds tracks matching the specified input.
      *
@@ -100,6 +113,23 @@ public interface MediaPlayer {
 	@NotNull
     List<Track> findTracks(@Nullable String title, @Nullable String artist, @Nullable String album);
 
+    /**
+     * Finds one page of tracks matching the specified input.  Results are returned in a stable
+     * order, so consecutive pages can be requested by advancing the offset.
+     *
+     * @param offset number of matching tracks to skip
+     * @param limit maximum number of tracks to return
+     * @return list of tracks that match the search parameters
+     */
+	@NotNull
+	default List<Track> findTracks(@Nullable String title, @Nullable String artist, @Nullable String album,
+								   int offset, int limit) {
+		return findTracks(title, artist, album).stream()
+				.skip(offset)
+				.limit(limit)
+				.toList();
+	}
+
     /**
      * Finds tracks matching the specified input.
      *
@@ -107,4 +137,15 @@ public interface MediaPlayer {
      */
 	@NotNull
     List<String> findTrackIds(@Nullable String title, @Nullable String artist, @Nullable String album);
+
+	/**
+	 * Describes the health of the connection to the media player (call timings, errors, ...),
+	 * for display to the user.
+	 *
+	 * @return a plain text report, or null if this MediaPlayer doesn't keep one
+	 */
+	@Nullable
+	default String getDiagnostics() {
+		return null;
+	}
 }
@@ -13,6 +13,7 @@ import org.nekocode.nowplaying.events.TagChangeListener;
 import org.nekocode.nowplaying.events.TrackChangeEvent;
 import org.nekocode.nowplaying.events.TrackChangeEvent.ChangeType;
 import org.nekocode.nowplaying.internals.TrackMonitor;
+import org.nekocode.nowplaying.internals.TrackPrefetcher;
 import org.nekocode.nowplaying.objects.Track;
 import org.nekocode.nowplaying.resources.images.Icons;
 import org.nekocode.nowplaying.tags.TagModel;
@@ -40,11 +41,13 @@ public class NowPlayingController
 	private final TagModel tagModel;
 	private TrayIcon trayIcon;
 	private final TrackMonitor monitor;
+	private final TrackPrefetcher prefetcher;
     private boolean shutdown;
 
 	public NowPlayingController(MediaPlayer mediaPlayer,
 								TagModel tagModel,
 								TrackMonitor monitor,
+								TrackPrefetcher prefetcher,
 								NowPlayingView nowPlayingView,
 								TagView tagView,
 								ControlPanel controls
@@ -52,6 +55,7 @@ public class NowPlayingController
     	this.mediaPlayer = mediaPlayer;
 		this.tagModel = tagModel;
 		this.monitor = monitor;
+		this.prefetcher = prefetcher;
 		this.view = nowPlayingView;
 		this.tagView = tagView;
 		shutdown = false;
@@ -77,6 +81,7 @@ public class NowPlayingController
 	    // hook everything up
 		mediaPlayer.addTrackChangeListener(view::updateTrack);
         mediaPlayer.addTrackChangeListener(monitor);
+        mediaPlayer.addTrackChangeListener(prefetcher);
 
 		tagModel.addTagChangeListener(new TagChangeListener() {
 			@Override
@@ -130,7 +135,7 @@ public class NowPlayingController
 		view.updateTrack(trackChange);
 
 		// set up the mouse actions
-		MouseActions ma = new MouseActions(view);
+		MouseActions ma = new MouseActions(view, this::getDiagnostics);
 		view.addMouseListener(ma);
 		view.addMouseMotionListener(ma);
 
@@ -183,6 +188,17 @@ public class NowPlayingController
 		}
 	}
 
+	/**
+	 * @return the media player's diagnostics, followed by how well prefetching is working
+	 */
+	private String getDiagnostics() {
+		String playerDiagnostics = mediaPlayer.getDiagnostics();
+		return (playerDiagnostics == null
+				? "This media player does not keep connection statistics.\n"
+				: playerDiagnostics)
+				+ "\n" + prefetcher.report();
+	}
+
 	private void shutdown() {
         shutdown = true;
 
@@ -193,6 +209,13 @@ public class NowPlayingController
 				log.error("Exception during shutdown", e);
 			}
 
+		if (prefetcher != null)
+			try {
+				prefetcher.shutdown();
+			} catch (Exception e) {
+				log.error("Exception during shutdown", e);
+			}
+
 		if (tagModel != null)
 			try {
 				tagModel.shutdown();
@@ -26,7 +26,10 @@ import java.util.Queue;
 import java.util.*;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Main window of the application.
@@ -42,6 +45,16 @@ public class NowPlayingView extends NekoFrame {
             ChangeType.CURRENT_SONG_CHANGE,
             ChangeType.FILE_CHANGE,
             ChangeType.ART_CHANGE);
+    /**
+     * events that mean a different track is now current
+     */
+    private final static EnumSet<ChangeType> changesTrack = EnumSet.of(
+            ChangeType.CURRENT_SONG_CHANGE,
+            ChangeType.FILE_CHANGE);
+    /**
+     * how long to wait for the track to settle before loading artwork and updating the modes, in ms
+     */
+    private static final long TRACK_CHANGE_DEBOUNCE = 150;
 
     // frame elements
     private final int size;
@@ -61,10 +74,20 @@ public class NowPlayingView extends NekoFrame {
 
     // miscellaneous elements
     private final ExecutorService executor;
+    private final ScheduledExecutorService debouncer;
 
-    private Track track;
+    private volatile Track track;
+    /**
+     * incremented every time a different track becomes current; work started for an older
+     * generation is cancelled or its results thrown away
+     */
+    private final AtomicLong generation = new AtomicLong();
+    // work started for the current generation, guarded by generation
+    private Future<?> pendingLoad;
+    private ResizeUpdateTrack artworkUpdate;
+    private final List<Future<?>> modeUpdates = new ArrayList<>();
 
-    private final Collection<ArtPanelProgressLayerUI> progressLayers = new ArrayList<>();
+    private ArtPanelProgressLayerUI progressLayer;
 
     private JComponent content;
     /**
@@ -79,6 +102,7 @@ public class NowPlayingView extends NekoFrame {
         super("Now Playing...");
 
         executor = Executors.newCachedThreadPool(new NamedThreadFactory("NowPlayingView", false));
+        debouncer = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("NowPlayingViewDebounce", true));
 
         Properties properties = NowPlayingProperties.loadProperties();
 
@@ -168,16 +192,11 @@ public class NowPlayingView extends NekoFrame {
         panel = new ArtPanel(size, false, false);
         panel.setLayout(new BorderLayout());
 
-        JLayer<JComponent> panelLayer;
-        // add the underneath progressbar
-        ArtPanelProgressLayerUI progressUI = new ArtPanelProgressLayerUI(panel, 3, Color.white);
-        progressLayers.add(progressUI);
-        panelLayer = new JLayer<>(panel, progressUI);
-
-        // add another progressbar on top of that
-        progressUI = new ArtPanelProgressLayerUI(panel, 2, Color.black);
-        progressLayers.add(progressUI);
-        panelLayer = new JLayer<>(panelLayer, progressUI);
+        // a white progressbar, with a narrower black one on top of it
+        progressLayer = new ArtPanelProgressLayerUI(panel,
+                new ArtPanelProgressLayerUI.Ring(3, Color.white),
+                new ArtPanelProgressLayerUI.Ring(2, Color.black));
+        JLayer<JComponent> panelLayer = new JLayer<>(panel, progressLayer);
 
         content = panelLayer;
         mouseListenerTarget = panelLayer.getView();
@@ -211,36 +230,83 @@ public class NowPlayingView extends NekoFrame {
      * @param trackChange track change event
      */
     public void updateTrack(TrackChangeEvent trackChange) {
-        track = trackChange.getTrack();
+        Track newTrack = trackChange.getTrack();
         log.info("updateTrack: " + trackChange.getType());
 
-        if (track == null)
+        if (newTrack == null)
         {
             log.error("TrackChangeEvent received with null track (should not happen)");
             return;
         }
+        track = newTrack;
 
-        // update the text labels
+        // update the text labels right away, since they are cheap and show that skipping works
         Runnable updateInfo = () -> {
-            title.setText(track.getTitle());
-            artist.setText(track.getArtist());
-            album.setText(track.getAlbum());
-            grouping.setText(track.getGrouping());
+            title.setText(newTrack.getTitle());
+            artist.setText(newTrack.getArtist());
+            album.setText(newTrack.getAlbum());
+            grouping.setText(newTrack.getGrouping());
         };
         SwingUtilities.invokeLater(updateInfo);
 
-        // update all the mode controls
-        modeControls.forEach(npc -> executor.execute(() -> npc.updateTrack(trackChange)));
-
-        if (shouldUpdateArtwork.contains(trackChange.getType())) {
-            // update the artwork
-            ResizeUpdateTrack updateArtwork = new ResizeUpdateTrack();
-            updateArtwork.setFrame(this);
-            updateArtwork.setComponent(panel, size, size);
-            updateArtwork.execute(track);
+        if (changesTrack.contains(trackChange.getType())) {
+            // while the user is skipping through tracks, only the one they stop on gets loaded
+            synchronized (generation) {
+                long currentGeneration = generation.incrementAndGet();
+                cancelLoads();
+                pendingLoad = debouncer.schedule(() -> load(trackChange, currentGeneration),
+                        TRACK_CHANGE_DEBOUNCE, TimeUnit.MILLISECONDS);
+            }
+        } else {
+            load(trackChange, generation.get());
         }
     }
 
+    /**
+     * Updates the mode controls and the artwork for a track change, unless the track has changed again
+     * in the meantime.
+     */
+    private void load(TrackChangeEvent trackChange, long loadGeneration) {
+        synchronized (generation) {
+            if (loadGeneration != generation.get()) {
+                return;
+            }
+
+            // update all the mode controls
+            modeUpdates.removeIf(Future::isDone);
+            modeControls.forEach(npc -> modeUpdates.add(executor.submit(() -> npc.updateTrack(trackChange))));
+
+            if (shouldUpdateArtwork.contains(trackChange.getType())) {
+                // update the artwork
+                if (artworkUpdate != null) {
+                    artworkUpdate.cancelUpdate();
+                }
+                artworkUpdate = new ResizeUpdateTrack(() -> loadGeneration == generation.get());
+                artworkUpdate.setFrame(this);
+                artworkUpdate.setComponent(panel, size, size);
+                artworkUpdate.execute(trackChange.getTrack());
+            }
+        }
+    }
+
+    /**
+     * Cancels the work started for the previous track.  Mode control updates that are already running
+     * aren't interrupted (they may be in the middle of a database query), but each control ignores
+     * results for a track that is no longer current.
+     */
+    private void cancelLoads() {
+        if (pendingLoad != null) {
+            pendingLoad.cancel(false);
+            pendingLoad = null;
+        }
+        if (artworkUpdate != null) {
+            artworkUpdate.cancelUpdate();
+            artworkUpdate = null;
+        }
+        modeUpdates.forEach(update -> update.cancel(false));
+        modeUpdates.clear();
+    }
+
     /**
      * Add a component to the interior of the view, as opposed to the outside, which will result in
      * a drawer (in the current implementation).
@@ -306,6 +372,13 @@ public class NowPlayingView extends NekoFrame {
         return track;
     }
 
+    /**
+     * @return size of the album art (and the progress border around it), in pixels
+     */
+    public int getArtSize() {
+        return size;
+    }
+
     /**
      * Updates the displayed progress of the track.  Set it to the given
      * percentage (0-1).
@@ -313,9 +386,7 @@ public class NowPlayingView extends NekoFrame {
      * @param percent progress of track [0, 1]
      */
     public void updateTrackProgress(double percent) {
-        for (ArtPanelProgressLayerUI l : progressLayers) {
-            l.setTrackProgress(percent);
-        }
+        progressLayer.setTrackProgress(percent);
     }
 
     public void shutdown() {
@@ -330,6 +401,8 @@ public class NowPlayingView extends NekoFrame {
         properties.put(NowPlayingProperties.WINDOW_ANCHOR.name(), anchorProperty);
         properties.put(NowPlayingProperties.WINDOW_POSITION.name(), positionProperty);
 
+        debouncer.shutdownNow();
+
         // update all the mode controls
         modeControls.forEach(npc -> executor.execute(npc::shutdown));
         executor.shutdown();
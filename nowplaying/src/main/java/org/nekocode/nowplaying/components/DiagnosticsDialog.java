@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2024. Dan Clark
+ */
+
+package org.nekocode.nowplaying.components;
+
+import lombok.extern.log4j.Log4j2;
+
+import javax.swing.*;
+import java.awt.*;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.function.Supplier;
+
+/**
+ * Shows a diagnostics report (the media player's, see
+ * {@link org.nekocode.nowplaying.MediaPlayer#getDiagnostics()}), and lets the user refresh it or
+ * save it to a file.
+ *
+ * @author dan.clark@nekocode.org
+ */
+@Log4j2
+public class DiagnosticsDialog extends JDialog {
+	private final Supplier<String> diagnostics;
+	private final JTextArea report;
+
+	public DiagnosticsDialog(Window owner, Supplier<String> diagnostics) {
+		super(owner, "Connection statistics", ModalityType.MODELESS);
+		this.diagnostics = diagnostics;
+
+		report = new JTextArea(30, 120);
+		report.setEditable(false);
+		report.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+
+		JButton refresh = new JButton("Refresh");
+		refresh.addActionListener(e -> refresh());
+		JButton save = new JButton("Save...");
+		save.addActionListener(e -> save());
+		JButton close = new JButton("Close");
+		close.addActionListener(e -> dispose());
+
+		JPanel buttons = new JPanel(new FlowLayout(FlowLayout.TRAILING));
+		buttons.add(refresh);
+		buttons.add(save);
+		buttons.add(close);
+
+		getContentPane().add(new JScrollPane(report), BorderLayout.CENTER);
+		getContentPane().add(buttons, BorderLayout.PAGE_END);
+		setDefaultCloseOperation(DISPOSE_ON_CLOSE);
+		refresh();
+		pack();
+		setLocationRelativeTo(owner);
+	}
+
+	private void refresh() {
+		report.setText(diagnostics.get());
+		report.setCaretPosition(0);
+	}
+
+	private void save() {
+		JFileChooser chooser = new JFileChooser();
+		chooser.setSelectedFile(new File("nowplaying-diagnostics.txt"));
+		if (chooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
+			try {
+				Files.writeString(chooser.getSelectedFile().toPath(), report.getText(), StandardCharsets.UTF_8);
+			} catch (IOException e) {
+				log.error("Could not save diagnostics", e);
+				JOptionPane.showMessageDialog(this, "Could not save: " + e.getMessage(),
+						"Connection statistics", JOptionPane.ERROR_MESSAGE);
+			}
+		}
+	}
+}
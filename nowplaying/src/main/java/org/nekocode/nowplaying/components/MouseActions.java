@@ -12,6 +12,7 @@ import javax.swing.event.MouseInputAdapter;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.MouseEvent;
+import java.util.function.Supplier;
 
 import static java.lang.Math.*;
 import static java.lang.String.format;
@@ -22,10 +23,15 @@ public class MouseActions extends MouseInputAdapter {
     private Point lastPoint;
 
 	private final NekoFrame frame;
+	private final Supplier<String> diagnostics;
 	private final JPopupMenu menu;
 
-	public MouseActions(NekoFrame frame) {
+	/**
+	 * @param diagnostics produces the report shown by the "Connection statistics" menu item
+	 */
+	public MouseActions(NekoFrame frame, Supplier<String> diagnostics) {
 		this.frame = frame;
+		this.diagnostics = diagnostics;
 		this.menu = createPopupMenu();
 	}
 
@@ -77,6 +83,11 @@ public class MouseActions extends MouseInputAdapter {
 		});
 
 		m.add(dockmenu);
+		m.add(new AbstractAction("Connection statistics...") {
+			public void actionPerformed(ActionEvent e) {
+				showDiagnostics();
+			}
+		});
 
 		m.pack();
 	    return m;
@@ -194,13 +205,21 @@ public class MouseActions extends MouseInputAdapter {
 		dockSW.addActionListener(e -> dock(AnchorPosition.SOUTHWEST));
 		dockmenu.add(dockSW);
 
+		MenuItem diagnostics = new MenuItem("Connection statistics...");
+		diagnostics.addActionListener(e -> showDiagnostics());
+
 		m.add(dockmenu);
+		m.add(diagnostics);
 		m.add(hide);
 		m.add(close);
 
 	    return m;
 	}
 
+	private void showDiagnostics() {
+		new DiagnosticsDialog(frame, diagnostics).setVisible(true);
+	}
+
     private void dock(AnchorPosition anchorPosition)
     {
         frame.setAnchor(anchorPosition);
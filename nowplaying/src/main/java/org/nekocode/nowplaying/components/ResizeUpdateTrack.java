@@ -8,17 +8,37 @@ import lombok.extern.log4j.Log4j2;
 
 import javax.swing.*;
 import java.util.ArrayDeque;
+import java.util.Collection;
 import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
 
 /**
  * To be run when the track has been updating.  Resizes the window to maintain prettiness.
+ * <p>
+ * If the track changes again before the artwork arrives, the update can be cancelled, which also
+ * cancels the artwork request; artwork that arrives anyway is only shown if the track it was
+ * loaded for is still current.
  */
 @Log4j2
 public class ResizeUpdateTrack extends UpdateTrack {
+	private static final long ARTWORK_TIMEOUT_SECONDS = 20;
+
 	private JFrame view;
 	private int size;
 	private ArtPanel artworkPanel;
+	private final BooleanSupplier isCurrent;
+	private volatile CompletableFuture<Collection<ImageIcon>> artworkLoad;
+
+	/**
+	 * @param isCurrent checked on the event dispatch thread before showing the artwork; false
+	 *                  if the track has changed since this update started
+	 */
+	public ResizeUpdateTrack(BooleanSupplier isCurrent) {
+		this.isCurrent = isCurrent;
+	}
 
 	@Override
 	public void setComponent(ArtPanel panel, int height, int width)
@@ -42,12 +62,35 @@ public class ResizeUpdateTrack extends UpdateTrack {
 
 	@Override
 	protected ImageIcon doInBackground() throws Exception {
-		Deque<ImageIcon> artList = new ArrayDeque<>(newTrack.getArtwork(size));
+		artworkLoad = newTrack.getArtworkAsync(size);
+		if (isCancelled()) {
+			// cancelled before the request was made
+			artworkLoad.cancel(false);
+			return null;
+		}
+		// wait for the artwork to load, since this isn't the event dispatch thread
+		Deque<ImageIcon> artList = new ArrayDeque<>(
+				artworkLoad.get(ARTWORK_TIMEOUT_SECONDS, TimeUnit.SECONDS));
 		return artList.poll();
 	}
 
+	/**
+	 * Stops this update, and the artwork request it is waiting for.  Safe to call from any thread.
+	 */
+	public void cancelUpdate() {
+		cancel(true);
+		CompletableFuture<Collection<ImageIcon>> load = artworkLoad;
+		if (load != null) {
+			load.cancel(false);
+		}
+	}
+
 	@Override
 	protected void done() {
+		if (isCancelled() || !isCurrent.getAsBoolean()) {
+			log.debug("discarding artwork for {}, track has changed", newTrack.getTitle());
+			return;
+		}
 		ImageIcon artwork = null;
 		try {
 			artwork = get();
@@ -14,6 +14,7 @@ import org.nekocode.nowplaying.objects.Playlist;
 import org.nekocode.nowplaying.objects.Track;
 import org.nekocode.nowplaying.tags.TagModel;
 
+import javax.swing.*;
 import java.awt.*;
 import java.util.ArrayList;
 import java.util.List;
@@ -25,6 +26,12 @@ import java.util.List;
  */
 @Log4j2
 public class PlaylistPanel extends NowPlayingControl {
+    private static final int NEXT_TRACK_COUNT = 3;
+    /**
+     * playlists that can't say where the current track is are only searched if they are this short
+     */
+    private static final int MAX_SEARCHED_PLAYLIST_SIZE = 100;
+
     private final MediaPlayer mediaPlayer;
     private final NekoLabel next1Track;
     private final NekoLabel next2Track;
@@ -76,46 +83,49 @@ public class PlaylistPanel extends NowPlayingControl {
     public void updateNextTracks() {
         Playlist playlist = mediaPlayer.getCurrentPlaylist();
         if (playlist != null) {
-            // TODO check for null
-            Track currentTrack = mediaPlayer.getCurrentTrack();
-            List<Track> nextTracks = new ArrayList<>();
-
-            if (playlist.count() <= 100) {
-                log.warn("Skipping updateNextTracks because >100 tracks in current playlist");
-                List<Track> tracks = playlist.getTracks();
-                boolean foundCurrentTrack = false;
-                for (int i = 0; i < tracks.size() && nextTracks.size() < 3; i++) {
-                    Track track = tracks.get(i);
-                    if (!foundCurrentTrack) {
-                        foundCurrentTrack = currentTrack.equals(track);
-                    } else {
-                        nextTracks.add(track);
-                    }
-                }
-            }
-
+            List<Track> nextTracks = findNextTracks(playlist, NEXT_TRACK_COUNT);
             String empty = "";
+            SwingUtilities.invokeLater(() -> {
+                next1Track.setText(nextTracks.size() > 0 ? nextTracks.get(0).getTitle() : empty);
+                next2Track.setText(nextTracks.size() > 1 ? nextTracks.get(1).getTitle() : empty);
+                next3Track.setText(nextTracks.size() > 2 ? nextTracks.get(2).getTitle() : empty);
+            });
+        } else {
+            SwingUtilities.invokeLater(() -> next1Track.setText("playlist was empty"));
+        }
+    }
 
-            if (nextTracks.size() > 0) {
-                next1Track.setText(nextTracks.get(0).getTitle());
-            } else {
-                next1Track.setText(empty);
-            }
-
-            if (nextTracks.size() > 1) {
-                next2Track.setText(nextTracks.get(1).getTitle());
-            } else {
-                next2Track.setText(empty);
-            }
+    /**
+     * Finds the tracks after the current one.  If the playlist knows where the current track is,
+     * only those tracks are fetched; otherwise the playlist is searched for the current track, as
+     * long as it isn't too long to read in full.
+     */
+    private List<Track> findNextTracks(Playlist playlist, int count) {
+        int currentIndex = playlist.getCurrentIndex();
+        if (currentIndex >= 0) {
+            return playlist.getTracks(currentIndex + 1, count);
+        }
 
-            if (nextTracks.size() > 2) {
-                next3Track.setText(nextTracks.get(2).getTitle());
+        Track currentTrack = mediaPlayer.getCurrentTrack();
+        List<Track> nextTracks = new ArrayList<>();
+        if (currentTrack == null) {
+            return nextTracks;
+        }
+        if (playlist.count() > MAX_SEARCHED_PLAYLIST_SIZE) {
+            log.warn("Skipping updateNextTracks because >{} tracks in current playlist", MAX_SEARCHED_PLAYLIST_SIZE);
+            return nextTracks;
+        }
+        List<Track> tracks = playlist.getTracks();
+        boolean foundCurrentTrack = false;
+        for (int i = 0; i < tracks.size() && nextTracks.size() < count; i++) {
+            Track track = tracks.get(i);
+            if (!foundCurrentTrack) {
+                foundCurrentTrack = currentTrack.equals(track);
             } else {
-                next3Track.setText(empty);
+                nextTracks.add(track);
             }
-        } else {
-            next1Track.setText("playlist was empty");
         }
+        return nextTracks;
     }
 
 	@Override
@@ -16,6 +16,7 @@ import java.awt.*;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A Panel containing controls for manipulating tags.
@@ -28,6 +29,11 @@ public class TagPanel extends NowPlayingControl {
 
 	private final TagView tagView;
 	private final TagModel tagModel;
+	/**
+	 * incremented for each update, so tags that finish loading after a newer update started are
+	 * thrown away instead of replacing the newer track's tags
+	 */
+	private final AtomicLong generation = new AtomicLong();
 
 	public TagPanel(TagModel model, TagView tagView) {
 		this.tagView = tagView;
@@ -45,12 +51,15 @@ public class TagPanel extends NowPlayingControl {
 	@Override
 	public void updateTrack(@NotNull TrackChangeEvent trackChange) {
 		if (shouldUpdate.contains(trackChange.getType())) {
+			long updateGeneration = generation.incrementAndGet();
 			tagView.setLoadingTags();
             List<TagCloudEntry> tags = Collections.emptyList();
             try {
                 tags = tagModel.getTags(trackChange.getTrack(), true);
             } finally {
-                tagView.setTags(trackChange.getTrack(), tags);
+                if (updateGeneration == generation.get()) {
+                    tagView.setTags(trackChange.getTrack(), tags);
+                }
             }
         }
     }
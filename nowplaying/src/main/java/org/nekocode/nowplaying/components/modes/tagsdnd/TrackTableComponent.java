@@ -8,7 +8,6 @@ import lombok.extern.log4j.Log4j2;
 import org.divxdede.swing.busy.BusyModel;
 import org.divxdede.swing.busy.JBusyComponent;
 import org.divxdede.swing.busy.ui.BasicBusyLayerUI;
-import org.divxdede.swing.busy.ui.BusyLayerUI;
 import org.jaudiotagger.audio.AudioFile;
 import org.jaudiotagger.audio.AudioFileIO;
 import org.jaudiotagger.tag.FieldKey;
@@ -88,17 +87,15 @@ public class TrackTableComponent extends JPanel {
         highlightBorder = BorderFactory.createLineBorder(Color.blue, 2, false);
         setBorder(false);
 
-        BusyLayerUI busyLayerUI = new BasicBusyLayerUI(0, 0.85f, Color.WHITE);
-        JBusyComponent<JComponent> busyComponent = new JBusyComponent<>(scrollpane, busyLayerUI);
+        BasicBusyLayerUI ui = new BasicBusyLayerUI();
+        busyIcon = new SpinningDialBusyIcon(64, 64);
+        ui.setBusyIcon(busyIcon);
+        JBusyComponent<JComponent> busyComponent = new JBusyComponent<>(scrollpane, ui);
 
         // use the BusyModel to control the busy state of this component
         busyModel = busyComponent.getBusyModel();
         busyModel.setCancellable(false);
         busyModel.setDeterminate(false);
-        BasicBusyLayerUI ui = new BasicBusyLayerUI();
-        busyIcon = new SpinningDialBusyIcon(64, 64);
-        ui.setBusyIcon(busyIcon);
-        busyComponent.setBusyLayerUI(ui);
 
         this.add(busyComponent, BorderLayout.CENTER);
         // the drop target needs to be created, but doesn't need to be attached to anything
@@ -291,6 +288,8 @@ public class TrackTableComponent extends JPanel {
             }
 
             Map<String, Collection<Track>> foundTracks = new HashMap<>();
+            // dropped files usually come an album at a time, so search for the whole album once
+            Set<String> searchedAlbums = new HashSet<>();
 
             for (final File file : files) {
                 try {
@@ -305,15 +304,22 @@ public class TrackTableComponent extends JPanel {
                     String key = getTrackKey(title, artist, album);
 
                     if (!foundTracks.containsKey(key)) {
-                        Collection<Track> tracks = mediaPlayer.findTracks(title, artist, album);
-                        // take advantage of MonkeyTunes bug (it turns "AND" queries into "OR" queries)
+                        Collection<Track> tracks;
+                        if (album.isBlank()) {
+                            tracks = mediaPlayer.findTracks(title, null, null);
+                        } else if (searchedAlbums.add(album)) {
+                            tracks = mediaPlayer.findTracks(null, null, album);
+                        } else {
+                            // already loaded every track on this album
+                            tracks = Collections.emptyList();
+                        }
                         for (Track track : tracks) {
                             String trackKey = getTrackKey(track.getTitle(), track.getArtist(), track.getAlbum());
                             foundTracks.computeIfAbsent(trackKey, k -> new ArrayList<>());
                             foundTracks.get(trackKey).add(track);
                         }
                     }
-                    Collection<Track> tracks = foundTracks.get(key);
+                    Collection<Track> tracks = foundTracks.getOrDefault(key, Collections.emptyList());
 
                     if (tracks.isEmpty()) {
                         log.info("Unable to find match for " + key);
@@ -0,0 +1,258 @@
+/*
+ * Copyright (c) 2024. Dan Clark
+ */
+
+package org.nekocode.nowplaying.events;
+
+import lombok.extern.log4j.Log4j2;
+import org.jetbrains.annotations.NotNull;
+import org.nekocode.nowplaying.events.TrackChangeEvent.ChangeType;
+
+import java.util.ArrayDeque;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Delivers {@link TrackChangeEvent}s to listeners asynchronously, so the thread that raised an
+ * event (for MediaMonkey, the thread reading its websocket) never waits for a listener.
+ * <p>
+ * Each listener has its own bounded queue and its own (virtual) worker thread, so a slow listener
+ * only delays itself.  Workers wait on a {@link ReentrantLock} rather than a monitor, so an idle
+ * worker parks without pinning a carrier thread.  Listeners receive events in the order they were fired, except that an
+ * event still waiting in a queue is dropped when a newer one makes it pointless: a second event of
+ * the same type for the same track replaces the first, and a {@link ChangeType#CURRENT_SONG_CHANGE}
+ * replaces any waiting play state, metadata, art or song change, since listeners refresh
+ * everything for a new song anyway.  If a queue is still full, its oldest event is dropped.
+ * <p>
+ * Registration is copy-on-write, so listeners can be added or removed at any time, from any
+ * thread.
+ *
+ * @author dan.clark@nekocode.org
+ */
+@Log4j2
+public class TrackChangeDispatcher {
+	/**
+	 * maximum number of events waiting for a single listener
+	 */
+	private static final int QUEUE_CAPACITY = 32;
+	/**
+	 * waiting events of these types are made obsolete by a new song
+	 */
+	private static final Set<ChangeType> SUPERSEDED_BY_NEW_SONG = EnumSet.of(
+			ChangeType.PLAY_STATE_CHANGE, ChangeType.METADATA_CHANGE,
+			ChangeType.ART_CHANGE, ChangeType.CURRENT_SONG_CHANGE);
+
+	private final List<ListenerQueue> queues = new CopyOnWriteArrayList<>();
+
+	/**
+	 * Delivery statistics for one listener.
+	 *
+	 * @param listener  the listener's class name
+	 * @param delivered events delivered to the listener
+	 * @param coalesced events that were replaced by a newer event before being delivered
+	 * @param dropped   events that were dropped because the listener's queue was full
+	 * @param failed    events for which the listener threw an exception
+	 * @param waiting   events currently waiting in the listener's queue
+	 */
+	public record ListenerStats(String listener, long delivered, long coalesced, long dropped,
+								long failed, int waiting) { }
+
+	private static class ListenerQueue implements Runnable {
+		private final TrackChangeListener listener;
+		private final ArrayDeque<TrackChangeEvent> pending = new ArrayDeque<>();
+		private final LongAdder delivered = new LongAdder();
+		private final LongAdder coalesced = new LongAdder();
+		private final LongAdder dropped = new LongAdder();
+		private final LongAdder failed = new LongAdder();
+		private final ReentrantLock lock = new ReentrantLock();
+		private final Condition notEmpty = lock.newCondition();
+		/**
+		 * guarded by lock, as is pending
+		 */
+		private boolean stopped;
+
+		ListenerQueue(TrackChangeListener listener) {
+			this.listener = listener;
+			Thread.ofVirtual()
+					.name("TrackChange-" + name(listener))
+					.start(this);
+		}
+
+		void offer(TrackChangeEvent e) {
+			TrackChangeEvent oldest = null;
+			lock.lock();
+			try {
+				for (Iterator<TrackChangeEvent> i = pending.iterator(); i.hasNext(); ) {
+					if (supersedes(e, i.next())) {
+						i.remove();
+						coalesced.increment();
+					}
+				}
+				if (pending.size() >= QUEUE_CAPACITY) {
+					oldest = pending.removeFirst();
+					dropped.increment();
+				}
+				pending.addLast(e);
+				notEmpty.signal();
+			} finally {
+				lock.unlock();
+			}
+			if (oldest != null) {
+				log.warn("{} is falling behind, dropped {} event", name(listener), oldest.getType());
+			}
+		}
+
+		private TrackChangeEvent take() throws InterruptedException {
+			lock.lock();
+			try {
+				while (pending.isEmpty() && !stopped) {
+					notEmpty.await();
+				}
+				return stopped ? null : pending.removeFirst();
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		@Override
+		public void run() {
+			try {
+				TrackChangeEvent e;
+				while ((e = take()) != null) {
+					try {
+						listener.trackChanged(e);
+						delivered.increment();
+					} catch (RuntimeException ex) {
+						failed.increment();
+						log.error("Error in track change listener " + name(listener), ex);
+					}
+				}
+			} catch (InterruptedException ex) {
+				// stopped
+			}
+		}
+
+		void stop() {
+			lock.lock();
+			try {
+				stopped = true;
+				pending.clear();
+				notEmpty.signal();
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		ListenerStats stats() {
+			lock.lock();
+			try {
+				return new ListenerStats(name(listener), delivered.sum(), coalesced.sum(), dropped.sum(),
+						failed.sum(), pending.size());
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * @return true if {@code older}, still waiting to be delivered, is made pointless by {@code newer}
+	 */
+	private static boolean supersedes(TrackChangeEvent newer, TrackChangeEvent older) {
+		if (newer.getType() == ChangeType.CURRENT_SONG_CHANGE) {
+			return SUPERSEDED_BY_NEW_SONG.contains(older.getType());
+		}
+		return newer.getType() == older.getType()
+				&& newer.getTrack().getTrackId() == older.getTrack().getTrackId();
+	}
+
+	private static String name(TrackChangeListener listener) {
+		String name = listener.getClass().getSimpleName();
+		// lambdas and method references have generated names like NowPlayingController$$Lambda/0x...
+		int lambda = name.indexOf("$$");
+		return lambda > 0 ? name.substring(0, lambda) : name;
+	}
+
+	/**
+	 * Adds a listener.  Adding a listener that is already registered does nothing.
+	 */
+	public void addListener(@NotNull TrackChangeListener l) {
+		synchronized (queues) {
+			if (queues.stream().noneMatch(q -> q.listener == l)) {
+				queues.add(new ListenerQueue(l));
+			}
+		}
+	}
+
+	/**
+	 * Removes a listener.  Events still waiting for it are discarded.
+	 */
+	public void removeListener(@NotNull TrackChangeListener l) {
+		synchronized (queues) {
+			queues.removeIf(q -> {
+				if (q.listener == l) {
+					q.stop();
+					return true;
+				}
+				return false;
+			});
+		}
+	}
+
+	/**
+	 * Queues an event for every listener, and returns without waiting for any of them.
+	 */
+	public void fire(@NotNull TrackChangeEvent e) {
+		for (ListenerQueue queue : queues) {
+			queue.offer(e);
+		}
+	}
+
+	/**
+	 * @return delivery statistics for each registered listener
+	 */
+	public List<ListenerStats> getStats() {
+		return queues.stream()
+				.map(ListenerQueue::stats)
+				.toList();
+	}
+
+	/**
+	 * @return total number of events dropped because a listener's queue was full
+	 */
+	public long getDroppedCount() {
+		return getStats().stream()
+				.mapToLong(ListenerStats::dropped)
+				.sum();
+	}
+
+	/**
+	 * @return a plain text table of {@link #getStats()}
+	 */
+	public String report() {
+		StringBuilder report = new StringBuilder();
+		report.append(String.format("%-32s %10s %10s %8s %7s %8s%n",
+				"track change listener", "delivered", "coalesced", "dropped", "failed", "waiting"));
+		for (ListenerStats stats : getStats()) {
+			report.append(String.format("%-32s %10d %10d %8d %7d %8d%n",
+					stats.listener(), stats.delivered(), stats.coalesced(), stats.dropped(),
+					stats.failed(), stats.waiting()));
+		}
+		return report.toString();
+	}
+
+	/**
+	 * Stops all workers.  Events not yet delivered are discarded.
+	 */
+	public void shutdown() {
+		synchronized (queues) {
+			queues.forEach(ListenerQueue::stop);
+			queues.clear();
+		}
+	}
+}
@@ -0,0 +1,445 @@
+/*
+ * Copyright (c) 2024. Dan Clark
+ */
+
+package org.nekocode.nowplaying.internals;
+
+import lombok.extern.log4j.Log4j2;
+import org.jetbrains.annotations.Nullable;
+import org.nekocode.nowplaying.NowPlayingProperties;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * Display-ready artwork, kept in memory and on disk, so artwork that has been shown before is
+ * shown again without asking the media player for it or scaling it.
+ * <p>
+ * Images are stored by the hash of the original artwork and the size they were scaled to, so all
+ * the tracks of an album share a single copy.  An index maps each track's id (and size) to the
+ * hash of its artwork; it is what lets artwork be found before the media player has been asked
+ * for it.  Index entries are removed along with the images they point to.
+ * <p>
+ * The memory level is a least recently used cache bounded by the bytes its images take up.  The
+ * disk level holds the same images as PNG files, bounded by total file size; the least recently
+ * used files are deleted first.  Disk writes happen on a background thread.  All methods are
+ * thread safe.
+ *
+ * @author dan.clark@nekocode.org
+ */
+@Log4j2
+public class ArtworkCache {
+	private static final String DEFAULT_DIRECTORY = "artwork-cache";
+	private static final String INDEX_FILE = "index.properties";
+	private static final long DEFAULT_MEMORY_BYTES = 32L * 1024 * 1024;
+	private static final long DEFAULT_DISK_BYTES = 128L * 1024 * 1024;
+	/**
+	 * delay before writing the index after it changes, so a burst of changes is written once, in ms
+	 */
+	private static final long INDEX_WRITE_DELAY = 5000;
+
+	private final File directory;
+	private final long maxMemoryBytes;
+	private final long maxDiskBytes;
+	private final ScheduledExecutorService diskThread = Executors.newSingleThreadScheduledExecutor(
+			new NamedThreadFactory("ArtworkCache", true));
+
+	private final Object lock = new Object();
+	// guarded by lock
+	private final Properties index = new Properties();
+	private final LinkedHashMap<String, BufferedImage> memory = new LinkedHashMap<>(16, 0.75f, true);
+	private long memoryBytes;
+	private final AtomicBoolean indexWriteScheduled = new AtomicBoolean();
+
+	private final LongAdder memoryHits = new LongAdder();
+	private final LongAdder diskHits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+
+	/**
+	 * Creates a cache in the directory named by the ARTWORK_CACHE property.
+	 */
+	public ArtworkCache() {
+		this(new File(NowPlayingProperties.loadProperties().getProperty(
+				NowPlayingProperties.ARTWORK_CACHE.name(), DEFAULT_DIRECTORY)),
+				DEFAULT_MEMORY_BYTES, DEFAULT_DISK_BYTES);
+	}
+
+	public ArtworkCache(File directory, long maxMemoryBytes, long maxDiskBytes) {
+		this.directory = directory;
+		this.maxMemoryBytes = maxMemoryBytes;
+		this.maxDiskBytes = maxDiskBytes;
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			log.warn("Could not create artwork cache directory {}", directory);
+		}
+		File indexFile = new File(directory, INDEX_FILE);
+		if (indexFile.exists()) {
+			try (InputStream in = new FileInputStream(indexFile)) {
+				index.load(in);
+			} catch (IOException e) {
+				log.warn("Could not read artwork cache index, starting empty", e);
+			}
+			// only the entries read here are checked: ones that put() adds before the check runs
+			// don't have their files yet
+			Map<Object, Object> loaded = new HashMap<>(index);
+			diskThread.execute(() -> pruneIndex(loaded));
+		}
+	}
+
+	/**
+	 * Computes the hash that identifies a piece of artwork.
+	 *
+	 * @param encoded the artwork as the media player sent it (PNG, JPEG, ...)
+	 */
+	public static String hash(byte[] encoded) {
+		try {
+			return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-1").digest(encoded));
+		} catch (NoSuchAlgorithmException e) {
+			// every JVM has SHA-1
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Looks for artwork in memory only.  Cheap enough to call from any thread.
+	 *
+	 * @return the track's artwork at the given size, or null if it isn't in memory
+	 */
+	@Nullable
+	public BufferedImage getFromMemory(String trackId, int size) {
+		synchronized (lock) {
+			String hash = index.getProperty(indexKey(trackId, size));
+			BufferedImage image = hash == null ? null : memory.get(imageKey(hash, size));
+			if (image != null) {
+				memoryHits.increment();
+			}
+			return image;
+		}
+	}
+
+	/**
+	 * Looks for artwork in memory, then on disk.  Reads from disk, so shouldn't be called on the
+	 * event dispatch thread.
+	 *
+	 * @return the track's artwork at the given size, or null if it isn't cached
+	 */
+	@Nullable
+	public BufferedImage get(String trackId, int size) {
+		BufferedImage image = getFromMemory(trackId, size);
+		if (image != null) {
+			return image;
+		}
+		String hash;
+		synchronized (lock) {
+			hash = index.getProperty(indexKey(trackId, size));
+		}
+		if (hash != null) {
+			File file = imageFile(hash, size);
+			try {
+				BufferedImage decoded = file.exists() ? ImageIO.read(file) : null;
+				if (decoded != null) {
+					diskHits.increment();
+					// keep track of how recently each file was used, for eviction
+					file.setLastModified(System.currentTimeMillis());
+					image = toDisplayImage(decoded);
+					addToMemory(imageKey(hash, size), image);
+					return image;
+				}
+			} catch (IOException e) {
+				log.warn("Could not read cached artwork {}", file, e);
+			}
+			// the file is gone or unreadable
+			synchronized (lock) {
+				index.remove(indexKey(trackId, size));
+			}
+			scheduleIndexWrite();
+		}
+		misses.increment();
+		return null;
+	}
+
+	/**
+	 * Adds artwork to the cache.
+	 *
+	 * @param hash  {@link #hash(byte[])} of the original artwork
+	 * @param image the artwork, already scaled to {@code size}
+	 * @return the cached image, which may be a copy in a format that is faster to draw
+	 */
+	public BufferedImage put(String trackId, int size, String hash, BufferedImage image) {
+		BufferedImage displayImage = toDisplayImage(image);
+		String imageKey = imageKey(hash, size);
+		synchronized (lock) {
+			index.setProperty(indexKey(trackId, size), hash);
+		}
+		addToMemory(imageKey, displayImage);
+		scheduleIndexWrite();
+		diskThread.execute(() -> writeToDisk(hash, size, displayImage));
+		return displayImage;
+	}
+
+	/**
+	 * Forgets which artwork a track has, at every size.  Called when the track's artwork may have
+	 * changed; the images themselves stay, since other tracks may share them.
+	 */
+	public void invalidate(String trackId) {
+		String prefix = trackId + ":";
+		boolean changed;
+		synchronized (lock) {
+			changed = index.keySet().removeIf(key -> ((String) key).startsWith(prefix));
+		}
+		if (changed) {
+			scheduleIndexWrite();
+		}
+	}
+
+	/**
+	 * @return a one line summary of how often artwork was found in memory, on disk, or not at all
+	 */
+	public String report() {
+		synchronized (lock) {
+			return String.format("artwork cache: %d memory hits, %d disk hits, %d misses; %d images in memory (%.1f of %.1f MB)",
+					memoryHits.sum(), diskHits.sum(), misses.sum(),
+					memory.size(), memoryBytes / 1048576.0, maxMemoryBytes / 1048576.0);
+		}
+	}
+
+	/**
+	 * Writes the index, and waits (briefly) for pending disk writes.
+	 */
+	public void shutdown() {
+		diskThread.execute(this::writeIndex);
+		diskThread.shutdown();
+		try {
+			diskThread.awaitTermination(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			log.warn("interrupted while writing artwork cache", e);
+		}
+	}
+
+	private static String indexKey(String trackId, int size) {
+		return trackId + ":" + size;
+	}
+
+	private static String imageKey(String hash, int size) {
+		return hash + "-" + size;
+	}
+
+	private File imageFile(String hash, int size) {
+		return new File(directory, imageKey(hash, size) + ".png");
+	}
+
+	/**
+	 * @return the image key of a cached image file
+	 */
+	private static String imageKey(File imageFile) {
+		String name = imageFile.getName();
+		return name.substring(0, name.length() - ".png".length());
+	}
+
+	/**
+	 * @return the image in TYPE_INT_ARGB_PRE, which Java2D draws without converting
+	 */
+	private static BufferedImage toDisplayImage(BufferedImage image) {
+		if (image.getType() == BufferedImage.TYPE_INT_ARGB_PRE) {
+			return image;
+		}
+		BufferedImage converted = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_ARGB_PRE);
+		Graphics2D g = converted.createGraphics();
+		g.drawImage(image, 0, 0, null);
+		g.dispose();
+		return converted;
+	}
+
+	private static long bytes(BufferedImage image) {
+		return (long) image.getWidth() * image.getHeight() * 4;
+	}
+
+	private void addToMemory(String imageKey, BufferedImage image) {
+		synchronized (lock) {
+			BufferedImage previous = memory.put(imageKey, image);
+			if (previous != null) {
+				memoryBytes -= bytes(previous);
+			}
+			memoryBytes += bytes(image);
+			Iterator<BufferedImage> eldest = memory.values().iterator();
+			while (memoryBytes > maxMemoryBytes && memory.size() > 1) {
+				memoryBytes -= bytes(eldest.next());
+				eldest.remove();
+			}
+		}
+	}
+
+	private void writeToDisk(String hash, int size, BufferedImage image) {
+		File file = imageFile(hash, size);
+		if (file.exists()) {
+			file.setLastModified(System.currentTimeMillis());
+			return;
+		}
+		try {
+			File temp = new File(directory, file.getName() + ".tmp");
+			ImageIO.write(image, "png", temp);
+			if (!temp.renameTo(file)) {
+				temp.delete();
+			}
+		} catch (IOException e) {
+			log.warn("Could not write cached artwork {}", file, e);
+			return;
+		}
+		evictFromDisk();
+	}
+
+	/**
+	 * Deletes the least recently used images until the cache fits in its size limit, along with the
+	 * index entries that point to them.
+	 */
+	private void evictFromDisk() {
+		File[] files = directory.listFiles((dir, name) -> name.endsWith(".png"));
+		if (files == null) {
+			return;
+		}
+		long total = Arrays.stream(files).mapToLong(File::length).sum();
+		if (total <= maxDiskBytes) {
+			return;
+		}
+		Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+		// images in memory are being shown from there, which doesn't touch their files, so they
+		// may look unused on disk when they aren't
+		Set<String> inMemory;
+		synchronized (lock) {
+			inMemory = new HashSet<>(memory.keySet());
+		}
+		Set<String> evicted = new HashSet<>();
+		for (File file : files) {
+			if (total <= maxDiskBytes) {
+				break;
+			}
+			String imageKey = imageKey(file);
+			if (inMemory.contains(imageKey)) {
+				continue;
+			}
+			long length = file.length();
+			if (file.delete()) {
+				total -= length;
+				evicted.add(imageKey);
+				log.debug("evicted {} from artwork cache", file.getName());
+			}
+		}
+		// otherwise the index would keep growing with entries for images that are gone
+		removeFromIndex(evicted::contains);
+	}
+
+	/**
+	 * Removes the index entries for images that aren't on disk, such as ones left by a version that
+	 * didn't remove them when the images were evicted.
+	 *
+	 * @param loaded the index as it was read from disk; entries added or changed since are left alone
+	 */
+	private void pruneIndex(Map<Object, Object> loaded) {
+		File[] files = directory.listFiles((dir, name) -> name.endsWith(".png"));
+		if (files == null) {
+			return;
+		}
+		Set<String> onDisk = new HashSet<>();
+		for (File file : files) {
+			onDisk.add(imageKey(file));
+		}
+		boolean changed;
+		synchronized (lock) {
+			changed = index.entrySet().removeIf(entry -> {
+				if (!entry.getValue().equals(loaded.get(entry.getKey()))) {
+					return false;
+				}
+				// an image in memory may be waiting to be written
+				String imageKey = imageKey(entry);
+				return imageKey == null || !onDisk.contains(imageKey) && !memory.containsKey(imageKey);
+			});
+		}
+		if (changed) {
+			scheduleIndexWrite();
+		}
+	}
+
+	/**
+	 * Removes the index entries whose image keys match, and writes the index if any were removed.
+	 */
+	private void removeFromIndex(Predicate<String> imageKeys) {
+		boolean changed;
+		synchronized (lock) {
+			changed = index.entrySet().removeIf(entry -> {
+				String imageKey = imageKey(entry);
+				return imageKey == null || imageKeys.test(imageKey);
+			});
+		}
+		if (changed) {
+			scheduleIndexWrite();
+		}
+	}
+
+	/**
+	 * @return the image key an index entry points to, or null if it isn't an entry this class wrote
+	 */
+	@Nullable
+	private static String imageKey(Map.Entry<Object, Object> entry) {
+		String key = (String) entry.getKey();
+		try {
+			int size = Integer.parseInt(key.substring(key.lastIndexOf(':') + 1));
+			return imageKey((String) entry.getValue(), size);
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	private void scheduleIndexWrite() {
+		if (indexWriteScheduled.compareAndSet(false, true)) {
+			diskThread.schedule(this::writeIndex, INDEX_WRITE_DELAY, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	private void writeIndex() {
+		indexWriteScheduled.set(false);
+		Properties copy = new Properties();
+		synchronized (lock) {
+			copy.putAll(index);
+		}
+		File indexFile = new File(directory, INDEX_FILE);
+		File temp = new File(directory, INDEX_FILE + ".tmp");
+		try (OutputStream out = new FileOutputStream(temp)) {
+			copy.store(out, "track id:size = artwork hash");
+		} catch (IOException e) {
+			log.warn("Could not write artwork cache index", e);
+			return;
+		}
+		// replaced in one step, so a crash can't leave the cache without an index
+		try {
+			Files.move(temp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			log.warn("Could not replace artwork cache index {}", indexFile, e);
+		}
+	}
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2024. Dan Clark
+ */
+
+package org.nekocode.nowplaying.internals;
+
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Estimates the playback position of the current track between polls of the media player.
+ * <p>
+ * Timestamped position samples (polled from the player, or pushed by it) are fitted to a line,
+ * giving a playback rate and an offset, so the estimate follows a player that runs slightly fast
+ * or slow instead of assuming exactly 1x.  A sample far from the estimate is held back until the
+ * next one confirms it: a single stale or glitched reading is rejected, while two that agree (the
+ * user seeked, say) restart the estimate.  How often the player should be polled follows the
+ * error of past estimates; it backs off while they are accurate and polls again soon when they
+ * aren't.
+ * <p>
+ * All methods are thread safe.
+ *
+ * @author dan.clark@nekocode.org
+ */
+@Log4j2
+public class PositionEstimator {
+	/**
+	 * number of samples used for the fit
+	 */
+	private static final int SAMPLE_COUNT = 8;
+	/**
+	 * samples further than this from the estimate (in seconds) are outliers
+	 */
+	private static final double OUTLIER_THRESHOLD = 1.0;
+	/**
+	 * estimates within this error (in seconds) let the poll interval grow
+	 */
+	private static final double ACCURATE_ERROR = 0.05;
+	/**
+	 * estimates with more than this error (in seconds) make the poll interval shrink
+	 */
+	private static final double INACCURATE_ERROR = 0.25;
+	private static final double MIN_RATE = 0.25;
+	private static final double MAX_RATE = 4.0;
+	public static final long MIN_POLL_INTERVAL = 2000;
+	public static final long MAX_POLL_INTERVAL = 60000;
+	private static final double NANOS_PER_SECOND = 1e9;
+
+	// ring buffer of accepted samples since the last reset
+	private final long[] sampleTimes = new long[SAMPLE_COUNT];
+	private final double[] samplePositions = new double[SAMPLE_COUNT];
+	private int samples;
+	private int nextSample;
+
+	private boolean playing;
+	private double rate = 1.0;
+	/**
+	 * position (in seconds) at {@link #anchorTime}
+	 */
+	private double anchorPosition;
+	private long anchorTime;
+	/**
+	 * smoothed absolute error of the estimate, measured whenever a sample arrives
+	 */
+	private double error;
+	private long pollInterval = MIN_POLL_INTERVAL;
+	/**
+	 * an outlier waiting to be confirmed by the next sample, or NaN
+	 */
+	private double pendingPosition = Double.NaN;
+	private long pendingTime;
+
+	/**
+	 * Forgets everything measured so far.  Called when the track changes, or the player seeks,
+	 * starts or stops.
+	 */
+	public synchronized void reset() {
+		samples = 0;
+		nextSample = 0;
+		playing = false;
+		rate = 1.0;
+		anchorPosition = 0;
+		anchorTime = 0;
+		error = 0;
+		pollInterval = MIN_POLL_INTERVAL;
+		pendingPosition = Double.NaN;
+	}
+
+	/**
+	 * Adds a position sample.
+	 *
+	 * @param position position in the track, in seconds
+	 * @param time {@link System#nanoTime()} the position was measured at
+	 * @param isPlaying whether the player was playing
+	 * @return false if the sample was rejected as an outlier
+	 */
+	public synchronized boolean addSample(double position, long time, boolean isPlaying) {
+		if (!isPlaying) {
+			// nothing moves; the reported position is exact
+			reset();
+			anchorPosition = position;
+			anchorTime = time;
+			return true;
+		}
+		if (!playing || samples == 0) {
+			restart(position, time);
+			return true;
+		}
+
+		double sampleError = Math.abs(position - estimate(time));
+		if (sampleError > OUTLIER_THRESHOLD) {
+			if (!Double.isNaN(pendingPosition)
+					&& Math.abs(position - (pendingPosition + (time - pendingTime) / NANOS_PER_SECOND)) <= OUTLIER_THRESHOLD) {
+				// two samples in a row agree with each other, but not with the estimate
+				log.debug("position jumped by {} s, restarting estimate", position - estimate(time));
+				restart(position, time);
+				return true;
+			}
+			log.debug("rejecting position sample {} s off the estimate", sampleError);
+			pendingPosition = position;
+			pendingTime = time;
+			// confirm (or refute) it soon
+			pollInterval = MIN_POLL_INTERVAL;
+			return false;
+		}
+		pendingPosition = Double.NaN;
+
+		error = samples == 1 ? sampleError : 0.7 * error + 0.3 * sampleError;
+		if (error <= ACCURATE_ERROR) {
+			pollInterval = Math.min(pollInterval * 2, MAX_POLL_INTERVAL);
+		} else if (error >= INACCURATE_ERROR) {
+			pollInterval = Math.max(pollInterval / 2, MIN_POLL_INTERVAL);
+		}
+
+		add(position, time);
+		fit();
+		return true;
+	}
+
+	/**
+	 * @param time {@link System#nanoTime()} to estimate the position at
+	 * @return estimated position in the track, in seconds
+	 */
+	public synchronized double estimate(long time) {
+		if (!playing) {
+			return anchorPosition;
+		}
+		return anchorPosition + rate * (time - anchorTime) / NANOS_PER_SECOND;
+	}
+
+	/**
+	 * @return how long to wait before polling the player again, in ms
+	 */
+	public synchronized long getPollInterval() {
+		return pollInterval;
+	}
+
+	/**
+	 * @return estimated playback rate, 1.0 being normal speed
+	 */
+	public synchronized double getRate() {
+		return playing ? rate : 0;
+	}
+
+	private void restart(double position, long time) {
+		reset();
+		playing = true;
+		add(position, time);
+		anchorPosition = position;
+		anchorTime = time;
+	}
+
+	private void add(double position, long time) {
+		sampleTimes[nextSample] = time;
+		samplePositions[nextSample] = position;
+		nextSample = (nextSample + 1) % SAMPLE_COUNT;
+		samples = Math.min(samples + 1, SAMPLE_COUNT);
+	}
+
+	/**
+	 * Least squares fit of position against time over the stored samples.  The anchor is moved to
+	 * the newest sample, so the estimate is continuous with the latest measurement.
+	 */
+	private void fit() {
+		int newest = (nextSample + SAMPLE_COUNT - 1) % SAMPLE_COUNT;
+		long origin = sampleTimes[newest];
+		double meanT = 0;
+		double meanP = 0;
+		for (int i = 0; i < samples; i++) {
+			meanT += (sampleTimes[i] - origin) / NANOS_PER_SECOND;
+			meanP += samplePositions[i];
+		}
+		meanT /= samples;
+		meanP /= samples;
+
+		double covariance = 0;
+		double variance = 0;
+		for (int i = 0; i < samples; i++) {
+			double dt = (sampleTimes[i] - origin) / NANOS_PER_SECOND - meanT;
+			covariance += dt * (samplePositions[i] - meanP);
+			variance += dt * dt;
+		}
+		// samples too close together say nothing about the rate
+		if (variance > 1.0) {
+			rate = Math.max(MIN_RATE, Math.min(MAX_RATE, covariance / variance));
+		}
+		anchorTime = origin;
+		anchorPosition = meanP - rate * meanT;
+	}
+}
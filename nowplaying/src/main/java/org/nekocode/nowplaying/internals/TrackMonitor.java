@@ -1,179 +1,301 @@
-/*
- * Copyright (c) 2011-2024. Dan Clark
- */
-
-package org.nekocode.nowplaying.internals;
-
-import lombok.extern.log4j.Log4j2;
-import org.nekocode.nowplaying.MediaPlayer;
-import org.nekocode.nowplaying.MediaPlayer.PlayerState;
-import org.nekocode.nowplaying.NowPlayingView;
-import org.nekocode.nowplaying.events.TrackChangeEvent;
-import org.nekocode.nowplaying.events.TrackChangeListener;
-import org.nekocode.nowplaying.objects.Track;
-
-import java.util.Timer;
-import java.util.TimerTask;
-
-/**
- * Follows the progress of the track, updating certain components (like progress
- * bars, for example) on a regular basis.
- *
- * @author dan.clark@nekocode.org
- */
-@Log4j2
-public class TrackMonitor implements Runnable, TrackChangeListener {
-	private final NowPlayingView view;
-	private final MediaPlayer player;
-
-	private Timer timer;
-
-    /**
-     * rate that source application updates track time, in ms
-     */
-	private static final long MEDIA_PLAYER_POLL_RATE = 15000;
-    /**
-     * Update rate, in milliseconds.
-     */
-	private static final int UPDATE_RATE = 50;
-
-	//////////////////////////////////////////////////////////////////////
-	// experimental code for updates faster than 1/second
-	//////////////////////////////////////////////////////////////////////
-	private double lastMeasuredPercent;
-	private long lastMeasuredTime;
-    /**
-     * percent of song covered in MEDIA_PLAYER_POLL_RATE time
-     */
-	private double velocity;
-    private static final long NANO_TO_MILLI = 1000000;
-    private boolean shutdown;
-    private boolean forceRefresh;
-
-    /**
-	 * Creates a new TrackMonitor that will periodically send updates to the view.
-	 *
-	 * @param myView
-	 * @param myPlayer
-	 */
-	public TrackMonitor(NowPlayingView myView, MediaPlayer myPlayer) {
-		this.view = myView;
-		this.player = myPlayer;
-        shutdown = false;
-        forceRefresh = false;
-	}
-
-	/**
-	 * Causes the TrackMonitor to begin monitoring.
-	 */
-	public void start() {
-		TimerTask task = new TimerTask() {
-			@Override
-			public void run() {
-				TrackMonitor.this.run();
-			}
-		};
-
-		timer = new Timer("TrackMonitor", true);
-		timer.schedule(task, 1000, UPDATE_RATE);
-	}
-
-	@Override
-	public void run() {
-        if (shutdown) {
-            return;
-        }
-
-		long currentTime = System.nanoTime();
-
-        // it's not yet time to poll the media player
-        long timeSinceLastUpdate = currentTime - lastMeasuredTime;
-        long timeUntilNextUpdate = MEDIA_PLAYER_POLL_RATE * NANO_TO_MILLI - timeSinceLastUpdate;
-
-        if (forceRefresh) {
-            forceRefresh = false;
-            fullRefresh(currentTime);
-        } else if (timeUntilNextUpdate > 0) {
-            interpolatePercentComplete(currentTime);
-            log.debug("interpolating progress: next update in " + timeUntilNextUpdate + "ns");
-        } else {
-            fullRefresh(currentTime);
-        }
-	}
-
-    /**
-     * Request an update on the position to calculate true percent complete.
-     *
-     * @param currentTime current system time (nanos)
-     */
-    private void fullRefresh(long currentTime) {
-        // always record that we measured the time when this method is called
-        lastMeasuredTime = System.nanoTime();
-
-        Track currentTrack = player.getCurrentTrack();
-
-        if (currentTrack == null) {
-            view.updateTrackProgress(0);
-        } else {
-            // time might have changed, so poll
-            double duration = currentTrack.getDuration();
-            double position = player.getCurrentTrackPosition();
-            double measuredPercent = position / duration;
-            // velocity per period
-            if (player.getPlayerState() == PlayerState.PLAYING) {
-                velocity = 1.0 / duration / 1000 * MEDIA_PLAYER_POLL_RATE;
-
-                if (lastMeasuredPercent == measuredPercent) {
-                    // if this is the same as the last measurement, interpolate
-                    interpolatePercentComplete(currentTime);
-                    log.debug("querying media player for progress - interpolating results");
-                } else {
-                    // if the current measure value isn't the same as the last
-                    //    measured value, use the actual value
-                    lastMeasuredPercent = measuredPercent;
-                    view.updateTrackProgress(measuredPercent);
-                    log.debug("querying media player for progress - found new time");
-                }
-            } else {
-                velocity = 0;
-                // update the track progress to make sure it is correct
-                lastMeasuredPercent = measuredPercent;
-                view.updateTrackProgress(measuredPercent);
-                log.debug("querying media player for progress - player is stopped");
-            }
-        }
-    }
-
-    private void interpolatePercentComplete(long currentTime) {
-        if (velocity > 0) {
-            long timeElapsed = (currentTime - lastMeasuredTime) / NANO_TO_MILLI;
-            // timeElapsed * velocity performed first so integer division is avoided
-            double percentComplete = lastMeasuredPercent + (timeElapsed * velocity) / MEDIA_PLAYER_POLL_RATE;
-            view.updateTrackProgress(percentComplete);
-            // log.debug(String.format("lastValue: %s, velocity: %s", lastValue, velocity));
-        }
-    }
-
-    /**
-	 *
-	 */
-	public void shutdown() {
-        shutdown = true;
-        if (timer != null) {
-            timer.cancel();
-        }
-	}
-
-    @Override
-    public void trackChanged(TrackChangeEvent e) {
-        switch (e.getType()) {
-            case PLAY_STATE_CHANGE:
-            case CURRENT_SONG_CHANGE:
-            case FILE_CHANGE:
-            case ART_CHANGE:
-                // force a full update
-                forceRefresh = true;
-                break;
-        }
-    }
-}
+/*
+ * Copyright (c) 2011-2024. Dan Clark
+ */
+
+package org.nekocode.nowplaying.internals;
+
+import lombok.extern.log4j.Log4j2;
+import org.nekocode.nowplaying.MediaPlayer;
+import org.nekocode.nowplaying.MediaPlayer.PlayerState;
+import org.nekocode.nowplaying.NowPlayingView;
+import org.nekocode.nowplaying.events.TrackChangeEvent;
+import org.nekocode.nowplaying.events.TrackChangeListener;
+import org.nekocode.nowplaying.objects.PlayerSnapshot;
+import org.nekocode.nowplaying.objects.Track;
+
+import java.awt.*;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Follows the progress of the track, updating certain components (like progress
+ * bars, for example) on a regular basis.
+ * <p>
+ * Updates are only scheduled as often as they are visible: the tick rate is chosen so that each
+ * update moves the progress border by about one pixel, given the length of the current track and
+ * the size of the border.  When the player is stopped, or the window is hidden or iconified,
+ * nothing is scheduled at all until a {@link TrackChangeEvent} arrives or the window is shown
+ * again.
+ * <p>
+ * Between polls, the position comes from a {@link PositionEstimator}, which also decides how
+ * often the player needs to be polled.
+ *
+ * @author dan.clark@nekocode.org
+ */
+@Log4j2
+public class TrackMonitor implements Runnable, TrackChangeListener {
+	private final NowPlayingView view;
+	private final MediaPlayer player;
+
+	private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+			new NamedThreadFactory("TrackMonitor", true));
+	/**
+	 * the next scheduled update, or null if updates are suspended
+	 */
+	private ScheduledFuture<?> nextUpdate;
+
+    /**
+     * Fastest update rate, in milliseconds (about one frame at 60 Hz).
+     */
+	private static final long MIN_UPDATE_RATE = 16;
+    /**
+     * Slowest update rate while playing, in milliseconds.
+     */
+	private static final long MAX_UPDATE_RATE = 1000;
+    /**
+     * Delay before the first update, in milliseconds.
+     */
+	private static final long INITIAL_DELAY = 1000;
+
+	private final PositionEstimator estimator = new PositionEstimator();
+	/**
+	 * time the media player was last polled (nanos); only used on the scheduler thread
+	 */
+	private long lastPollTime;
+    private static final long NANO_TO_MILLI = 1000000;
+    private volatile boolean shutdown;
+    private volatile boolean forceRefresh;
+    /**
+     * whether the view can be seen; kept up to date on the event dispatch thread, so that the
+     * scheduler never reads Swing state
+     */
+    private volatile boolean viewShowing;
+
+    /**
+     * player state as of the last time the media player was polled; only used on the scheduler thread
+     */
+    private PlayerState lastState = PlayerState.STOPPED;
+    /**
+     * duration of the current track in seconds, or 0 if there is no track
+     */
+    private double lastDuration;
+
+    /**
+	 * Creates a new TrackMonitor that will periodically send updates to the view.
+	 *
+	 * @param myView
+	 * @param myPlayer
+	 */
+	public TrackMonitor(NowPlayingView myView, MediaPlayer myPlayer) {
+		this.view = myView;
+		this.player = myPlayer;
+        shutdown = false;
+        forceRefresh = false;
+	}
+
+	/**
+	 * Causes the TrackMonitor to begin monitoring.
+	 */
+	public void start() {
+		// the view is hidden with setVisible (see MouseActions) or iconified; either way, progress
+		// updates can't be seen until it comes back
+		view.addComponentListener(new ComponentAdapter() {
+			@Override
+			public void componentShown(ComponentEvent e) {
+				viewShowing = isViewShowing();
+				wake();
+			}
+
+			@Override
+			public void componentHidden(ComponentEvent e) {
+				viewShowing = false;
+			}
+		});
+		view.addWindowListener(new WindowAdapter() {
+			@Override
+			public void windowDeiconified(WindowEvent e) {
+				viewShowing = isViewShowing();
+				wake();
+			}
+
+			@Override
+			public void windowIconified(WindowEvent e) {
+				viewShowing = false;
+			}
+		});
+		// called from the thread that showed the view, after it was shown
+		viewShowing = isViewShowing();
+
+		forceRefresh = true;
+		schedule(INITIAL_DELAY);
+	}
+
+	@Override
+	public void run() {
+        if (shutdown) {
+            return;
+        }
+        if (suspendIfHidden()) {
+            return;
+        }
+
+		long currentTime = System.nanoTime();
+        long timeSinceLastPoll = currentTime - lastPollTime;
+
+        if (forceRefresh) {
+            forceRefresh = false;
+            fullRefresh();
+        } else if (timeSinceLastPoll >= estimator.getPollInterval() * NANO_TO_MILLI) {
+            fullRefresh();
+        } else {
+            // it's not yet time to poll the media player
+            updateProgress(currentTime);
+        }
+
+        scheduleNext();
+	}
+
+    /**
+     * Schedules the next update, or suspends updates if there is nothing to show.
+     */
+    private synchronized void scheduleNext() {
+        if (forceRefresh) {
+            // a change arrived while this update was running
+            schedule(0);
+        } else if (lastState != PlayerState.PLAYING || lastDuration <= 0) {
+            suspend("player is stopped");
+        } else {
+            schedule(getUpdateRate(lastDuration));
+        }
+    }
+
+    /**
+     * Finds the update rate at which each update moves the progress border by about a pixel.
+     *
+     * @param duration duration of the current track, in seconds
+     * @return update rate, in milliseconds
+     */
+    private long getUpdateRate(double duration) {
+        // the border runs around the whole album art; the rounded corners make it a bit shorter,
+        // which only errs toward updating slightly more often than needed
+        int perimeter = 4 * view.getArtSize();
+        long rate = (long) (duration * 1000 / Math.max(perimeter, 1));
+        return Math.max(MIN_UPDATE_RATE, Math.min(MAX_UPDATE_RATE, rate));
+    }
+
+    /**
+     * Suspends updates if the view can't be seen.  Checked under the same lock that {@link #wake()}
+     * holds, so an update scheduled by a wake that comes in meanwhile is never cancelled: a wake
+     * always leaves forceRefresh set for the update it scheduled.
+     *
+     * @return true if updates were suspended
+     */
+    private synchronized boolean suspendIfHidden() {
+        if (viewShowing || forceRefresh) {
+            return false;
+        }
+        suspend("window is not showing");
+        return true;
+    }
+
+    /**
+     * must be called on the event dispatch thread (or before the view is shown)
+     */
+    private boolean isViewShowing() {
+        return view.isShowing() && (view.getExtendedState() & Frame.ICONIFIED) == 0;
+    }
+
+    private synchronized void schedule(long delay) {
+        if (shutdown) {
+            return;
+        }
+        if (nextUpdate != null) {
+            nextUpdate.cancel(false);
+        }
+        nextUpdate = scheduler.schedule(this, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void suspend(String reason) {
+        if (nextUpdate != null) {
+            nextUpdate.cancel(false);
+            nextUpdate = null;
+            log.debug("suspending progress updates: {}", reason);
+        }
+    }
+
+    /**
+     * Polls the media player right away, and resumes updates if they were suspended.
+     */
+    private synchronized void wake() {
+        forceRefresh = true;
+        schedule(0);
+    }
+
+    /**
+     * Polls the media player for the current position, and feeds it to the estimator.
+     */
+    private void fullRefresh() {
+        // fetch the track, position and state together, so the player is only queried once;
+        // the position was measured somewhere during the call, so split the difference
+        long before = System.nanoTime();
+        PlayerSnapshot snapshot = player.getSnapshot();
+        long after = System.nanoTime();
+        long sampleTime = before + (after - before) / 2;
+        lastPollTime = after;
+
+        Track currentTrack = snapshot.getTrack();
+        lastState = snapshot.getPlayerState();
+
+        if (currentTrack == null) {
+            lastDuration = 0;
+            estimator.reset();
+            view.updateTrackProgress(0);
+        } else {
+            lastDuration = currentTrack.getDuration();
+            boolean accepted = estimator.addSample(snapshot.getPosition(), sampleTime,
+                    lastState == PlayerState.PLAYING);
+            log.debug("polled media player: {} s ({}), rate {}, next poll in {} ms",
+                    snapshot.getPosition(), accepted ? "accepted" : "rejected",
+                    estimator.getRate(), estimator.getPollInterval());
+            updateProgress(after);
+        }
+    }
+
+    private void updateProgress(long currentTime) {
+        if (lastDuration > 0) {
+            double percentComplete = estimator.estimate(currentTime) / lastDuration;
+            view.updateTrackProgress(Math.max(0, Math.min(1, percentComplete)));
+        }
+    }
+
+    /**
+	 *
+	 */
+	public void shutdown() {
+        shutdown = true;
+        scheduler.shutdownNow();
+	}
+
+    @Override
+    public void trackChanged(TrackChangeEvent e) {
+        switch (e.getType()) {
+            case PLAY_STATE_CHANGE:
+            case CURRENT_SONG_CHANGE:
+            case FILE_CHANGE:
+                // the position jumped (seek, play/pause or a new track): earlier samples no longer apply
+                estimator.reset();
+                wake();
+                break;
+            case ART_CHANGE:
+                // force a full update, waking up if updates were suspended
+                wake();
+                break;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2024. Dan Clark
+ */
+
+package org.nekocode.nowplaying.internals;
+
+import lombok.extern.log4j.Log4j2;
+import org.jetbrains.annotations.NotNull;
+import org.nekocode.nowplaying.MediaPlayer;
+import org.nekocode.nowplaying.NowPlayingView;
+import org.nekocode.nowplaying.events.TrackChangeEvent;
+import org.nekocode.nowplaying.events.TrackChangeListener;
+import org.nekocode.nowplaying.objects.Playlist;
+import org.nekocode.nowplaying.objects.Track;
+import org.nekocode.nowplaying.tags.TagModel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Warms the caches for the tracks that come next in the current playlist, so that when the current
+ * track ends the artwork and tags for the next one are already loaded.
+ * <p>
+ * A few seconds after a track starts (so the prefetch doesn't compete with loading the current
+ * track, and nothing is prefetched while the user is skipping through tracks), the next
+ * {@link #PREFETCH_TRACKS} tracks are read from the playlist, which also loads their metadata, and
+ * their artwork and tags are requested.  When the track changes again, prefetches that haven't
+ * finished are cancelled, except for the new current track's.  Each track change also records
+ * whether the new track was one that had been prefetched, which shows whether prefetching pays
+ * off.
+ *
+ * @author dan.clark@nekocode.org
+ */
+@Log4j2
+public class TrackPrefetcher implements TrackChangeListener {
+	/**
+	 * number of upcoming tracks to prefetch
+	 */
+	private static final int PREFETCH_TRACKS = 2;
+	/**
+	 * how long after a track change to start prefetching, in ms
+	 */
+	private static final long PREFETCH_DELAY = 3000;
+
+	private final MediaPlayer player;
+	private final TagModel tagModel;
+	private final NowPlayingView view;
+	private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+			new NamedThreadFactory("TrackPrefetcher", true));
+
+	private final Object lock = new Object();
+	// guarded by lock
+	private Future<?> scheduled;
+	private final List<Prefetch> prefetches = new ArrayList<>();
+	/**
+	 * counts track changes; a prefetch that started before the latest one is stale.  Guarded by
+	 * lock.
+	 */
+	private long generation;
+
+	private final LongAdder trackChanges = new LongAdder();
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder prefetchedTracks = new LongAdder();
+	private final LongAdder cancelled = new LongAdder();
+
+	/**
+	 * Work started for one upcoming track.
+	 */
+	private record Prefetch(Track track, List<Future<?>> loads) {
+		void cancel() {
+			loads.forEach(load -> load.cancel(false));
+		}
+
+		boolean isDone() {
+			return loads.stream().allMatch(Future::isDone);
+		}
+	}
+
+	public TrackPrefetcher(MediaPlayer player, TagModel tagModel, NowPlayingView view) {
+		this.player = player;
+		this.tagModel = tagModel;
+		this.view = view;
+	}
+
+	@Override
+	public void trackChanged(@NotNull TrackChangeEvent e) {
+		switch (e.getType()) {
+			case CURRENT_SONG_CHANGE, FILE_CHANGE -> {
+				int current = e.getTrack().getTrackId();
+				synchronized (lock) {
+					trackChanges.increment();
+					if (scheduled != null) {
+						scheduled.cancel(false);
+					}
+					for (Prefetch prefetch : prefetches) {
+						if (prefetch.track().getTrackId() == current) {
+							hits.increment();
+							log.debug("{} had been prefetched", prefetch.track().getTitle());
+						} else if (!prefetch.isDone()) {
+							// keep loading the track that is now current, since it is needed right away
+							prefetch.cancel();
+							cancelled.increment();
+						}
+					}
+					prefetches.clear();
+					// cancelling doesn't stop a prefetch that is already running, so it checks the
+					// generation before adding anything
+					long prefetchGeneration = ++generation;
+					scheduled = executor.schedule(() -> prefetch(prefetchGeneration), PREFETCH_DELAY, TimeUnit.MILLISECONDS);
+				}
+			}
+		}
+	}
+
+	private void prefetch(long prefetchGeneration) {
+		if (isStale(prefetchGeneration)) {
+			return;
+		}
+		Playlist playlist = player.getCurrentPlaylist();
+		if (playlist == null) {
+			return;
+		}
+		int index = playlist.getCurrentIndex();
+		if (index < 0) {
+			return;
+		}
+		// reading the tracks from the playlist loads their metadata
+		List<Track> upcoming = playlist.getTracks(index + 1, PREFETCH_TRACKS);
+		int artSize = view.getArtSize();
+		synchronized (lock) {
+			// the track may have changed while the playlist was read
+			if (isStale(prefetchGeneration)) {
+				return;
+			}
+			for (Track track : upcoming) {
+				log.debug("prefetching {}", track.getTitle());
+				prefetchedTracks.increment();
+				prefetches.add(new Prefetch(track, List.of(
+						track.getArtworkAsync(artSize),
+						tagModel.prefetchTags(track))));
+			}
+		}
+	}
+
+	/**
+	 * @return true if the track has changed since the given prefetch was scheduled, or prefetching
+	 * has been shut down
+	 */
+	private boolean isStale(long prefetchGeneration) {
+		synchronized (lock) {
+			return prefetchGeneration != generation || executor.isShutdown();
+		}
+	}
+
+	/**
+	 * @return a plain text summary of how often the track that started playing had been prefetched
+	 */
+	public String report() {
+		long changes = trackChanges.sum();
+		long hitCount = hits.sum();
+		TagModel.TagCacheStats tagStats = tagModel.getTagCacheStats();
+		return String.format("prefetch: %d of %d track changes had been prefetched (%.0f%%), %d tracks prefetched, %d cancelled%n"
+						+ "tag cache: %d hits, %d misses%n",
+				hitCount, changes, changes == 0 ? 0.0 : 100.0 * hitCount / changes,
+				prefetchedTracks.sum(), cancelled.sum(),
+				tagStats.hits(), tagStats.misses());
+	}
+
+	public void shutdown() {
+		synchronized (lock) {
+			// makes a prefetch that is running now stale, so it adds nothing after the clear
+			generation++;
+			prefetches.forEach(Prefetch::cancel);
+			prefetches.clear();
+		}
+		executor.shutdownNow();
+		log.info(report());
+	}
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright (c) 2024. Dan Clark
+ */
+
+package org.nekocode.nowplaying.objects;
+
+import org.nekocode.nowplaying.MediaPlayer.PlayerState;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The state of the media player at a single point in time: the current track, whether it is
+ * playing, and how far into it the player is.  All three values are taken together, so they are
+ * consistent with each other.
+ *
+ * @author dan.clark@nekocode.org
+ */
+@RequiredArgsConstructor
+@Getter
+public class PlayerSnapshot {
+    /**
+     * current track, or null if player is not connected or stopped
+     */
+    @Nullable
+    private final Track track;
+    @NotNull
+    private final PlayerState playerState;
+    /**
+     * position in the current track, in seconds
+     */
+    private final double position;
+}
@@ -14,7 +14,31 @@ import java.util.List;
  */
 public interface Playlist {
     
+    /**
+     * Gets every track in the playlist.  For long playlists, this can be expensive; prefer
+     * {@link #getTracks(int, int)} when only part of the playlist is needed.
+     */
     List<Track> getTracks();
 
     int count();
+
+    /**
+     * Gets part of the playlist.
+     *
+     * @param offset index of the first track to return
+     * @param limit maximum number of tracks to return
+     * @return tracks from offset on; fewer than limit if the playlist ends first
+     */
+    default List<Track> getTracks(int offset, int limit) {
+        List<Track> tracks = getTracks();
+        int from = Math.min(Math.max(offset, 0), tracks.size());
+        return tracks.subList(from, Math.min(tracks.size(), from + Math.max(limit, 0)));
+    }
+
+    /**
+     * @return index of the currently playing track in this playlist, or -1 if it isn't known
+     */
+    default int getCurrentIndex() {
+        return -1;
+    }
 }
@@ -7,6 +7,7 @@ package org.nekocode.nowplaying.objects;
 import javax.swing.*;
 import java.util.Collection;
 import java.util.Date;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * A playable track.  Note that this can be local or remote, audio or video.
@@ -22,6 +23,17 @@ public interface Track {
 	Collection<String> getArtworkDescriptions();
 	Collection<ImageIcon> getArtwork(int size);
 
+	/**
+	 * Gets the artwork without blocking the calling thread.  Tracks whose artwork has to be
+	 * fetched from somewhere should override this; the default just calls {@link #getArtwork(int)}.
+	 *
+	 * @param size maximum width and height of the artwork
+	 * @return future that completes with the artwork (possibly empty)
+	 */
+	default CompletableFuture<Collection<ImageIcon>> getArtworkAsync(int size) {
+		return CompletableFuture.completedFuture(getArtwork(size));
+	}
+
 	String getComment();
 
 	boolean isCompilation();
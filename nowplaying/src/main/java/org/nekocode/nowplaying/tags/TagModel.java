@@ -35,7 +35,9 @@ import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
 
 import static java.lang.String.format;
@@ -184,6 +186,7 @@ public class TagModel
     }
 
 	private void __addTag(Track track, String tag, String metadata) {
+		tagCache.clear();
 		// don't allow leading or trailing whitespace (it's probably a mistake, anyway)
 		tag = tag.trim();
 		try {
@@ -212,6 +215,7 @@ public class TagModel
 	}
 
 	private void __addTag(Collection<Track> tracks, String tag, String metadata) {
+		tagCache.clear();
 		// don't allow leading or trailing whitespace (it's probably a mistake, anyway)
 		tag = tag.trim();
 		try {
@@ -328,6 +332,15 @@ public class TagModel
 			return ret;
         }
 
+		String cacheKey = includeGroups ? uuid + "+groups" : uuid;
+		List<TagCloudEntry> cached = tagCache.get(cacheKey);
+		if (cached != null) {
+			tagCacheHits.increment();
+			ret.addAll(cached);
+			return ret;
+		}
+		tagCacheMisses.increment();
+
 		try {
 			Collection<String> duplicateUUIDs = __getDuplicateTracks(uuid);
 
@@ -343,6 +356,7 @@ public class TagModel
             }
 
 			ret.addAll(allEntries);
+			tagCache.put(cacheKey, List.copyOf(ret));
 		} catch (SQLException e) {
 			log.error("SQLException", e);
 		}
@@ -426,6 +440,7 @@ public class TagModel
      * @throws java.sql.SQLException if database errors occur
 	 */
 	private boolean __setDuplicateTracks(Collection<Track> tracks) throws SQLException {
+		tagCache.clear();
 		try {
 			Set<String> uuids = new HashSet<>();
 			for (Track track : tracks) {
@@ -512,6 +527,7 @@ public class TagModel
 	}
 
 	private boolean __setGroup(String name, Collection<Track> tracks) {
+		tagCache.clear();
 		try {
 			Set<String> uuids = new HashSet<>();
 			for (Track track : tracks) {
@@ -574,6 +590,7 @@ public class TagModel
 	}
 
 	private void __removeTag(Track track, String tag) {
+		tagCache.clear();
 		try {
 			String uuid = getTrackUUID(track);
 			int tagId = getTagId(tag);
@@ -591,6 +608,7 @@ public class TagModel
 	}
 
     private void __removeTag(Collection<Track> tracks, String tag) {
+        tagCache.clear();
         try {
             int tagId = getTagId(tag);
             PreparedStatement stmt = database.getPreparedStatement(removeTag);
@@ -620,6 +638,7 @@ public class TagModel
     }
 
     private void __deleteTags(Collection<String> tagsToDelete) {
+        tagCache.clear();
         try {
             PreparedStatement updateTagCountStmt = database.getPreparedStatement(updateTagCount);
             PreparedStatement deleteTagStmt = database.getPreparedStatement(deleteTag);
@@ -681,6 +700,21 @@ public class TagModel
 	private final static int UUID_CACHE_SIZE = 100;
 	private final Map<String, String> uuidCache = new LinkedHashMap<>(UUID_CACHE_SIZE);
 
+	/**
+	 * Tags of recently displayed (or prefetched) tracks, by uuid.  Tag counts and duplicates link
+	 * tracks together, so any change to the database clears the whole cache.  Only used on the
+	 * dbAccess thread.
+	 */
+	private final static int TAG_CACHE_SIZE = 32;
+	private final Map<String, List<TagCloudEntry>> tagCache = new LinkedHashMap<>(TAG_CACHE_SIZE, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, List<TagCloudEntry>> eldest) {
+			return size() > TAG_CACHE_SIZE;
+		}
+	};
+	private final LongAdder tagCacheHits = new LongAdder();
+	private final LongAdder tagCacheMisses = new LongAdder();
+
 	/**
 	 * Adds value to cache, preventing size from growing too large
 	 */
@@ -909,6 +943,32 @@ public class TagModel
         return max;
 	}
 
+	/**
+	 * Loads the tags for a track (with groups, as the tag panel shows them) into the cache, so showing
+	 * them later doesn't have to wait for the database.
+	 *
+	 * @return future that can be used to cancel the load, if it hasn't started yet
+	 */
+	public Future<?> prefetchTags(final Track track) {
+		return dbAccess.submit(() -> {
+			try {
+				return __getTags(getTrackUUID(track), true);
+			} catch (SQLException e) {
+				log.error("Error prefetching tags for " + track.getTitle(), e);
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Number of times the tags for a single track were looked up in the cache.
+	 */
+	public record TagCacheStats(long hits, long misses) { }
+
+	public TagCacheStats getTagCacheStats() {
+		return new TagCacheStats(tagCacheHits.sum(), tagCacheMisses.sum());
+	}
+
 	/**
 	 * Returns the tag entries for the input track.
 	 */
@@ -1071,6 +1131,7 @@ public class TagModel
     public void deleteTracks(final List<String> tracksToDelete) {
         try {
             dbAccess.submit(() -> {
+                tagCache.clear();
                 try {
                     database.beginTransaction();
 
@@ -4,9 +4,9 @@
 
 package org.nekocode.nowplaying.tags;
 
-import furbelow.SpinningDial;
 import lombok.extern.log4j.Log4j2;
 import org.jetbrains.annotations.NotNull;
+import org.nekocode.nowplaying.components.icons.SpinningDialBusyIcon;
 import org.nekocode.nowplaying.components.swing.NekoButton;
 import org.nekocode.nowplaying.components.swing.NekoLabel;
 import org.nekocode.nowplaying.events.TagChangeListener;
@@ -42,7 +42,7 @@ public class TagView extends JPanel
 	private final JLabel busy;
 
 	private final JComponent textfields;
-	private final SpinningDial spinningDial;
+	private final SpinningDialBusyIcon spinningDial;
 
 	public TagView(TagModel tagModel) {
 		listeners = new HashSet<>();
@@ -59,8 +59,9 @@ public class TagView extends JPanel
 
 		MouseAdapter tagListener = new MouseAdapter() {
 			public void mouseEvent(MouseEvent e) {
-				if (e.isPopupTrigger()) {
-					final String value = ((JLabel)e.getComponent()).getText();
+				TagCloudEntry entry = tagHolder.getEntryAt(e);
+				if (e.isPopupTrigger() && entry != null) {
+					final String value = entry.getTag();
 
 					JPopupMenu contextMenu = new JPopupMenu();
 					JMenuItem removeItem = new JMenuItem();
@@ -87,7 +88,7 @@ public class TagView extends JPanel
 		};
 		tagHolder.addTagCloudEntryMouseListener(tagListener);
 
-		spinningDial = new SpinningDial(32, 32);
+		spinningDial = new SpinningDialBusyIcon(32, 32);
 		busy = new JLabel(spinningDial);
 
 		autoTag = new NekoButton("autotag");
@@ -343,7 +344,7 @@ public class TagView extends JPanel
 
 	public void shutdown() {
 		log.info("shutting down TagView");
-		spinningDial.setFrameInterval(0);
+		spinningDial.shutdown();
 		log.info("finished shutting down TagView");
 	}
 }
@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2024. Dan Clark
+ */
+
+package org.nekocode.nowplaying.tags.cloud;
+
+import java.awt.*;
+
+/**
+ * Which pixels of a word cloud are taken, as a bitmap with a coarse summary on top of it.
+ * <p>
+ * The fine level has one bit per pixel, 64 to a {@code long}, so a row of a word's mask is tested
+ * against it a {@code long} at a time.  The coarse level has one bit per {@value #TILE}x{@value #TILE}
+ * tile, set if any pixel in the tile is taken.  Many positions a spiral search tries are nowhere
+ * near a placed word, or only overlap one in a few rows, and the coarse level rules those rows out
+ * without looking at their pixels.
+ *
+ * @author dan.clark@nekocode.org
+ */
+final class OccupancyGrid {
+    private static final int TILE_SHIFT = 3;
+    static final int TILE = 1 << TILE_SHIFT;
+
+    private final int width;
+    private final int height;
+    /**
+     * longs per row of pixels
+     */
+    private final int stride;
+    private final long[] pixels;
+    /**
+     * longs per row of tiles
+     */
+    private final int tileStride;
+    private final long[] tiles;
+
+    OccupancyGrid(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.stride = (width + 63) >> 6;
+        this.pixels = new long[stride * height];
+        int tilesWide = (width + TILE - 1) >> TILE_SHIFT;
+        int tilesHigh = (height + TILE - 1) >> TILE_SHIFT;
+        this.tileStride = (tilesWide + 63) >> 6;
+        this.tiles = new long[tileStride * tilesHigh];
+    }
+
+    int getWidth() {
+        return width;
+    }
+
+    int getHeight() {
+        return height;
+    }
+
+    /**
+     * Takes every pixel whose center is outside the given shape, so words are only placed inside it.
+     */
+    void fillOutside(Shape allowed) {
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (!allowed.contains(x + 0.5, y + 0.5)) {
+                    pixels[y * stride + (x >> 6)] |= 1L << x;
+                    setTile(x >> TILE_SHIFT, y >> TILE_SHIFT);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return true if the mask, with its top left corner at (x, y), overlaps a taken pixel or
+     * doesn't fit in the grid
+     */
+    boolean collides(WordMask mask, int x, int y) {
+        if (x < 0 || y < 0 || x + mask.width() > width || y + mask.height() > height) {
+            return true;
+        }
+        // which bands of tiles under the mask have anything in them, relative to the first
+        // (the 64th band on, if the mask is that tall, share the last bit, which is always set)
+        int firstBand = y >> TILE_SHIFT;
+        int lastBand = (y + mask.height() - 1) >> TILE_SHIFT;
+        int firstTileX = x >> TILE_SHIFT;
+        int lastTileX = (x + mask.width() - 1) >> TILE_SHIFT;
+        long occupiedBands = 0;
+        for (int band = firstBand; band <= lastBand; band++) {
+            if (band - firstBand >= 63) {
+                occupiedBands |= 1L << 63;
+                break;
+            }
+            if (anyTile(band, firstTileX, lastTileX)) {
+                occupiedBands |= 1L << (band - firstBand);
+            }
+        }
+        if (occupiedBands == 0) {
+            return false;
+        }
+
+        int shift = x & 63;
+        int firstLong = x >> 6;
+        long[] bits = mask.bits();
+        int maskStride = mask.stride();
+        for (int row : mask.rowOrder()) {
+            int band = Math.min(63, ((y + row) >> TILE_SHIFT) - firstBand);
+            if ((occupiedBands & (1L << band)) == 0) {
+                continue;
+            }
+            int gridRow = (y + row) * stride + firstLong;
+            int maskRow = row * maskStride;
+            for (int i = 0; i < maskStride; i++) {
+                long m = bits[maskRow + i];
+                if (m == 0) {
+                    continue;
+                }
+                if ((pixels[gridRow + i] & (m << shift)) != 0) {
+                    return true;
+                }
+                if (shift != 0 && firstLong + i + 1 < stride
+                        && (pixels[gridRow + i + 1] & (m >>> (64 - shift))) != 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Takes the pixels of the mask, with its top left corner at (x, y), which must fit in the grid.
+     */
+    void add(WordMask mask, int x, int y) {
+        int shift = x & 63;
+        int firstLong = x >> 6;
+        long[] bits = mask.bits();
+        int maskStride = mask.stride();
+        for (int row = 0; row < mask.height(); row++) {
+            int gridY = y + row;
+            int gridRow = gridY * stride + firstLong;
+            int maskRow = row * maskStride;
+            for (int i = 0; i < maskStride; i++) {
+                long m = bits[maskRow + i];
+                if (m == 0) {
+                    continue;
+                }
+                pixels[gridRow + i] |= m << shift;
+                if (shift != 0 && firstLong + i + 1 < stride) {
+                    pixels[gridRow + i + 1] |= m >>> (64 - shift);
+                }
+                // mark the tiles under the set bits of this long
+                int left = x + (i << 6) + Long.numberOfTrailingZeros(m);
+                int right = x + (i << 6) + 63 - Long.numberOfLeadingZeros(m);
+                for (int tileX = left >> TILE_SHIFT; tileX <= right >> TILE_SHIFT; tileX++) {
+                    setTile(tileX, gridY >> TILE_SHIFT);
+                }
+            }
+        }
+    }
+
+    private void setTile(int tileX, int tileY) {
+        tiles[tileY * tileStride + (tileX >> 6)] |= 1L << tileX;
+    }
+
+    /**
+     * @return true if any tile in the given row, from first to last inclusive, has a taken pixel
+     */
+    private boolean anyTile(int tileY, int first, int last) {
+        int row = tileY * tileStride;
+        for (int i = first >> 6; i <= last >> 6; i++) {
+            long bits = tiles[row + i];
+            if (i == first >> 6) {
+                bits &= -1L << first;
+            }
+            if (i == last >> 6) {
+                bits &= -1L >>> (63 - (last & 63));
+            }
+            if (bits != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -14,12 +14,27 @@ import java.util.*;
 
 /**
  * Displays a cloud of tags.
+ * <p>
+ * Small clouds are made of a {@link NekoLabel} per tag.  Clouds of {@link #VIRTUAL_THRESHOLD} or
+ * more tags are drawn by a single {@link TagCloudCanvas} instead, which lays out and paints all of
+ * them itself, since creating, laying out and painting hundreds of labels is slow.  Either way,
+ * {@link #getEntryAt(MouseEvent)} finds the tag a mouse event happened on.
  *
  * @author dan.clark@nekocode.org
  */
 @Log4j2
 public class TagCloud extends ScrollableFlowPanel {
+	/**
+	 * clouds with at least this many tags are drawn by a single component
+	 */
+	private static final int VIRTUAL_THRESHOLD = 40;
+
 	private Collection<TagCloudEntry> tags;
+	private final TagCloudCanvas canvas;
+	/**
+	 * the entry shown by each label, when the cloud is made of labels
+	 */
+	private final Map<Component, TagCloudEntry> labelEntries = new HashMap<>();
 
 	private final Map<Float, Font> fontCache;
 
@@ -42,6 +57,9 @@ public class TagCloud extends ScrollableFlowPanel {
 		setOpaque(false);
         // use the default font for a neko label
         this.baseFont = new NekoLabel("").getFont();
+
+		canvas = new TagCloudCanvas(((FlowLayout) getLayout()).getHgap(), ((FlowLayout) getLayout()).getVgap());
+		canvas.addMouseListener(tagListener);
 	}
 
 	/**
@@ -92,16 +110,16 @@ public class TagCloud extends ScrollableFlowPanel {
 	public void setTagEntries(Collection<TagCloudEntry> tags) {
 		this.tags = tags;
 		removeAll();
+		labelEntries.clear();
+		if (tags.size() >= VIRTUAL_THRESHOLD) {
+			canvas.setTagEntries(tags, renderer::getText, this::getFont);
+			add(canvas);
+			return;
+		}
 		for (TagCloudEntry tag : tags) {
-			float fontSize = 8 + (1.0f * tag.getScale() / TagCloudEntry.NUM_LEVELS) * 10;
-			Font newFont = fontCache.get(fontSize);
-			if (newFont == null) {
-				newFont = baseFont.deriveFont(fontSize);
-                fontCache.put(fontSize, newFont);
-			}
 			NekoLabel tagLabel = new NekoLabel(renderer.getText(tag));
 			tagLabel.setForeground(tag.getColor());
-			tagLabel.setFont(newFont);
+			tagLabel.setFont(getFont(tag));
             tagLabel.setPreferredSize(tagLabel.getPreferredSize());
 
 			if (tag.getMetadata() != null) {
@@ -111,10 +129,32 @@ public class TagCloud extends ScrollableFlowPanel {
 //			log.debug(String.format("%s (%d) = %.1f", tag.getTag(), tag.getScale(), fontSize));
 
 			tagLabel.addMouseListener(tagListener);
+			labelEntries.put(tagLabel, tag);
 			add(tagLabel);
 		}
 	}
 
+	/**
+	 * @return the font to display a tag in, which gets bigger as the tag is used more
+	 */
+	private Font getFont(TagCloudEntry tag) {
+		float fontSize = 8 + (1.0f * tag.getScale() / TagCloudEntry.NUM_LEVELS) * 10;
+		return fontCache.computeIfAbsent(fontSize, baseFont::deriveFont);
+	}
+
+	/**
+	 * Finds the tag a mouse event (from a listener added with
+	 * {@link #addTagCloudEntryMouseListener(MouseListener)}) happened on.
+	 *
+	 * @return the tag under the mouse, or null if the event wasn't on a tag
+	 */
+	public TagCloudEntry getEntryAt(MouseEvent e) {
+		if (e.getComponent() == canvas) {
+			return canvas.getEntryAt(e.getPoint());
+		}
+		return labelEntries.get(e.getComponent());
+	}
+
 	/**
 	 * Sends mouse events from tag cloud entries to all registered listeners.
 	 */
@@ -12,7 +12,6 @@ import lombok.extern.log4j.Log4j2;
 
 import javax.swing.*;
 import java.awt.*;
-import java.util.Collection;
 import java.util.concurrent.ExecutionException;
 
 /**
@@ -24,49 +23,48 @@ import java.util.concurrent.ExecutionException;
  */
 @Log4j2
 public class TagCloudButton extends NekoButton {
-	private final TagModel tagModel;
-	private static final int MINIMUM_ENTRIES = 5;
+	private final TagCloudService cloudService;
 	private static final int TAG_CLOUD_SIZE = 800;
 
 	public TagCloudButton(TagModel tagModel, Rotation r) {
 		super("tag cloud", r);
 		this.setHorizontalAlignment(JLabel.CENTER);
-		this.tagModel = tagModel;
+		this.cloudService = new TagCloudService(tagModel, TAG_CLOUD_SIZE);
 
 		addActionListener(_ -> {
             log.debug("Preparing to display tag cloud...");
-            new CloudLoader(TagCloudButton.this.tagModel).execute();
+            new CloudLoader(cloudService).execute();
         }
         );
 	}
 
     public void shutdown() {
-        
+        cloudService.shutdown();
     }
 
     /**
-	 * Loads tags in the background and displays them when ready.
+	 * Gets the tag cloud in the background and displays it when ready.
 	 */
-	private static class CloudLoader extends SwingWorker<ImageIcon, Object> {
+	private static class CloudLoader extends SwingWorker<TagCloudService.Cloud, Object> {
 
-		private final TagModel tagModel;
+		private final TagCloudService cloudService;
 
-		public CloudLoader(TagModel tagModel) {
-			this.tagModel = tagModel;
+		public CloudLoader(TagCloudService cloudService) {
+			this.cloudService = cloudService;
 		}
 
 		@Override
-		protected ImageIcon doInBackground() {
-            Collection<TagCloudEntry> allTags = tagModel.getAllTags(MINIMUM_ENTRIES);
-			return KumoCloud.createCloud(allTags, TAG_CLOUD_SIZE);
+		protected TagCloudService.Cloud doInBackground() throws ExecutionException, InterruptedException {
+			return cloudService.getCloud().get();
 		}
 
 		@Override
 		protected void done() {
 			try {
-				ImageIcon imageIcon = get();
-				JFrame frame = new JFrame("tag cloud");
-				frame.getContentPane().add(new JLabel(imageIcon));
+				TagCloudService.Cloud cloud = get();
+				JFrame frame = new JFrame(String.format("tag cloud (%d tags, laid out in %d ms)",
+						cloud.tagCount(), cloud.layoutMillis()));
+				frame.getContentPane().add(new JLabel(new ImageIcon(cloud.image())));
 				frame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
 				frame.setMinimumSize(new Dimension(TAG_CLOUD_SIZE,TAG_CLOUD_SIZE));
 				frame.pack();
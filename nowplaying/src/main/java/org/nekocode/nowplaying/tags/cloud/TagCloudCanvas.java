@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) 2024. Dan Clark
+ */
+
+package org.nekocode.nowplaying.tags.cloud;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.MouseEvent;
+import java.awt.font.FontRenderContext;
+import java.awt.font.TextLayout;
+import java.awt.geom.AffineTransform;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Draws a whole tag cloud in one component, for clouds too big to make a label per tag.
+ * <p>
+ * Entries are laid out like a centered {@link FlowLayout}, wrapping at the width of the parent.
+ * The text of each entry is measured once, as a {@link TextLayout} (kept in a cache shared by
+ * all entries, so redisplaying the same tags doesn't measure them again), and painting only
+ * draws the entries inside the clip.  Mouse events are delivered for the whole component;
+ * {@link #getEntryAt(Point)} tells which entry was under the mouse.
+ * <p>
+ * The glow is approximated by stroking the outline of the text, instead of blurring it, so a few
+ * hundred tags still cost a single quick paint.
+ *
+ * @author dan.clark@nekocode.org
+ */
+@SuppressWarnings("serial")
+class TagCloudCanvas extends JComponent {
+	private static final Color GLOW_COLOR = new Color(.9f, .9f, .9f, .8f);
+	private static final Stroke GLOW_STROKE = new BasicStroke(3, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
+	private static final FontRenderContext FONT_RENDER_CONTEXT = new FontRenderContext(null, true, true);
+	private static final int LAYOUT_CACHE_SIZE = 1024;
+
+	private final int hgap;
+	private final int vgap;
+
+	/**
+	 * measured text, by text and font, least recently used first
+	 */
+	private final Map<LayoutKey, Measured> layoutCache = new LinkedHashMap<>(64, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<LayoutKey, Measured> eldest) {
+			return size() > LAYOUT_CACHE_SIZE;
+		}
+	};
+
+	private final List<Item> items = new ArrayList<>();
+	/**
+	 * the width items were last laid out for, or -1 if they need to be laid out again
+	 */
+	private int layoutWidth = -1;
+	private int layoutHeight;
+
+	private record LayoutKey(String text, Font font) { }
+
+	/**
+	 * Text measured once: the outline of the text with its baseline at the origin.
+	 */
+	private record Measured(Shape outline, int width, int ascent, int descent) {
+		static Measured of(String text, Font font) {
+			TextLayout layout = new TextLayout(text, font, FONT_RENDER_CONTEXT);
+			return new Measured(layout.getOutline(null),
+					(int) Math.ceil(layout.getAdvance()) + 2,
+					(int) Math.ceil(layout.getAscent()) + 1,
+					(int) Math.ceil(layout.getDescent() + layout.getLeading()) + 1);
+		}
+	}
+
+	/**
+	 * An entry and where it is drawn.
+	 */
+	private static final class Item {
+		final TagCloudEntry entry;
+		final Measured measured;
+		final Rectangle bounds = new Rectangle();
+		int baseline;
+
+		Item(TagCloudEntry entry, Measured measured) {
+			this.entry = entry;
+			this.measured = measured;
+			bounds.setSize(measured.width(), measured.ascent() + measured.descent());
+		}
+	}
+
+	TagCloudCanvas(int hgap, int vgap) {
+		this.hgap = hgap;
+		this.vgap = vgap;
+		setOpaque(false);
+		// register with the tooltip manager; the text comes from getToolTipText(MouseEvent)
+		setToolTipText("");
+	}
+
+	/**
+	 * Replaces the entries.
+	 *
+	 * @param text gives the text to display for an entry
+	 * @param font gives the font to display an entry in
+	 */
+	void setTagEntries(Collection<TagCloudEntry> entries, Function<TagCloudEntry, String> text,
+					   Function<TagCloudEntry, Font> font) {
+		items.clear();
+		for (TagCloudEntry entry : entries) {
+			String s = text.apply(entry);
+			if (s == null || s.isEmpty()) {
+				continue;
+			}
+			Font f = font.apply(entry);
+			items.add(new Item(entry, layoutCache.computeIfAbsent(new LayoutKey(s, f), k -> Measured.of(k.text(), k.font()))));
+		}
+		layoutWidth = -1;
+		revalidate();
+		repaint();
+	}
+
+	/**
+	 * @return the entry under the given point, or null if there is none
+	 */
+	TagCloudEntry getEntryAt(Point p) {
+		layoutItems(getWidth());
+		for (Item item : items) {
+			if (item.bounds.contains(p)) {
+				return item.entry;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public String getToolTipText(MouseEvent event) {
+		TagCloudEntry entry = getEntryAt(event.getPoint());
+		return entry == null || entry.getMetadata() == null || entry.getMetadata().isEmpty()
+				? null
+				: entry.getMetadata();
+	}
+
+	@Override
+	public Dimension getPreferredSize() {
+		if (isPreferredSizeSet()) {
+			return super.getPreferredSize();
+		}
+		// fill the parent's width (less the flow layout's gaps), and be as tall as that needs
+		int width = getParent() == null ? 0 : getParent().getWidth() - 2 * hgap;
+		if (width <= 0) {
+			width = 0;
+			for (Item item : items) {
+				width += item.bounds.width + hgap;
+			}
+		}
+		layoutItems(width);
+		return new Dimension(width, layoutHeight);
+	}
+
+	@Override
+	public void doLayout() {
+		layoutItems(getWidth());
+	}
+
+	/**
+	 * Positions the items in centered rows that fit in the given width.
+	 */
+	private void layoutItems(int width) {
+		if (width == layoutWidth) {
+			return;
+		}
+		layoutWidth = width;
+		int y = 0;
+		int start = 0;
+		while (start < items.size()) {
+			// fill a row
+			int end = start;
+			int rowWidth = 0;
+			int ascent = 0;
+			int descent = 0;
+			while (end < items.size()) {
+				Item item = items.get(end);
+				int itemWidth = item.bounds.width + (end > start ? hgap : 0);
+				if (end > start && rowWidth + itemWidth > width) {
+					break;
+				}
+				rowWidth += itemWidth;
+				ascent = Math.max(ascent, item.measured.ascent());
+				descent = Math.max(descent, item.measured.descent());
+				end++;
+			}
+			// then position it, centered, on a common baseline
+			int x = Math.max(0, (width - rowWidth) / 2);
+			for (int i = start; i < end; i++) {
+				Item item = items.get(i);
+				item.baseline = y + ascent;
+				item.bounds.setLocation(x, item.baseline - item.measured.ascent());
+				x += item.bounds.width + hgap;
+			}
+			y += ascent + descent + vgap;
+			start = end;
+		}
+		layoutHeight = Math.max(0, y - vgap);
+	}
+
+	@Override
+	protected void paintComponent(Graphics g) {
+		layoutItems(getWidth());
+		Rectangle clip = g.getClipBounds();
+		Graphics2D g2 = (Graphics2D) g.create();
+		g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+		g2.setStroke(GLOW_STROKE);
+		AffineTransform original = g2.getTransform();
+		for (Item item : items) {
+			if (clip != null && !clip.intersects(item.bounds)) {
+				continue;
+			}
+			g2.translate(item.bounds.x + 1, item.baseline);
+			g2.setColor(GLOW_COLOR);
+			g2.draw(item.measured.outline());
+			g2.setColor(item.entry.getColor());
+			g2.fill(item.measured.outline());
+			g2.setTransform(original);
+		}
+		g2.dispose();
+	}
+}
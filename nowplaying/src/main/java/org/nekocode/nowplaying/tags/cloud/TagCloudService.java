@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2024. Dan Clark
+ */
+
+package org.nekocode.nowplaying.tags.cloud;
+
+import lombok.extern.log4j.Log4j2;
+import org.jetbrains.annotations.NotNull;
+import org.nekocode.nowplaying.NowPlayingProperties;
+import org.nekocode.nowplaying.events.TagChangeListener;
+import org.nekocode.nowplaying.internals.NamedThreadFactory;
+import org.nekocode.nowplaying.objects.Track;
+import org.nekocode.nowplaying.tags.TagModel;
+
+import java.awt.image.BufferedImage;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Renders the tag cloud of the whole library, and keeps the last one.
+ * <p>
+ * Laying out a large cloud takes seconds, so the rendered image is kept along with a digest of
+ * the (tag, count) pairs it was made from.  Asking for the cloud reads the current counts (which
+ * is quick) and only lays the cloud out again if the digest changed.  Once the cloud has been
+ * opened, a new one is rendered in the background whenever tags change and the changes have
+ * settled, so the next time the cloud is opened it is usually ready.  Nothing is rendered until
+ * the cloud is opened for the first time.
+ * <p>
+ * Everything runs on a single background thread, so a request made while a background render
+ * is running waits for it, then uses its result.
+ * <p>
+ * Clouds are laid out by {@link WordCloudLayout}, within the budget set by the TAG_CLOUD_MAX_TAGS
+ * (how many of the most used tags to place) and TAG_CLOUD_TIME_LIMIT (in ms) properties.
+ *
+ * @author dan.clark@nekocode.org
+ */
+@Log4j2
+public class TagCloudService implements TagChangeListener {
+    /**
+     * tags used fewer times than this aren't in the cloud
+     */
+    private static final int MINIMUM_ENTRIES = 5;
+    /**
+     * how long tags must go unchanged before the cloud is rendered again in the background, in ms
+     */
+    private static final long SETTLE_DELAY = 10000;
+    static final int DEFAULT_MAX_TAGS = 1000;
+    static final long DEFAULT_TIME_LIMIT = 2000;
+    /**
+     * longest time limit allowed, in ms; longer than this, and the cloud may as well not be cached
+     */
+    private static final long MAX_TIME_LIMIT = 60000;
+
+    private final TagModel tagModel;
+    private final WordCloudLayout layout;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+            new NamedThreadFactory("TagCloudService", true));
+
+    // only used on the executor thread
+    private Cloud cached;
+    // guarded by this
+    private ScheduledFuture<?> pendingRender;
+    /**
+     * true once the cloud has been asked for; until then, tag changes don't render it
+     */
+    private volatile boolean requested;
+
+    /**
+     * A rendered tag cloud.
+     *
+     * @param digest       digest of the (tag, count) pairs in the cloud
+     * @param image        the cloud
+     * @param tagCount     number of tags in the cloud
+     * @param layoutMillis how long the cloud took to lay out, in ms
+     */
+    public record Cloud(String digest, BufferedImage image, int tagCount, long layoutMillis) { }
+
+    /**
+     * @param size width and height of the cloud image
+     */
+    public TagCloudService(TagModel tagModel, int size) {
+        this.tagModel = tagModel;
+        Properties properties = NowPlayingProperties.loadProperties();
+        this.layout = new WordCloudLayout(size,
+                (int) readLimit(properties, NowPlayingProperties.TAG_CLOUD_MAX_TAGS, DEFAULT_MAX_TAGS, Integer.MAX_VALUE),
+                readLimit(properties, NowPlayingProperties.TAG_CLOUD_TIME_LIMIT, DEFAULT_TIME_LIMIT, MAX_TIME_LIMIT));
+        tagModel.addTagChangeListener(this);
+    }
+
+    /**
+     * Reads a positive whole number from the properties.  A value that isn't a number is replaced
+     * by the default, and one that is out of range by the nearest value in range.
+     *
+     * @return the value, from 1 to max
+     */
+    private static long readLimit(Properties properties, NowPlayingProperties property, long defaultValue, long max) {
+        String value = properties.getProperty(property.name());
+        if (value == null) {
+            return defaultValue;
+        }
+        long limit;
+        try {
+            limit = Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            log.warn("{} is not a number: '{}'; using {}", property, value, defaultValue);
+            return defaultValue;
+        }
+        if (limit < 1 || limit > max) {
+            long clamped = Math.max(1, Math.min(max, limit));
+            log.warn("{} must be from 1 to {}: '{}'; using {}", property, max, value, clamped);
+            return clamped;
+        }
+        return limit;
+    }
+
+    /**
+     * @return future that completes with the cloud for the current tags; immediately (well, as soon
+     * as the tag counts have been read) if nothing changed since it was last rendered
+     */
+    public CompletableFuture<Cloud> getCloud() {
+        requested = true;
+        return CompletableFuture.supplyAsync(this::render, executor);
+    }
+
+    private Cloud render() {
+        Collection<TagCloudEntry> tags = tagModel.getAllTags(MINIMUM_ENTRIES);
+        String digest = digest(tags);
+        if (cached != null && cached.digest().equals(digest)) {
+            log.debug("tag cloud is unchanged");
+            return cached;
+        }
+        WordCloudLayout.Layout laidOut = layout.layout(tags);
+        log.info("laid out tag cloud of {} tags ({} left out) in {} ms", laidOut.words().size(),
+                laidOut.skipped(), laidOut.layoutMillis());
+        cached = new Cloud(digest, WordCloudLayout.render(laidOut), laidOut.words().size(), laidOut.layoutMillis());
+        return cached;
+    }
+
+    /**
+     * @return a digest of the tags and their counts, independent of their order
+     */
+    static String digest(Collection<TagCloudEntry> tags) {
+        List<TagCloudEntry> sorted = new ArrayList<>(tags);
+        sorted.sort(Comparator.comparing(TagCloudEntry::getTag));
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (TagCloudEntry tag : sorted) {
+                digest.update(tag.getTag().getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+                digest.update(Integer.toString(tag.getCount()).getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) '\n');
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            // every JVM has SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Renders the cloud after {@link #SETTLE_DELAY}, unless tags change again before then.  Does
+     * nothing if the cloud has never been asked for, since it may never be.
+     */
+    private synchronized void scheduleRender() {
+        if (!requested || executor.isShutdown()) {
+            return;
+        }
+        if (pendingRender != null) {
+            pendingRender.cancel(false);
+        }
+        pendingRender = executor.schedule(() -> {
+            try {
+                render();
+            } catch (RuntimeException e) {
+                log.error("Error rendering tag cloud in the background", e);
+            }
+        }, SETTLE_DELAY, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void tagRemoved(@NotNull Track track, @NotNull String tag) {
+        scheduleRender();
+    }
+
+    @Override
+    public void tagAdded(@NotNull Track track, @NotNull String tag) {
+        scheduleRender();
+    }
+
+    @Override
+    public void tagsChanged(@NotNull Track track) {
+        scheduleRender();
+    }
+
+    public void shutdown() {
+        tagModel.removeTagChangeListener(this);
+        synchronized (this) {
+            executor.shutdownNow();
+        }
+    }
+}
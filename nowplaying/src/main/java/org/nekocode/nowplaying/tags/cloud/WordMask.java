@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2024. Dan Clark
+ */
+
+package org.nekocode.nowplaying.tags.cloud;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.util.Arrays;
+
+/**
+ * The pixels a word covers, one bit per pixel, in rows of {@code stride} longs (the lowest bit of
+ * each long is the leftmost pixel).
+ * <p>
+ * {@code rowOrder} lists the rows with the most pixels first.  Those are the rows most likely to
+ * overlap something, so testing them first finds a collision after looking at a row or two.
+ *
+ * @author dan.clark@nekocode.org
+ */
+record WordMask(int width, int height, int stride, long[] bits, int[] rowOrder) {
+
+    /**
+     * Rasterizes a shape, grown by {@code padding} pixels on every side.  The shape is drawn with
+     * its bounds' top left corner at (padding, padding).
+     * <p>
+     * The padding is added by dilating the bits (to a square around each pixel), which is a few
+     * shifts per {@code long}; stroking the outline to do the same takes several times as long as
+     * everything else here put together.
+     */
+    static WordMask of(Shape shape, int padding) {
+        Rectangle bounds = shape.getBounds();
+        int width = bounds.width + 2 * padding + 1;
+        int height = bounds.height + 2 * padding + 1;
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D g = image.createGraphics();
+        g.setColor(Color.WHITE);
+        g.translate(padding - bounds.x, padding - bounds.y);
+        g.fill(shape);
+        g.dispose();
+
+        byte[] gray = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        int stride = (width + 63) >> 6;
+        long[] bits = new long[stride * height];
+        for (int y = 0; y < height; y++) {
+            int row = y * width;
+            for (int x = 0; x < width; x++) {
+                if (gray[row + x] != 0) {
+                    bits[y * stride + (x >> 6)] |= 1L << x;
+                }
+            }
+        }
+        bits = dilate(bits, stride, height, padding);
+
+        // pixel count in the high bits, row in the low bits, so sorting orders rows by count
+        long[] rows = new long[height];
+        for (int y = 0; y < height; y++) {
+            int count = 0;
+            for (int i = 0; i < stride; i++) {
+                count += Long.bitCount(bits[y * stride + i]);
+            }
+            rows[y] = (long) -count << 32 | y;
+        }
+        Arrays.sort(rows);
+        int[] rowOrder = new int[height];
+        for (int i = 0; i < height; i++) {
+            rowOrder[i] = (int) rows[i];
+        }
+        return new WordMask(width, height, stride, bits, rowOrder);
+    }
+
+    /**
+     * @return the bits, with every set bit grown into a square {@code 2 * radius + 1} pixels across
+     */
+    private static long[] dilate(long[] bits, int stride, int height, int radius) {
+        // across, one pixel at a time, carrying bits between the longs of a row
+        for (int r = 0; r < radius; r++) {
+            long[] grown = new long[bits.length];
+            for (int y = 0; y < height; y++) {
+                for (int i = 0; i < stride; i++) {
+                    int at = y * stride + i;
+                    long b = bits[at];
+                    long g = b | b << 1 | b >>> 1;
+                    if (i > 0) {
+                        g |= bits[at - 1] >>> 63;
+                    }
+                    if (i < stride - 1) {
+                        g |= bits[at + 1] << 63;
+                    }
+                    grown[at] = g;
+                }
+            }
+            bits = grown;
+        }
+        // then down
+        long[] grown = new long[bits.length];
+        for (int y = 0; y < height; y++) {
+            for (int dy = Math.max(0, y - radius); dy <= Math.min(height - 1, y + radius); dy++) {
+                for (int i = 0; i < stride; i++) {
+                    grown[y * stride + i] |= bits[dy * stride + i];
+                }
+            }
+        }
+        return grown;
+    }
+}
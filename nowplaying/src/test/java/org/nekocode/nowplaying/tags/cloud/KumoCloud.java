@@ -12,16 +12,16 @@ import com.kennycason.kumo.font.scale.SqrtFontScalar;
 import com.kennycason.kumo.palette.ColorPalette;
 import lombok.extern.log4j.Log4j2;
 
-import javax.swing.*;
 import java.awt.*;
-import java.io.ByteArrayOutputStream;
+import java.awt.image.BufferedImage;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.stream.Collectors;
 
 /**
- * Creates tag cloud images using the Kumo library
+ * Creates tag cloud images using the Kumo library, for {@link WordCloudBenchmark} to compare
+ * {@link WordCloudLayout} with.
  */
 @Log4j2
 public class KumoCloud {
@@ -30,9 +30,9 @@ public class KumoCloud {
      *
      * @param tags         the collection of tags to be included in the cloud
      * @param tagCloudSize the size of the tag cloud image
-     * @return the image icon representing the tag cloud
+     * @return the tag cloud, as drawn by Kumo (without encoding it)
      */
-    public static ImageIcon createCloud(Collection<TagCloudEntry> tags, int tagCloudSize) {
+    public static BufferedImage renderCloud(Collection<TagCloudEntry> tags, int tagCloudSize) {
         try {
             List<WordFrequency> wordFrequencies = tags.stream()
                     .map(t -> new WordFrequency(t.getTag(), t.getCount()))
@@ -44,10 +44,7 @@ public class KumoCloud {
             wordCloud.setColorPalette(new ColorPalette(new Color(0x4055F1), new Color(0x408DF1), new Color(0x40AAF1), new Color(0x40C5F1), new Color(0x40D3F1), new Color(0xFFFFFF)));
             wordCloud.setFontScalar(new SqrtFontScalar(10, 40));
             wordCloud.build(wordFrequencies);
-            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-            wordCloud.writeToStreamAsPNG(outputStream);
-            var pngBytes = outputStream.toByteArray();
-            return new ImageIcon(pngBytes);
+            return wordCloud.getBufferedImage();
         } catch (RuntimeException e) {
             log.error("Error creating tag cloud", e);
             throw e;
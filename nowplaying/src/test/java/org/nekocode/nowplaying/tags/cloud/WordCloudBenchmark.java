@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2024. Dan Clark
+ */
+
+package org.nekocode.nowplaying.tags.cloud;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Compares {@link WordCloudLayout} with {@link KumoCloud} on synthetic libraries of 1000, 5000 and
+ * 20000 tags, with counts following a Zipf distribution like real tags do.
+ * <p>
+ * Each run is timed after one warm-up run.  Kumo places every tag it can fit, so it has no budget;
+ * the layout engine is run with no word limit and a time limit long enough not to matter, and then
+ * with the budget the tag cloud button uses, so the numbers show both the engine itself and what
+ * the budget buys.
+ * <p>
+ * Arguments (all optional, in order): tag counts separated by commas, cloud size, iterations, and
+ * a directory to write the last cloud of each run to as PNG.  Kumo takes minutes on the largest
+ * input; pass {@code -Dbenchmark.kumo=false} to leave it out.
+ */
+public class WordCloudBenchmark {
+    public static void main(String[] args) throws IOException {
+        String[] tagCounts = (args.length > 0 ? args[0] : "1000,5000,20000").split(",");
+        int size = args.length > 1 ? Integer.parseInt(args[1]) : 800;
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+        File output = args.length > 3 ? new File(args[3]) : null;
+        boolean kumo = Boolean.parseBoolean(System.getProperty("benchmark.kumo", "true"));
+
+        for (String tagCount : tagCounts) {
+            List<TagCloudEntry> tags = syntheticTags(Integer.parseInt(tagCount.trim()));
+            System.out.printf("%d tags, %dx%d, %d iterations%n", tags.size(), size, size, iterations);
+            if (kumo) {
+                time("kumo", tags.size(), iterations, output, () -> KumoCloud.renderCloud(tags, size));
+            }
+            WordCloudLayout unlimited = new WordCloudLayout(size, Integer.MAX_VALUE, TimeUnit.DAYS.toMillis(1));
+            time("layout, unlimited", tags.size(), iterations, output, () -> {
+                WordCloudLayout.Layout layout = unlimited.layout(tags);
+                System.out.printf("    placed %d, measure %.1f ms, place %.1f ms%n", layout.words().size(),
+                        layout.measureNanos() / 1e6, layout.placeNanos() / 1e6);
+                return WordCloudLayout.render(layout);
+            });
+            WordCloudLayout budgeted = new WordCloudLayout(size, TagCloudService.DEFAULT_MAX_TAGS,
+                    TagCloudService.DEFAULT_TIME_LIMIT);
+            time("layout, budgeted", tags.size(), iterations, output, () -> {
+                WordCloudLayout.Layout layout = budgeted.layout(tags);
+                System.out.printf("    placed %d, measure %.1f ms, place %.1f ms%n", layout.words().size(),
+                        layout.measureNanos() / 1e6, layout.placeNanos() / 1e6);
+                return WordCloudLayout.render(layout);
+            });
+        }
+    }
+
+    private static void time(String name, int tagCount, int iterations, File output, Supplier<BufferedImage> renderer)
+            throws IOException {
+        // warm up
+        BufferedImage image = renderer.get();
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            image = renderer.get();
+        }
+        double ms = (System.nanoTime() - start) / 1e6 / iterations;
+        System.out.printf("  %-20s %10.1f ms%n", name, ms);
+        if (output != null) {
+            ImageIO.write(image, "png", new File(output, tagCount + "-" + name.replaceAll("\\W+", "-") + ".png"));
+        }
+    }
+
+    /**
+     * @return tags with random names, the nth most used used about 1/n as often as the most used
+     */
+    private static List<TagCloudEntry> syntheticTags(int count) {
+        Random random = new Random(count);
+        int maximum = 5000;
+        List<TagCloudEntry> tags = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            StringBuilder name = new StringBuilder();
+            int length = 3 + random.nextInt(10);
+            for (int c = 0; c < length; c++) {
+                name.append((char) ('a' + random.nextInt(26)));
+            }
+            tags.add(new TagCloudEntry(name.toString(), Math.max(1, maximum / (i + 1)), maximum));
+        }
+        return tags;
+    }
+}
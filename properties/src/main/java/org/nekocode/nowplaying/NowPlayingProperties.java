@@ -29,6 +29,10 @@ public enum NowPlayingProperties {
     REMOTE_PORT,
     WINDOW_ANCHOR,
     WINDOW_POSITION,
+    LIBRARY_MIRROR,
+    ARTWORK_CACHE,
+    TAG_CLOUD_MAX_TAGS,
+    TAG_CLOUD_TIME_LIMIT,
     ;
 
     public static final String PROPERTIES_FILE = "nowplaying.properties";
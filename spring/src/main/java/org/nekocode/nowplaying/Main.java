@@ -5,6 +5,7 @@ import org.nekocode.nowplaying.components.modes.control.ControlPanel;
 import org.nekocode.nowplaying.components.modes.tag.TagPanel;
 import org.nekocode.nowplaying.components.modes.tagsdnd.TagDnDPanel;
 import org.nekocode.nowplaying.internals.TrackMonitor;
+import org.nekocode.nowplaying.internals.TrackPrefetcher;
 import org.nekocode.nowplaying.remote.mediamonkey5.MM5RemoteModel;
 import org.nekocode.nowplaying.tags.TagModel;
 import org.nekocode.nowplaying.tags.TagView;
@@ -26,6 +27,7 @@ import java.util.List;
 
         TagModel.class,
         TrackMonitor.class,
+        TrackPrefetcher.class,
 
         ControlPanel.class,
         TagPanel.class,